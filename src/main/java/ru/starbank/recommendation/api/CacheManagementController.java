@@ -1,16 +1,29 @@
 package ru.starbank.recommendation.api;
 
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import ru.starbank.recommendation.domain.dto.management.CacheInvalidationDto;
+import ru.starbank.recommendation.domain.dto.management.CacheRefreshStatusDto;
+import ru.starbank.recommendation.domain.dto.management.CacheStatsResponseDto;
 import ru.starbank.recommendation.service.CacheManagementService;
+import ru.starbank.recommendation.service.knowledge.KnowledgeCache;
+import ru.starbank.recommendation.support.util.UuidParser;
+
+import java.util.UUID;
 
 /**
  * Технологические (management) эндпоинты Stage 3.
@@ -28,21 +41,114 @@ public class CacheManagementController {
     }
 
     /**
-     * Полный сброс всех кешей рекомендаций.
+     * Сброс всех кешей рекомендаций.
      *
-     * <p>POST без тела. После вызова кеш считается очищенным, и следующие запросы
-     * должны заново обращаться к БД.</p>
+     * <p>POST без тела. По умолчанию сброс мягкий: текущие значения продолжают отдаваться,
+     * пока записи обновляются в фоне с ограниченной скоростью. С {@code hard=true} кеши
+     * очищаются сразу, и следующие запросы заново обращаются к БД.</p>
      */
     @Operation(summary = "Очистить все кэши",
-            description = "Очистить все кэшированные данные в системе.",
+            description = "Очистить все кэшированные данные в системе. "
+                    + "По умолчанию — мягкий сброс с фоновым обновлением, hard=true — немедленная очистка.",
             responses = {
-                    @ApiResponse(responseCode = "204",
-                            description = "Кэши успешно очищены")
+                    @ApiResponse(responseCode = "200",
+                            description = "Сброс кэшей запущен")
             })
     @PostMapping("/clear-caches")
     @ResponseStatus(HttpStatus.OK)
-    public void clearCaches() {
+    public void clearCaches(
+            @Parameter(description = "Немедленная очистка без фонового обновления")
+            @RequestParam(name = "hard", defaultValue = "false") boolean hard
+    ) {
+        if (hard) {
+            log.info("Flushing all caches in the system");
+            cacheManagementService.flushAllCaches();
+            return;
+        }
         log.info("Clearing all caches in the system");
         cacheManagementService.clearAllCaches();
     }
+
+    /**
+     * Прогресс фонового обновления кешей после последнего сброса.
+     */
+    @Operation(summary = "Статус сброса кэшей",
+            description = "Поколение кэша и прогресс фонового обновления после мягкого сброса",
+            responses = {
+                    @ApiResponse(responseCode = "200",
+                            description = "Успешный запрос",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = CacheRefreshStatusDto.class)))
+            })
+    @GetMapping("/clear-caches/status")
+    public CacheRefreshStatusDto clearCachesStatus() {
+        return cacheManagementService.refreshStatus();
+    }
+
+    /**
+     * Статистика кешей: попадания, промахи, загрузки, время загрузки, вытеснения, размер.
+     */
+    @Operation(summary = "Статистика кэшей",
+            description = "Hit/miss, hit ratio, количество и время загрузок (среднее и перцентили), "
+                    + "вытеснения и размер каждого именованного кэша",
+            responses = {
+                    @ApiResponse(responseCode = "200",
+                            description = "Успешный запрос",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = CacheStatsResponseDto.class)))
+            })
+    @GetMapping("/caches")
+    public CacheStatsResponseDto caches() {
+        return cacheManagementService.cacheStats();
+    }
+
+    /**
+     * Точечный сброс кешей одного пользователя (например, после исправления его транзакций).
+     */
+    @Operation(summary = "Сбросить кэши пользователя",
+            description = "Сбросить закэшированные данные одного пользователя во всех кэшах или в одном (cache)",
+            responses = {
+                    @ApiResponse(responseCode = "200",
+                            description = "Кэши пользователя сброшены",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = CacheInvalidationDto.class))),
+                    @ApiResponse(responseCode = "400", description = "Invalid user_id or cache")
+            })
+    @PostMapping("/clear-caches/users/{user_id}")
+    public CacheInvalidationDto clearUserCaches(
+            @Parameter(description = "User id (UUID)", required = true)
+            @PathVariable("user_id") String userId,
+            @Parameter(description = "Имя кэша: user-aggregates, columnar-aggregates")
+            @RequestParam(name = "cache", required = false) String cache
+    ) {
+        UUID parsed = UuidParser.parseUserId(userId);
+        log.info("Clearing caches for user_id={}, cache={}", parsed, cache);
+        return cacheManagementService.invalidateUser(parsed, cache == null ? null : KnowledgeCache.fromId(cache));
+    }
+
+    /**
+     * Точечный сброс кешей по типу продукта.
+     */
+    @Operation(summary = "Сбросить кэши по типу продукта",
+            description = "Перечитать справочник продуктов и сбросить снимки пользователей с транзакциями "
+                    + "по этому типу продукта; если справочник изменил тип продуктов — сбросить кэш агрегатов целиком "
+                    + "и перезагрузить колоночный снимок; cache — сбросить только один кэш",
+            responses = {
+                    @ApiResponse(responseCode = "200",
+                            description = "Кэши по типу продукта сброшены",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = CacheInvalidationDto.class))),
+                    @ApiResponse(responseCode = "400", description = "Invalid cache")
+            })
+    @PostMapping("/clear-caches/product-types/{product_type}")
+    public CacheInvalidationDto clearProductTypeCaches(
+            @Parameter(description = "Тип продукта (DEBIT, CREDIT, SAVING, INVEST)", required = true)
+            @PathVariable("product_type") String productType,
+            @Parameter(description = "Имя кэша: user-aggregates, columnar-aggregates, product-catalog")
+            @RequestParam(name = "cache", required = false) String cache
+    ) {
+        log.info("Clearing caches for product_type={}, cache={}", productType, cache);
+        return cacheManagementService.invalidateProductType(
+                productType, cache == null ? null : KnowledgeCache.fromId(cache));
+    }
 }
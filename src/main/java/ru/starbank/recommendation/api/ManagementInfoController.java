@@ -7,11 +7,18 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.boot.info.BuildProperties;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.starbank.recommendation.config.pool.ConnectionPools;
+import ru.starbank.recommendation.domain.dto.management.ConnectionPoolsResponseDto;
 import ru.starbank.recommendation.domain.dto.management.ManagementInfoDto;
+import ru.starbank.recommendation.domain.dto.management.ReadinessDto;
 
 /**
  * Технологический контроллер Stage 3 для получения информации о сервисе.
@@ -23,9 +30,15 @@ public class ManagementInfoController {
 
     private static final Logger log = LoggerFactory.getLogger(ManagementInfoController.class);
     private final BuildProperties buildProperties;
+    private final ApplicationAvailability applicationAvailability;
+    private final ConnectionPools connectionPools;
 
-    public ManagementInfoController(BuildProperties buildProperties) {
+    public ManagementInfoController(BuildProperties buildProperties,
+                                    ApplicationAvailability applicationAvailability,
+                                    ConnectionPools connectionPools) {
         this.buildProperties = buildProperties;
+        this.applicationAvailability = applicationAvailability;
+        this.connectionPools = connectionPools;
     }
 
     /**
@@ -47,4 +60,45 @@ public class ManagementInfoController {
                 buildProperties.getVersion()
         );
     }
-}
\ No newline at end of file
+
+    /**
+     * Готовность принимать трафик (для readiness probe).
+     *
+     * <p>Сервис готов после завершения старта, включая прогрев кеша (knowledge.warm-up).</p>
+     */
+    @Operation(summary = "Готовность сервиса",
+            description = "200, если сервис принимает трафик; 503, пока идёт старт и прогрев кэша",
+            responses = {
+                    @ApiResponse(responseCode = "200",
+                            description = "Сервис готов",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ReadinessDto.class))),
+                    @ApiResponse(responseCode = "503",
+                            description = "Сервис ещё не готов",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ReadinessDto.class)))
+            })
+    @GetMapping("/readiness")
+    public ResponseEntity<ReadinessDto> readiness() {
+        ReadinessState state = applicationAvailability.getReadinessState();
+        HttpStatus status = state == ReadinessState.ACCEPTING_TRAFFIC ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(new ReadinessDto(state.name()));
+    }
+
+    /**
+     * Пулы соединений с БД: занятость, очередь ожидания, время получения соединения, таймауты.
+     */
+    @Operation(summary = "Пулы соединений",
+            description = "Active/idle/pending, размер, количество выдач, среднее и максимальное ожидание "
+                    + "соединения и таймауты каждого именованного пула",
+            responses = {
+                    @ApiResponse(responseCode = "200",
+                            description = "Успешный запрос",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ConnectionPoolsResponseDto.class)))
+            })
+    @GetMapping("/pools")
+    public ConnectionPoolsResponseDto pools() {
+        return new ConnectionPoolsResponseDto(connectionPools.stats());
+    }
+}
@@ -7,14 +7,20 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import ru.starbank.recommendation.domain.dto.RecommendationResponseDto;
+import ru.starbank.recommendation.domain.rules.FixedRuleFacts;
 import ru.starbank.recommendation.repository.RecommendationRepository;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
 import ru.starbank.recommendation.service.RecommendationService;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.sql.Connection;
 import java.util.List;
+import java.util.Objects;
 import java.util.UUID;
 
 /**
@@ -39,37 +45,52 @@ public class DatabaseSmokeCheck {
 
     private static final BigDecimal KOPECKS_DIVISOR = BigDecimal.valueOf(100);
 
+    private final ProductCatalog productCatalog;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+
+    public DatabaseSmokeCheck(ProductCatalog productCatalog, JdbcTemplate jdbcTemplate) {
+        this.productCatalog = Objects.requireNonNull(productCatalog, "productCatalog must not be null");
+        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate must not be null");
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
     @Bean
-    public ApplicationRunner databaseSmokeCheckRunner(JdbcTemplate jdbcTemplate,
-                                                      RecommendationRepository recommendationRepository,
+    public ApplicationRunner databaseSmokeCheckRunner(RecommendationRepository recommendationRepository,
+                                                      KnowledgeRepository knowledgeRepository,
                                                       RecommendationService recommendationService) {
         return args -> {
-            printJdbcUrl(jdbcTemplate);
-            printBasicCounts(jdbcTemplate);
-            printDistinctTypes(jdbcTemplate);
+            printJdbcUrl();
+            printBasicCounts();
+            printDistinctTypes();
 
             // Old probe (kept)
-            printRawAmountProbeForInvest500(jdbcTemplate);
+            printRawAmountProbeForInvest500();
 
             // NEW: full decision inputs for all golden users
-            printGoldenUsersDecisionInputs(jdbcTemplate);
+            printGoldenUsersDecisionInputs();
 
             // Golden verification: repo rule + API output
             log.info("============================================================");
             log.info("Golden users verification (expected rules MUST match):");
 
-            checkGoldenUser(jdbcTemplate, recommendationService,
+            checkGoldenUser(recommendationService,
                     USER_INVEST_500, EXPECT_INVEST_500,
                     recommendationRepository.matchesInvest500(USER_INVEST_500));
 
-            checkGoldenUser(jdbcTemplate, recommendationService,
+            checkGoldenUser(recommendationService,
                     USER_TOP_SAVING, EXPECT_TOP_SAVING,
                     recommendationRepository.matchesTopSaving(USER_TOP_SAVING));
 
-            checkGoldenUser(jdbcTemplate, recommendationService,
+            checkGoldenUser(recommendationService,
                     USER_SIMPLE_CREDIT, EXPECT_SIMPLE_CREDIT,
                     recommendationRepository.matchesSimpleCredit(USER_SIMPLE_CREDIT));
 
+            // Fixed rules are served from cached aggregates: they must agree with SQL
+            for (UUID userId : List.of(USER_INVEST_500, USER_TOP_SAVING, USER_SIMPLE_CREDIT)) {
+                checkCachedFacts(recommendationRepository, knowledgeRepository, userId);
+            }
+
             log.info("============================================================");
         };
     }
@@ -78,7 +99,7 @@ public class DatabaseSmokeCheck {
     // Basic environment / DB checks
     // -------------------------------------------------------------------------
 
-    private void printJdbcUrl(JdbcTemplate jdbcTemplate) {
+    private void printJdbcUrl() {
         try (Connection c = jdbcTemplate.getDataSource().getConnection()) {
             log.info("JDBC URL = {}", c.getMetaData().getURL());
         } catch (Exception e) {
@@ -86,7 +107,7 @@ public class DatabaseSmokeCheck {
         }
     }
 
-    private void printBasicCounts(JdbcTemplate jdbcTemplate) {
+    private void printBasicCounts() {
         Integer users = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.users", Integer.class);
         Integer products = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.products", Integer.class);
         Integer transactions = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.transactions", Integer.class);
@@ -94,7 +115,7 @@ public class DatabaseSmokeCheck {
         log.info("DB OK. USERS={}, PRODUCTS={}, TRANSACTIONS={}", users, products, transactions);
     }
 
-    private void printDistinctTypes(JdbcTemplate jdbcTemplate) {
+    private void printDistinctTypes() {
         log.info("DB distinct product types:");
         jdbcTemplate.queryForList("SELECT DISTINCT p.type AS t FROM public.products p ORDER BY 1")
                     .forEach(row -> log.info(" - {}", row.get("T")));
@@ -107,19 +128,8 @@ public class DatabaseSmokeCheck {
     /**
      * Raw probe for Invest500 user: SAVING deposits sum (DB units) and /100 as RUB if DB stores kopecks.
      */
-    private void printRawAmountProbeForInvest500(JdbcTemplate jdbcTemplate) {
-        Long rawSavingDeposits = jdbcTemplate.queryForObject("""
-            SELECT COALESCE(SUM(t.amount), 0)
-            FROM transactions t
-            JOIN products p ON p.id = t.product_id
-            WHERE t.user_id = ?
-              AND p.type = 'SAVING'
-              AND t.type = 'DEPOSIT'
-            """, Long.class, USER_INVEST_500);
-
-        if (rawSavingDeposits == null) {
-            rawSavingDeposits = 0L;
-        }
+    private void printRawAmountProbeForInvest500() {
+        long rawSavingDeposits = rawSum(USER_INVEST_500, "SAVING", "DEPOSIT");
 
         double asRublesIfKopecks = rawSavingDeposits / 100.0;
 
@@ -131,13 +141,13 @@ public class DatabaseSmokeCheck {
     // Decision inputs report (what numbers actually participate in rules)
     // -------------------------------------------------------------------------
 
-    private void printGoldenUsersDecisionInputs(JdbcTemplate jdbcTemplate) {
+    private void printGoldenUsersDecisionInputs() {
         log.info("============================================================");
         log.info("Decision inputs (amounts in KOPECKS + RUB) for golden users:");
 
-        printDecisionInputsForUser(jdbcTemplate, USER_INVEST_500, "Invest500 golden user");
-        printDecisionInputsForUser(jdbcTemplate, USER_TOP_SAVING, "TopSaving golden user");
-        printDecisionInputsForUser(jdbcTemplate, USER_SIMPLE_CREDIT, "SimpleCredit golden user");
+        printDecisionInputsForUser(USER_INVEST_500, "Invest500 golden user");
+        printDecisionInputsForUser(USER_TOP_SAVING, "TopSaving golden user");
+        printDecisionInputsForUser(USER_SIMPLE_CREDIT, "SimpleCredit golden user");
 
         log.info("============================================================");
     }
@@ -145,21 +155,21 @@ public class DatabaseSmokeCheck {
     /**
      * Prints full profile of metrics used by Stage 1 rules.
      */
-    private void printDecisionInputsForUser(JdbcTemplate jdbcTemplate, UUID userId, String label) {
+    private void printDecisionInputsForUser(UUID userId, String label) {
         log.info("------------------------------------------------------------");
         log.info("Decision inputs for {}: user_id={}", label, userId);
 
-        boolean hasDebit = hasAnyProductOfType(jdbcTemplate, userId, "DEBIT");
-        boolean hasSaving = hasAnyProductOfType(jdbcTemplate, userId, "SAVING");
-        boolean hasInvest = hasAnyProductOfType(jdbcTemplate, userId, "INVEST");
-        boolean hasCredit = hasAnyProductOfType(jdbcTemplate, userId, "CREDIT");
+        boolean hasDebit = hasAnyProductOfType(userId, "DEBIT");
+        boolean hasSaving = hasAnyProductOfType(userId, "SAVING");
+        boolean hasInvest = hasAnyProductOfType(userId, "INVEST");
+        boolean hasCredit = hasAnyProductOfType(userId, "CREDIT");
 
         log.info("Product usage flags: hasDEBIT={}, hasSAVING={}, hasINVEST={}, hasCREDIT={}",
                 hasDebit, hasSaving, hasInvest, hasCredit);
 
-        Money debitDeposit = sumAmount(jdbcTemplate, userId, "DEBIT", "DEPOSIT");
-        Money debitWithdraw = sumAmount(jdbcTemplate, userId, "DEBIT", "WITHDRAW");
-        Money savingDeposit = sumAmount(jdbcTemplate, userId, "SAVING", "DEPOSIT");
+        Money debitDeposit = sumAmount(userId, "DEBIT", "DEPOSIT");
+        Money debitWithdraw = sumAmount(userId, "DEBIT", "WITHDRAW");
+        Money savingDeposit = sumAmount(userId, "SAVING", "DEPOSIT");
 
         log.info("Sums by rule inputs:");
         logMoney("DEBIT  DEPOSIT", debitDeposit);
@@ -186,30 +196,20 @@ public class DatabaseSmokeCheck {
                 invest500ByLogicRub, topSavingByLogicRub, simpleCreditByLogicRub);
     }
 
-    private boolean hasAnyProductOfType(JdbcTemplate jdbcTemplate, UUID userId, String productType) {
-        Boolean result = jdbcTemplate.queryForObject("""
+    private boolean hasAnyProductOfType(UUID userId, String productType) {
+        Boolean result = namedJdbcTemplate.queryForObject("""
             SELECT EXISTS (
                 SELECT 1
                 FROM transactions t
-                JOIN products p ON p.id = t.product_id
-                WHERE t.user_id = ? AND p.type = ?
+                WHERE t.user_id = :userId AND t.product_id IN (:productIds)
             ) AS result
-            """, Boolean.class, userId, productType);
+            """, productParams(userId, productType), Boolean.class);
 
         return Boolean.TRUE.equals(result);
     }
 
-    private Money sumAmount(JdbcTemplate jdbcTemplate, UUID userId, String productType, String transactionType) {
-        Long raw = jdbcTemplate.queryForObject("""
-            SELECT COALESCE(SUM(t.amount), 0)
-            FROM transactions t
-            JOIN products p ON p.id = t.product_id
-            WHERE t.user_id = ?
-              AND p.type = ?
-              AND t.type = ?
-            """, Long.class, userId, productType, transactionType);
-
-        long rawKop = raw == null ? 0L : raw;
+    private Money sumAmount(UUID userId, String productType, String transactionType) {
+        long rawKop = rawSum(userId, productType, transactionType);
 
         BigDecimal rub = BigDecimal.valueOf(rawKop)
                                    .divide(KOPECKS_DIVISOR, 2, RoundingMode.HALF_UP);
@@ -217,6 +217,28 @@ public class DatabaseSmokeCheck {
         return new Money(rawKop, rub);
     }
 
+    private long rawSum(UUID userId, String productType, String transactionType) {
+        Long raw = namedJdbcTemplate.queryForObject("""
+            SELECT COALESCE(SUM(t.amount), 0)
+            FROM transactions t
+            WHERE t.user_id = :userId
+              AND t.product_id IN (:productIds)
+              AND t.type = :transactionType
+            """, productParams(userId, productType).addValue("transactionType", transactionType), Long.class);
+
+        return raw == null ? 0L : raw;
+    }
+
+    /**
+     * Product type filter via in-memory catalog (no JOIN with products).
+     */
+    private MapSqlParameterSource productParams(UUID userId, String productType) {
+        List<UUID> productIds = productCatalog.productIdsOf(productType);
+        return new MapSqlParameterSource()
+                .addValue("userId", userId)
+                .addValue("productIds", productIds.isEmpty() ? List.of(ProductCatalog.NO_PRODUCT) : productIds);
+    }
+
     private void logMoney(String label, Money money) {
         log.info("{}: rawKop={} | rub={}", label, money.rawKop, money.rub);
     }
@@ -241,8 +263,7 @@ public class DatabaseSmokeCheck {
     // Golden users verification: repo rule + API response
     // -------------------------------------------------------------------------
 
-    private void checkGoldenUser(JdbcTemplate jdbcTemplate,
-                                 RecommendationService recommendationService,
+    private void checkGoldenUser(RecommendationService recommendationService,
                                  UUID userId,
                                  String expectedRecommendationName,
                                  boolean repoRuleResult) {
@@ -288,4 +309,17 @@ public class DatabaseSmokeCheck {
             log.info("OK: expected recommendation '{}' is returned by API.", expectedRecommendationName);
         }
     }
-}
\ No newline at end of file
+
+    private void checkCachedFacts(RecommendationRepository recommendationRepository,
+                                  KnowledgeRepository knowledgeRepository,
+                                  UUID userId) {
+        FixedRuleFacts fromSql = recommendationRepository.fixedRuleFacts(userId);
+        FixedRuleFacts fromCache = FixedRuleFacts.from(knowledgeRepository.aggregatesFor(userId));
+        if (fromSql.equals(fromCache)) {
+            log.info("OK: cached fixed rule facts match SQL for user={}", userId);
+        } else {
+            log.warn("FAIL: cached fixed rule facts differ from SQL for user={}: sql={}, cache={}",
+                    userId, fromSql, fromCache);
+        }
+    }
+}
@@ -1,21 +1,57 @@
 package ru.starbank.recommendation.config;
 
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.config.knowledge.ReplicaRoutingDataSource;
+import ru.starbank.recommendation.config.pool.ConnectionPools;
+import ru.starbank.recommendation.config.pool.DeadlineAwareJdbcTemplate;
+import ru.starbank.recommendation.config.pool.QueryDeadline;
+import ru.starbank.recommendation.config.pool.Workload;
+import ru.starbank.recommendation.config.pool.WorkloadRoutingDataSource;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeShards;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
 
 /**
  * Конфигурация основной (первой) БД "базы знаний".
  * <p>
  * Требование Stage 2: основная БД должна быть помечена как {@link Primary},
  * а DataSource должен собираться через {@link DataSourceProperties#initializeDataSourceBuilder()}.
+ * <p>
+ * Чтения knowledge DB идут через {@code knowledgeReadJdbcTemplate}: при
+ * {@code knowledge.read-replicas.enabled=true} — через реплики ({@link ReplicaRoutingDataSource}),
+ * иначе — через основную БД. При {@code knowledge.sharding.enabled=true} данные пользователей
+ * читаются из шардов ({@link KnowledgeShards}), основная БД остаётся для служебных таблиц сервиса.
+ * <p>
+ * Все пулы именованы и регистрируются в {@link ConnectionPools} (GET /management/pools). При
+ * {@code knowledge.pools.enabled=true} у чтений knowledge DB (основная БД, реплики, шарды) и у rules DB
+ * отдельные пулы для онлайн-запросов, бота и фоновых задач ({@link WorkloadRoutingDataSource}).
  */
 @Configuration
 public class DefaultDataSourceConfig {
+    private static final Logger log = LoggerFactory.getLogger(DefaultDataSourceConfig.class);
 
     /**
      * Считывает параметры основной БД из spring.datasource.*
@@ -32,9 +68,188 @@ public class DefaultDataSourceConfig {
      */
     @Bean(name = "defaultDataSource")
     @Primary
-    public DataSource defaultDataSource(DataSourceProperties defaultDataSourceProperties) {
-        return defaultDataSourceProperties
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource defaultDataSource(DataSourceProperties defaultDataSourceProperties, ConnectionPools connectionPools) {
+        return connectionPools.register("knowledge", defaultDataSourceProperties
                 .initializeDataSourceBuilder()
-                .build();
+                .type(HikariDataSource.class)
+                .build());
+    }
+
+    /**
+     * TransactionManager для knowledge DB.
+     *
+     * <p>Сервис читает knowledge DB без транзакций; менеджер нужен только фоновым задачам,
+     * которые пишут служебные таблицы (например, материализованные агрегаты).</p>
+     */
+    @Bean(name = "knowledgeTransactionManager")
+    public PlatformTransactionManager knowledgeTransactionManager(
+            @Qualifier("defaultDataSource") DataSource defaultDataSource
+    ) {
+        return new DataSourceTransactionManager(defaultDataSource);
+    }
+
+    /**
+     * JdbcTemplate основной БД (служебные записи, фоновые задачи). Объявлен явно: из-за
+     * {@code knowledgeReadJdbcTemplate} автоконфигурация JdbcTemplate не создаётся.
+     */
+    @Bean
+    @Primary
+    public JdbcTemplate jdbcTemplate(@Qualifier("defaultDataSource") DataSource defaultDataSource) {
+        return new JdbcTemplate(defaultDataSource);
+    }
+
+    /**
+     * Отдельные пулы чтения основной knowledge DB для онлайн-запросов, бота и фоновых задач.
+     */
+    @Bean(name = "knowledgeWorkloadDataSource", destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "knowledge.pools", name = "enabled", havingValue = "true")
+    public WorkloadRoutingDataSource knowledgeWorkloadDataSource(
+            DataSourceProperties defaultDataSourceProperties,
+            KnowledgeProperties properties,
+            ConnectionPools connectionPools
+    ) {
+        return workloadPools("knowledge-read",
+                () -> defaultDataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build(),
+                properties.getPools(), connectionPools);
+    }
+
+    /**
+     * Маршрутизация чтений knowledge DB по репликам. Запасной вариант — основная БД
+     * (через пулы по классам нагрузки, если они включены).
+     */
+    @Bean(name = "knowledgeReplicaDataSource", destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "knowledge.read-replicas", name = "enabled", havingValue = "true")
+    public ReplicaRoutingDataSource knowledgeReplicaDataSource(
+            @Qualifier("defaultDataSource") DataSource defaultDataSource,
+            @Qualifier("knowledgeWorkloadDataSource") ObjectProvider<WorkloadRoutingDataSource> knowledgeWorkloadDataSource,
+            KnowledgeProperties properties,
+            ConnectionPools connectionPools
+    ) {
+        KnowledgeProperties.ReadReplicas settings = properties.getReadReplicas();
+        List<KnowledgeProperties.DataSourceSettings> configured = settings.getDatasources();
+
+        Map<String, DataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < configured.size(); i++) {
+            KnowledgeProperties.DataSourceSettings replica = configured.get(i);
+            String name = nameOf(replica, "replica-" + i);
+            replicas.put(name, buildDataSource("knowledge-" + name, () -> hikari(replica), properties.getPools(), connectionPools));
+        }
+        log.info("Knowledge reads routed to replicas: {}", replicas.keySet());
+
+        DataSource primary = knowledgeWorkloadDataSource.getIfAvailable();
+        return new ReplicaRoutingDataSource(
+                primary != null ? primary : defaultDataSource,
+                replicas,
+                Duration.ofMillis(settings.getHealthCheckIntervalMs()),
+                settings.getHealthCheckTimeoutSeconds()
+        );
+    }
+
+    /**
+     * JdbcTemplate для чтения knowledge DB (репозитории, загрузчики кешей, справочники).
+     * Запросы онлайн-вычислений ограничены сроком запроса ({@link QueryDeadline}).
+     */
+    @Bean(name = "knowledgeReadJdbcTemplate")
+    public JdbcTemplate knowledgeReadJdbcTemplate(
+            @Qualifier("defaultDataSource") DataSource defaultDataSource,
+            ObjectProvider<ReplicaRoutingDataSource> knowledgeReplicaDataSource,
+            @Qualifier("knowledgeWorkloadDataSource") ObjectProvider<WorkloadRoutingDataSource> knowledgeWorkloadDataSource
+    ) {
+        DataSource replicas = knowledgeReplicaDataSource.getIfAvailable();
+        if (replicas != null) {
+            return new DeadlineAwareJdbcTemplate(replicas);
+        }
+        DataSource pools = knowledgeWorkloadDataSource.getIfAvailable();
+        return new DeadlineAwareJdbcTemplate(pools != null ? pools : defaultDataSource);
+    }
+
+    /**
+     * Шарды knowledge DB для чтения. Без шардирования — один шард {@code knowledgeReadJdbcTemplate}.
+     */
+    @Bean(destroyMethod = "close")
+    public KnowledgeShards knowledgeShards(
+            @Qualifier("knowledgeReadJdbcTemplate") JdbcTemplate knowledgeReadJdbcTemplate,
+            KnowledgeProperties properties,
+            ConnectionPools connectionPools
+    ) {
+        KnowledgeProperties.Sharding settings = properties.getSharding();
+        if (!settings.isEnabled()) {
+            return KnowledgeShards.single(knowledgeReadJdbcTemplate);
+        }
+        if (settings.getDatasources().isEmpty()) {
+            throw new IllegalStateException("knowledge.sharding.enabled=true requires knowledge.sharding.datasources");
+        }
+        if (properties.getAggregates().getSource() == KnowledgeProperties.AggregatesSource.MATERIALIZED) {
+            throw new IllegalStateException("knowledge.aggregates.source=materialized is not supported with sharding");
+        }
+
+        List<JdbcTemplate> shards = new ArrayList<>();
+        List<AutoCloseable> pools = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < settings.getDatasources().size(); i++) {
+            KnowledgeProperties.DataSourceSettings shard = settings.getDatasources().get(i);
+            String name = nameOf(shard, "shard-" + i);
+            DataSource dataSource = buildDataSource("knowledge-" + name, () -> hikari(shard), properties.getPools(), connectionPools);
+            shards.add(new DeadlineAwareJdbcTemplate(dataSource));
+            if (dataSource instanceof AutoCloseable closeable) {
+                pools.add(closeable);
+            }
+            names.add(name);
+        }
+        log.info("Knowledge data sharded by user_id across {} shards: {}", shards.size(), names);
+        return new KnowledgeShards(shards, pools);
+    }
+
+    /**
+     * Именованный пул или, при {@code knowledge.pools.enabled=true}, по пулу на каждый класс нагрузки
+     * ({@code <name>-online}, {@code <name>-bot}, {@code <name>-background}).
+     */
+    private static DataSource buildDataSource(
+            String name,
+            Supplier<HikariDataSource> factory,
+            KnowledgeProperties.Pools settings,
+            ConnectionPools connectionPools
+    ) {
+        if (!settings.isEnabled()) {
+            return connectionPools.register(name, factory.get());
+        }
+        return workloadPools(name, factory, settings, connectionPools);
+    }
+
+    /**
+     * По пулу на каждый класс нагрузки ({@code <name>-online}, {@code <name>-bot}, {@code <name>-background}).
+     * Используется и для rules DB ({@link RulesDataSourceConfig}).
+     */
+    static WorkloadRoutingDataSource workloadPools(
+            String name,
+            Supplier<HikariDataSource> factory,
+            KnowledgeProperties.Pools settings,
+            ConnectionPools connectionPools
+    ) {
+        Map<Workload, DataSource> pools = new EnumMap<>(Workload.class);
+        for (Workload workload : Workload.values()) {
+            KnowledgeProperties.Pool pool = settings.forWorkload(workload);
+            HikariDataSource dataSource = factory.get();
+            dataSource.setMaximumPoolSize(pool.getMaximumPoolSize());
+            dataSource.setMinimumIdle(pool.getMinimumIdle());
+            dataSource.setConnectionTimeout(pool.getConnectionTimeoutMs());
+            pools.put(workload, connectionPools.register(name + "-" + workload.name().toLowerCase(Locale.ROOT), dataSource));
+        }
+        return new WorkloadRoutingDataSource(pools);
+    }
+
+    private static HikariDataSource hikari(KnowledgeProperties.DataSourceSettings settings) {
+        return DataSourceBuilder.create()
+                                .type(HikariDataSource.class)
+                                .driverClassName(settings.getDriverClassName())
+                                .url(settings.getUrl())
+                                .username(settings.getUsername())
+                                .password(settings.getPassword())
+                                .build();
+    }
+
+    private static String nameOf(KnowledgeProperties.DataSourceSettings settings, String defaultName) {
+        return settings.getName() == null || settings.getName().isBlank() ? defaultName : settings.getName();
     }
-}
\ No newline at end of file
+}
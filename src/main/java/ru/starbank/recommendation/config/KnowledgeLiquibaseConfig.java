@@ -0,0 +1,62 @@
+package ru.starbank.recommendation.config;
+
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.sql.init.dependency.DependsOnDatabaseInitialization;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
+
+import javax.sql.DataSource;
+import java.util.Objects;
+
+/**
+ * Liquibase для основной БД (knowledge DB) — опционально.
+ *
+ * <p>Схема knowledge DB ведётся не нами, поэтому миграции здесь только добавляют индексы
+ * под горячие запросы сервиса. Включается флагом {@code knowledge.liquibase.enabled=true}.</p>
+ *
+ * <p>Если схема создаётся через sql init (тесты), индексы должны добавляться после него.
+ * Spring Boot же запускает бины {@link SpringLiquibase} раньше sql init, поэтому миграция
+ * оформлена не как инициализатор БД, а как бин, зависящий от инициализации БД: порядок
+ * выстраивает {@code DatabaseInitializationDependencyConfigurer}, без ручного получения
+ * бинов-инициализаторов (и без цикла между ними).</p>
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "knowledge.liquibase", name = "enabled", havingValue = "true")
+public class KnowledgeLiquibaseConfig {
+
+    @Bean
+    @DependsOnDatabaseInitialization
+    public KnowledgeIndexMigration knowledgeLiquibase(
+            @Qualifier("defaultDataSource") DataSource defaultDataSource,
+            ResourceLoader resourceLoader
+    ) {
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(defaultDataSource);
+        liquibase.setChangeLog("classpath:/db/changelog/db.changelog-knowledge.yaml");
+        liquibase.setResourceLoader(resourceLoader);
+
+        return new KnowledgeIndexMigration(liquibase);
+    }
+
+    /**
+     * Обёртка над {@link SpringLiquibase}: сама не является инициализатором БД,
+     * а применяет миграции после всех инициализаторов.
+     */
+    public static final class KnowledgeIndexMigration implements InitializingBean {
+
+        private final SpringLiquibase liquibase;
+
+        KnowledgeIndexMigration(SpringLiquibase liquibase) {
+            this.liquibase = Objects.requireNonNull(liquibase, "liquibase");
+        }
+
+        @Override
+        public void afterPropertiesSet() throws Exception {
+            liquibase.afterPropertiesSet();
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package ru.starbank.recommendation.config;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
@@ -10,6 +12,9 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
 import org.springframework.transaction.PlatformTransactionManager;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.config.pool.ConnectionPools;
+import ru.starbank.recommendation.config.pool.WorkloadRoutingDataSource;
 
 import javax.sql.DataSource;
 import java.util.HashMap;
@@ -30,6 +35,10 @@ import java.util.Map;
  * </ul>
  *
  * <p>Префикс настроек: spring.rules-datasource.*
+ *
+ * <p>Правила читаются на каждый запрос рекомендаций (HTTP и бот), а совпадения правил пишутся в статистику,
+ * поэтому при {@code knowledge.pools.enabled=true} у rules DB, как и у knowledge DB, отдельные пулы для
+ * онлайн-запросов, бота и фоновых задач ({@link WorkloadRoutingDataSource}, размеры — {@code knowledge.pools.*}).
  */
 @Configuration
 @EnableJpaRepositories(
@@ -49,13 +58,34 @@ public class RulesDataSourceConfig {
     }
 
     /**
-     * DataSource второй БД (правила).
+     * DataSource второй БД (правила): именованный пул "rules", настройки пула — spring.rules-datasource.hikari.*
      */
     @Bean(name = "rulesDataSource")
-    public DataSource rulesDataSource(
-            @Qualifier("rulesDataSourceProperties") DataSourceProperties properties
+    @ConfigurationProperties("spring.rules-datasource.hikari")
+    @ConditionalOnProperty(prefix = "knowledge.pools", name = "enabled", havingValue = "false", matchIfMissing = true)
+    public HikariDataSource rulesDataSource(
+            @Qualifier("rulesDataSourceProperties") DataSourceProperties properties,
+            ConnectionPools connectionPools
+    ) {
+        return connectionPools.register("rules", properties
+                .initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build());
+    }
+
+    /**
+     * DataSource второй БД с пулами по классам нагрузки: rules-online, rules-bot, rules-background.
+     */
+    @Bean(name = "rulesDataSource", destroyMethod = "close")
+    @ConditionalOnProperty(prefix = "knowledge.pools", name = "enabled", havingValue = "true")
+    public WorkloadRoutingDataSource rulesWorkloadDataSource(
+            @Qualifier("rulesDataSourceProperties") DataSourceProperties properties,
+            KnowledgeProperties knowledgeProperties,
+            ConnectionPools connectionPools
     ) {
-        return properties.initializeDataSourceBuilder().build();
+        return DefaultDataSourceConfig.workloadPools("rules",
+                () -> properties.initializeDataSourceBuilder().type(HikariDataSource.class).build(),
+                knowledgeProperties.getPools(), connectionPools);
     }
 
     /**
@@ -0,0 +1,14 @@
+package ru.starbank.recommendation.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Включает фоновые задачи по расписанию (@Scheduled).
+ *
+ * <p>Используется для периодического обновления in-memory справочников knowledge DB.</p>
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
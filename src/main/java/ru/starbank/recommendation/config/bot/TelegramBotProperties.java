@@ -62,5 +62,17 @@ public class TelegramBotProperties {
          */
         private long feedbackCooldownMs = 10_000;
 
+        /**
+         * Максимальный размер кеша времени последнего предупреждения (количество chatId).
+         * По умолчанию 10000.
+         */
+        private long feedbackCacheSize = 10_000;
+
+        /**
+         * TTL по неактивности (мс) для времени последнего предупреждения.
+         * По умолчанию 5 минут.
+         */
+        private long feedbackExpireAfterAccessMs = 300_000;
+
     }
 }
\ No newline at end of file
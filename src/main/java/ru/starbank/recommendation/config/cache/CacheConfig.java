@@ -1,66 +1,230 @@
 package ru.starbank.recommendation.config.cache;
 
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.lang.NonNull;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.config.pool.QueryDeadline;
+import ru.starbank.recommendation.config.pool.Workload;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.cache.InMemorySharedAggregatesCache;
+import ru.starbank.recommendation.repository.cache.SharedAggregatesCache;
+import ru.starbank.recommendation.repository.jdbc.CacheGeneration;
+import ru.starbank.recommendation.repository.jdbc.CachedAggregates;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesLoader;
 
 import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Конфигурация кешей для репозитория knowledge DB (Stage 3).
  *
- * <p>Кешируем результаты SQL-запросов к knowledge DB (read-only), используя явный Caffeine cache.get(key, mappingFn).</p>
+ * <p>Кешируем результаты SQL-запросов к knowledge DB (read-only) в Caffeine {@link AsyncLoadingCache}
+ * с загрузчиком {@link UserAggregatesLoader}: запись перезагружается после refreshAfterWrite, а размер
+ * кеша ограничен бюджетом памяти через weigher ({@link #entryWeight(UserAggregates)}).</p>
  *
- * <p>По требованиям Stage 3: не более 3 кешей.</p>
+ * <p>По требованиям Stage 3: не более 3 кешей. Сейчас используется один кеш — агрегаты пользователя
+ * ({@link UserAggregates}), из которых отвечают все запросы динамических правил.</p>
  *
- * <p>@SuppressWarnings (подавление предупреждений) добавлен исключительно из-за предупреждений IDEA: Non-null type argument is expected.
- * В record-классах мы гарантируем что переданные параметры не будут Null</p>
+ * <p>Кеш асинхронный ({@link AsyncLoadingCache}): загрузка идёт на отдельном пуле
+ * {@code knowledgeCacheExecutor}, а не под блокировкой внутри compute. После
+ * {@code knowledge.cache.refresh-after-write-ms} горячая запись перезагружается в фоне,
+ * и запросы продолжают получать текущее значение — без периодических пиков задержки.
+ * Загрузка наследует класс нагрузки и срок запроса ({@link QueryDeadline}) потока, который её начал.</p>
+ *
+ * <p>Очередь пула ограничена: при заполненной очереди фоновая перезагрузка не выполняется и запись
+ * сохраняет текущее значение, а загрузку промаха выполняет запросивший поток, который всё равно ждёт значение
+ * ({@link #rejectionAware}).</p>
+ *
+ * <p>@SuppressWarnings (подавление предупреждений) добавлен исключительно из-за предупреждений IDEA: Non-null type argument is expected.</p>
  *
  */
 @Configuration
 @SuppressWarnings({"nullness", "NullableProblems"})
 
 public class CacheConfig {
+    private static final Logger log = LoggerFactory.getLogger(CacheConfig.class);
 
+    /**
+     * Накладные расходы на запись помимо значения: UUID-ключ, узел Caffeine, CompletableFuture,
+     * {@link CachedAggregates} с поколением.
+     */
+    private static final int ENTRY_OVERHEAD_BYTES = 184;
+
+    /**
+     * Кеш агрегатов пользователя: одна запись на user_id со всеми count/sum по (productType, transactionType).
+     */
     @Bean
-    public Cache<HasAnyTransactionKey, Boolean> hasAnyTransactionCache() {
-        return Caffeine.newBuilder()
-                       .maximumSize(50_000)
-                       .expireAfterWrite(Duration.ofMinutes(15))
-                       .build();
+    public AsyncLoadingCache<UUID, CachedAggregates> userAggregatesCache(
+            UserAggregatesLoader loader,
+            CacheGeneration cacheGeneration,
+            @Qualifier("knowledgeCacheExecutor") ExecutorService knowledgeCacheExecutor,
+            CacheStatsRecorder userAggregatesCacheStats,
+            KnowledgeProperties properties
+    ) {
+        KnowledgeProperties.Cache settings = properties.getCache();
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                                                   .recordStats(() -> userAggregatesCacheStats);
+
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        long budget = memoryBudget(settings, maxHeap);
+        if (budget > 0) {
+            builder.maximumWeight(budget)
+                   .<UUID, CachedAggregates>weigher((userId, entry) -> entryWeight(entry.aggregates()));
+            log.info("User aggregates cache budget: {} MB of max heap {} MB, refreshAfterWrite={}ms, expireAfterWrite={}ms",
+                    budget / (1024 * 1024), maxHeap / (1024 * 1024),
+                    settings.getRefreshAfterWriteMs(), settings.getExpireAfterWriteMs());
+        } else {
+            builder.maximumSize(settings.getMaximumSize());
+            log.info("User aggregates cache limited by entries: maximumSize={}, max heap {} MB",
+                    settings.getMaximumSize(), maxHeap / (1024 * 1024));
+        }
+
+        return builder
+                       .refreshAfterWrite(Duration.ofMillis(settings.getRefreshAfterWriteMs()))
+                       .expireAfterWrite(Duration.ofMillis(settings.getExpireAfterWriteMs()))
+                       .executor(Workload.propagating(QueryDeadline.propagating(knowledgeCacheExecutor)))
+                       .buildAsync(rejectionAware(cacheGeneration.stamping(loader)));
     }
 
+    /**
+     * Статистика кеша агрегатов с гистограммой времени загрузки.
+     */
     @Bean
-    public Cache<CountTransactionsKey, Integer> countTransactionsCache() {
-        return Caffeine.newBuilder()
-                       .maximumSize(50_000)
-                       .expireAfterWrite(Duration.ofMinutes(15))
-                       .build();
+    public CacheStatsRecorder userAggregatesCacheStats() {
+        return new CacheStatsRecorder();
     }
 
+    /**
+     * Публикация кеша агрегатов в GET /management/caches.
+     */
     @Bean
-    public Cache<SumAmountKey, Long> sumAmountCache() {
-        return Caffeine.newBuilder()
-                       .maximumSize(100_000)
-                       .expireAfterWrite(Duration.ofMinutes(15))
-                       .build();
+    public ObservableCaches knowledgeObservableCaches(
+            AsyncLoadingCache<UUID, CachedAggregates> userAggregatesCache,
+            CacheStatsRecorder userAggregatesCacheStats
+    ) {
+        return () -> Map.of("user-aggregates",
+                new ObservedCache(userAggregatesCache.synchronous(), userAggregatesCacheStats));
     }
 
     /**
-     * Ключ кеша: есть ли у пользователя хотя бы одна транзакция по продуктам типа productType.
+     * L2-кеш агрегатов ({@code knowledge.cache.l2.enabled=true}). Встроенная реализация живёт в памяти
+     * процесса; для общего хранилища между узлами этот бин заменяется реализацией {@link SharedAggregatesCache}
+     * поверх внешнего хранилища.
      */
-    public record HasAnyTransactionKey(@NonNull UUID userId, @NonNull String productType) {}
+    @Bean
+    @ConditionalOnProperty(prefix = "knowledge.cache.l2", name = "enabled", havingValue = "true")
+    public SharedAggregatesCache sharedAggregatesCache(KnowledgeProperties properties, TypeDictionary typeDictionary) {
+        KnowledgeProperties.L2 settings = properties.getCache().getL2();
+        log.info("User aggregates L2 cache enabled: maximumSize={}, timeToLive={}ms",
+                settings.getMaximumSize(), settings.getTimeToLiveMs());
+        return new InMemorySharedAggregatesCache(settings.getMaximumSize(), Duration.ofMillis(settings.getTimeToLiveMs()), typeDictionary);
+    }
 
     /**
-     * Ключ кеша: количество транзакций пользователя по продуктам типа productType.
+     * Бюджет памяти кеша в байтах или 0, если кеш ограничивается по числу записей.
      */
-    public record CountTransactionsKey(@NonNull UUID userId, @NonNull String productType) {}
+    static long memoryBudget(KnowledgeProperties.Cache settings, long maxHeapBytes) {
+        if (settings.getMaximumBytes() != null) {
+            return settings.getMaximumBytes().toBytes();
+        }
+        if (settings.getMaxHeapPercent() > 0) {
+            return maxHeapBytes / 100 * settings.getMaxHeapPercent();
+        }
+        return 0;
+    }
 
     /**
-     * Ключ кеша: сумма amount по пользователю, productType и transactionType.
+     * Вес записи кеша в байтах: значение и накладные расходы записи.
      */
-    public record SumAmountKey(@NonNull UUID userId, @NonNull String productType, @NonNull String transactionType) {}
-}
\ No newline at end of file
+    static int entryWeight(UserAggregates aggregates) {
+        return ENTRY_OVERHEAD_BYTES + aggregates.estimatedBytes();
+    }
+
+    /**
+     * Загрузчик кеша поверх пула с ограниченной очередью. Если пул отклонил задачу:
+     * <ul>
+     *   <li>перезагрузка (refreshAfterWrite, {@code refresh}) отменяется — запись сохраняет текущее значение,
+     *   поток запроса не ходит в БД, следующее чтение после refreshAfterWrite повторит перезагрузку;</li>
+     *   <li>загрузка промаха выполняется в запросившем потоке: значения в кеше нет, и поток всё равно его ждёт.</li>
+     * </ul>
+     */
+    static <K, V> AsyncCacheLoader<K, V> rejectionAware(CacheLoader<K, V> loader) {
+        return new AsyncCacheLoader<>() {
+            @Override
+            public CompletableFuture<? extends V> asyncLoad(K key, Executor executor) throws Exception {
+                try {
+                    return loader.asyncLoad(key, executor);
+                } catch (RejectedExecutionException e) {
+                    return CompletableFuture.completedFuture(loader.load(key));
+                }
+            }
+
+            @Override
+            public CompletableFuture<? extends Map<? extends K, ? extends V>> asyncLoadAll(
+                    Set<? extends K> keys, Executor executor) throws Exception {
+                try {
+                    return loader.asyncLoadAll(keys, executor);
+                } catch (RejectedExecutionException e) {
+                    return CompletableFuture.completedFuture(loader.loadAll(keys));
+                }
+            }
+
+            @Override
+            public CompletableFuture<? extends V> asyncReload(K key, V oldValue, Executor executor) throws Exception {
+                try {
+                    return loader.asyncReload(key, oldValue, executor);
+                } catch (RejectedExecutionException e) {
+                    log.debug("Cache reload rejected, keeping current value: key={}", key);
+                    CompletableFuture<V> skipped = new CompletableFuture<>();
+                    skipped.cancel(false);
+                    return skipped;
+                }
+            }
+        };
+    }
+
+    /**
+     * Пул загрузки и фоновой перезагрузки кеша агрегатов (daemon-потоки, закрывается вместе с контекстом).
+     *
+     * <p>Очередь ограничена {@code knowledge.cache.loader-queue-capacity}; задачи сверх неё отклоняются
+     * ({@link #rejectionAware}): перезагрузки пропускаются, промахи загружает запросивший поток.</p>
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService knowledgeCacheExecutor(KnowledgeProperties properties) {
+        KnowledgeProperties.Cache settings = properties.getCache();
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-cache-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(
+                settings.getLoaderThreads(),
+                settings.getLoaderThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getLoaderQueueCapacity()),
+                threadFactory,
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+    }
+}
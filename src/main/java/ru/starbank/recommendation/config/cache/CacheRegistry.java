@@ -0,0 +1,62 @@
+package ru.starbank.recommendation.config.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Реестр Caffeine-кешей приложения для GET /management/caches.
+ *
+ * <p>Кеши находятся автоматически при каждом обращении:</p>
+ * <ul>
+ *   <li>бины {@link ObservableCaches} — компоненты с внутренними кешами (имена задаёт компонент);</li>
+ *   <li>бины {@link Cache} и {@link AsyncCache}, которые не опубликованы через {@link ObservableCaches},
+ *   — под именем бина, без гистограммы времени загрузки.</li>
+ * </ul>
+ */
+@Component
+@SuppressWarnings({"rawtypes", "nullness", "NullableProblems"})
+public class CacheRegistry {
+
+    private final ListableBeanFactory beanFactory;
+
+    public CacheRegistry(ListableBeanFactory beanFactory) {
+        this.beanFactory = Objects.requireNonNull(beanFactory, "beanFactory must not be null");
+    }
+
+    /**
+     * Все известные кеши: имя -> кеш.
+     */
+    public Map<String, ObservedCache> caches() {
+        Map<String, ObservedCache> result = new LinkedHashMap<>();
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        for (ObservableCaches component : beanFactory.getBeansOfType(ObservableCaches.class).values()) {
+            component.observableCaches().forEach((name, observed) -> {
+                result.put(name, observed);
+                seen.add(observed.cache());
+            });
+        }
+
+        for (Map.Entry<String, Cache> bean : beanFactory.getBeansOfType(Cache.class).entrySet()) {
+            if (seen.add(bean.getValue())) {
+                result.putIfAbsent(bean.getKey(), new ObservedCache(bean.getValue(), null));
+            }
+        }
+        for (Map.Entry<String, AsyncCache> bean : beanFactory.getBeansOfType(AsyncCache.class).entrySet()) {
+            Cache<?, ?> view = bean.getValue().synchronous();
+            if (seen.add(view)) {
+                result.putIfAbsent(bean.getKey(), new ObservedCache(view, null));
+            }
+        }
+        return result;
+    }
+}
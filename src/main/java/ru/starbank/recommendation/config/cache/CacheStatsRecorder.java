@@ -0,0 +1,92 @@
+package ru.starbank.recommendation.config.cache;
+
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.ConcurrentStatsCounter;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Статистика Caffeine-кеша с гистограммой времени загрузки.
+ *
+ * <p>Счётчики hit/miss/load/eviction — стандартный {@link ConcurrentStatsCounter}. Время загрузки
+ * дополнительно раскладывается по корзинам степеней двойки (в наносекундах), откуда берутся
+ * приблизительные перцентили: ответ — верхняя граница корзины, то есть завышен не более чем вдвое.</p>
+ *
+ * <p>Подключается через {@code Caffeine.recordStats(() -> recorder)}.</p>
+ */
+public class CacheStatsRecorder implements StatsCounter {
+
+    private static final int BUCKETS = Long.SIZE + 1;
+
+    private final ConcurrentStatsCounter delegate = new ConcurrentStatsCounter();
+    private final AtomicLongArray loadTimeBuckets = new AtomicLongArray(BUCKETS);
+
+    @Override
+    public void recordHits(int count) {
+        delegate.recordHits(count);
+    }
+
+    @Override
+    public void recordMisses(int count) {
+        delegate.recordMisses(count);
+    }
+
+    @Override
+    public void recordLoadSuccess(long loadTime) {
+        delegate.recordLoadSuccess(loadTime);
+        recordLoadTime(loadTime);
+    }
+
+    @Override
+    public void recordLoadFailure(long loadTime) {
+        delegate.recordLoadFailure(loadTime);
+        recordLoadTime(loadTime);
+    }
+
+    @Override
+    public void recordEviction(int weight, RemovalCause cause) {
+        delegate.recordEviction(weight, cause);
+    }
+
+    @Override
+    public CacheStats snapshot() {
+        return delegate.snapshot();
+    }
+
+    /**
+     * Приблизительный перцентиль времени загрузки (мс) или 0, если загрузок ещё не было.
+     *
+     * @param percentile доля от 0 до 1, например 0.99
+     */
+    public double loadTimePercentileMillis(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = loadTimeBuckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(percentile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBoundNanos(i) / 1_000_000.0;
+            }
+        }
+        return upperBoundNanos(BUCKETS - 1) / 1_000_000.0;
+    }
+
+    private void recordLoadTime(long nanos) {
+        loadTimeBuckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    private static double upperBoundNanos(int bucket) {
+        return Math.pow(2, bucket);
+    }
+}
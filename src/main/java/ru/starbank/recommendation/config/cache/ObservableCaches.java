@@ -0,0 +1,16 @@
+package ru.starbank.recommendation.config.cache;
+
+import java.util.Map;
+
+/**
+ * Компонент с собственными Caffeine-кешами, статистика которых публикуется в GET /management/caches.
+ *
+ * <p>Все бины с этим интерфейсом подхватываются {@link CacheRegistry} автоматически.</p>
+ */
+public interface ObservableCaches {
+
+    /**
+     * Кеши компонента: имя -> кеш со статистикой.
+     */
+    Map<String, ObservedCache> observableCaches();
+}
@@ -0,0 +1,13 @@
+package ru.starbank.recommendation.config.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * Кеш, публикуемый в статистике, и его {@link CacheStatsRecorder} (null, если гистограммы нет —
+ * тогда перцентили времени загрузки не считаются).
+ *
+ * @param cache    кеш
+ * @param recorder статистика с гистограммой времени загрузки или null
+ */
+public record ObservedCache(Cache<?, ?> cache, CacheStatsRecorder recorder) {
+}
@@ -0,0 +1,413 @@
+package ru.starbank.recommendation.config.knowledge;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Pattern;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+import ru.starbank.recommendation.config.pool.Workload;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки работы с knowledge DB из application.yml (префикс {@code knowledge}).
+ * В классе указаны значения по умолчанию.
+ */
+@Getter
+@Setter
+@Validated
+@ConfigurationProperties(prefix = "knowledge")
+public class KnowledgeProperties {
+
+    private final Aggregates aggregates = new Aggregates();
+
+    private final Cache cache = new Cache();
+
+    @Valid
+    private final Tailer tailer = new Tailer();
+
+    private final UserFilter userFilter = new UserFilter();
+
+    private final WarmUp warmUp = new WarmUp();
+
+    private final ReadReplicas readReplicas = new ReadReplicas();
+
+    private final Sharding sharding = new Sharding();
+
+    private final Pools pools = new Pools();
+
+    /**
+     * Источник агрегатов пользователя для {@link ru.starbank.recommendation.repository.jdbc.KnowledgeRepository}.
+     */
+    public enum AggregatesSource {
+        /**
+         * Агрегирование сырых транзакций при каждом промахе кеша.
+         */
+        LIVE,
+
+        /**
+         * Чтение по первичному ключу из таблицы user_product_aggregates.
+         */
+        MATERIALIZED,
+
+        /**
+         * Агрегаты всех пользователей в памяти, в колоночных массивах
+         * (см. {@link ru.starbank.recommendation.repository.jdbc.ColumnarAggregateStore}).
+         * Запросы не обращаются к БД; пока первая загрузка не завершена, работает LIVE.
+         */
+        COLUMNAR
+    }
+
+    @Getter
+    @Setter
+    public static class Aggregates {
+        /**
+         * Откуда читать агрегаты. По умолчанию LIVE.
+         */
+        private AggregatesSource source = AggregatesSource.LIVE;
+
+        /**
+         * Максимальный возраст материализованных данных (мс). Если последний полный проход
+         * старше — чтение идёт из сырых транзакций (LIVE). По умолчанию 10 минут.
+         */
+        private long maxStalenessMs = 600_000;
+
+        /**
+         * Интервал между проходами материализации / перезагрузками колоночного хранилища (мс).
+         * По умолчанию 5 минут.
+         */
+        private long refreshIntervalMs = 300_000;
+
+        /**
+         * Количество пользователей, пересчитываемых в одной транзакции. По умолчанию 1000.
+         */
+        private int refreshBatchSize = 1_000;
+
+        /**
+         * Как часто материализация пересчитывает всех пользователей (мс); между полными проходами
+         * пересчитываются только пользователи с новыми транзакциями. По умолчанию 1 час.
+         */
+        private long fullRefreshIntervalMs = 3_600_000;
+
+        /**
+         * Срок аренды прохода материализации (мс): проход выполняет один экземпляр сервиса, аренда
+         * продлевается после каждой порции. По умолчанию 10 минут.
+         */
+        private long refreshLeaseMs = 600_000;
+
+        /**
+         * Сколько пользователей загружается одним запросом {@code user_id IN (...)} при пакетной загрузке
+         * (прогрев, многопользовательские запросы, проверка фиксированных правил для когорты). По умолчанию 500.
+         */
+        private int loadBatchSize = 500;
+
+        /**
+         * Файл снимка колоночного хранилища (режим COLUMNAR). Пусто — снимок не пишется и не читается.
+         */
+        private String snapshotFile = "";
+
+        /**
+         * Максимальный возраст файла снимка, при котором он используется на старте (мс). По умолчанию 1 час.
+         */
+        private long snapshotMaxAgeMs = 3_600_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+        /**
+         * Бюджет памяти кеша агрегатов (например, 256MB). Если задан — кеш ограничивается
+         * по оценке занимаемых байт, а не по числу записей.
+         */
+        private DataSize maximumBytes;
+
+        /**
+         * Бюджет памяти кеша в процентах от максимального heap (-Xmx), если maximumBytes не задан.
+         * 0 — ограничение по числу записей (maximumSize). По умолчанию 10%.
+         */
+        private int maxHeapPercent = 10;
+
+        /**
+         * Максимум пользователей в кеше агрегатов, если бюджет памяти выключен. По умолчанию 50 000.
+         */
+        private long maximumSize = 50_000;
+
+        /**
+         * Через сколько после загрузки запись перезагружается в фоне при следующем обращении (мс).
+         * Пока идёт перезагрузка, читатели получают текущее значение. По умолчанию 10 минут.
+         */
+        private long refreshAfterWriteMs = 600_000;
+
+        /**
+         * Жёсткий срок жизни записи (мс): запись, к которой не обращались, удаляется. По умолчанию 15 минут.
+         */
+        private long expireAfterWriteMs = 900_000;
+
+        /**
+         * Потоки фоновой загрузки/перезагрузки кеша. По умолчанию 4.
+         */
+        private int loaderThreads = 4;
+
+        /**
+         * Очередь пула загрузки кеша. Когда она заполнена, фоновая перезагрузка пропускается (запись сохраняет
+         * текущее значение), а промах загружает поток, который его запросил. По умолчанию 1 000.
+         */
+        private int loaderQueueCapacity = 1_000;
+
+        /**
+         * Скорость фонового обновления записей после мягкого сброса (POST /management/clear-caches),
+         * записей в секунду. По умолчанию 200.
+         */
+        private int softClearRefreshPerSecond = 200;
+
+        /**
+         * Второй уровень кеша, общий для экземпляров сервиса.
+         */
+        private final L2 l2 = new L2();
+    }
+
+    @Getter
+    @Setter
+    public static class L2 {
+        /**
+         * Поиск промахов локального кеша в L2 перед загрузкой из knowledge DB. По умолчанию выключено.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Срок жизни записи L2 (мс). Должен быть меньше refresh-after-write-ms, иначе фоновая
+         * перезагрузка L1 будет получать из L2 то же значение. По умолчанию 5 минут.
+         */
+        private long timeToLiveMs = 300_000;
+
+        /**
+         * Максимум записей встроенной реализации L2. По умолчанию 200 000.
+         */
+        private long maximumSize = 200_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Tailer {
+        /**
+         * Инкрементальное применение новых транзакций к кешу агрегатов. По умолчанию выключено.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Монотонная колонка transactions с ingest-номером (см. db.changelog-knowledge.yaml).
+         * Подставляется в SQL как идентификатор, поэтому допускаются только [A-Za-z_][A-Za-z0-9_]*.
+         * По умолчанию ingest_seq.
+         */
+        @Pattern(regexp = "[A-Za-z_][A-Za-z0-9_]*")
+        private String sequenceColumn = "ingest_seq";
+
+        /**
+         * Интервал опроса новых транзакций (мс). По умолчанию 2000мс.
+         */
+        private long pollIntervalMs = 2_000;
+
+        /**
+         * Максимум транзакций, читаемых за один запрос. По умолчанию 5000.
+         */
+        private int batchSize = 5_000;
+
+        /**
+         * Сколько ждать транзакцию с пропущенным ingest-номером (мс): номер выдан, но строка ещё
+         * не закоммичена. После этого пропуск считается откатом и забывается. По умолчанию 60000мс.
+         */
+        private long gapTimeoutMs = 60_000;
+
+        /**
+         * Максимум одновременно отслеживаемых пропусков на шард; самые старые забываются первыми.
+         * По умолчанию 10000.
+         */
+        private int maxPendingGaps = 10_000;
+    }
+
+    @Getter
+    @Setter
+    public static class UserFilter {
+        /**
+         * Фильтр Блума известных пользователей: для точно неизвестных user_id рекомендации
+         * возвращаются пустыми без запросов к БД. По умолчанию выключено.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Минимальная ёмкость фильтра (пользователей). Фактическая — не меньше 1.25 x числа
+         * пользователей на момент пересборки. По умолчанию 1 000 000.
+         */
+        private long expectedUsers = 1_000_000;
+
+        /**
+         * Допустимая доля ложноположительных ответов (неизвестный пользователь проходит в SQL). По умолчанию 1%.
+         */
+        private double falsePositiveRate = 0.01;
+
+        /**
+         * Интервал полной пересборки фильтра (мс). По умолчанию 5 минут.
+         */
+        private long refreshIntervalMs = 300_000;
+    }
+
+    @Getter
+    @Setter
+    public static class WarmUp {
+        /**
+         * Прогрев кеша агрегатов при старте по сохранённым ключам. По умолчанию выключено.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Файл ключей кеша. Пусто — ключи не сохраняются и прогрева нет.
+         */
+        private String keysFile = "";
+
+        /**
+         * Интервал сохранения ключей (мс); ключи также сохраняются при остановке. По умолчанию 1 минута.
+         */
+        private long saveIntervalMs = 60_000;
+
+        /**
+         * Сколько самых востребованных пользователей сохранять. По умолчанию 20 000.
+         */
+        private int maxUsers = 20_000;
+
+        /**
+         * Пользователей в одной порции загрузки (загружаются параллельно). По умолчанию 100.
+         */
+        private int batchSize = 100;
+
+        /**
+         * Ограничение скорости прогрева, пользователей в секунду. По умолчанию 1000.
+         */
+        private int usersPerSecond = 1_000;
+
+        /**
+         * Максимальная длительность прогрева (мс), после которой приложение готово принимать трафик. По умолчанию 60с.
+         */
+        private long deadlineMs = 60_000;
+    }
+
+    @Getter
+    @Setter
+    public static class ReadReplicas {
+        /**
+         * Чтения knowledge DB через реплики ({@link ReplicaRoutingDataSource}). По умолчанию выключено.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Реплики knowledge DB.
+         */
+        private List<DataSourceSettings> datasources = new ArrayList<>();
+
+        /**
+         * Интервал проверки реплик (мс). По умолчанию 5с.
+         */
+        private long healthCheckIntervalMs = 5_000;
+
+        /**
+         * Таймаут проверки соединения реплики (секунды). По умолчанию 2.
+         */
+        private int healthCheckTimeoutSeconds = 2;
+
+        /**
+         * Допустимое отставание реплик (мс): столько времени после изменения данных пользователя
+         * его снимок читается из основной БД. По умолчанию 5с.
+         */
+        private long maxLagMs = 5_000;
+    }
+
+    @Getter
+    @Setter
+    public static class Sharding {
+        /**
+         * Данные пользователей разложены по нескольким БД по хешу user_id
+         * (см. {@link ru.starbank.recommendation.repository.jdbc.KnowledgeShards}). По умолчанию выключено.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Шарды в порядке номеров. Порядок и количество определяют размещение пользователей,
+         * менять их можно только вместе с перераспределением данных.
+         */
+        private List<DataSourceSettings> datasources = new ArrayList<>();
+    }
+
+    @Getter
+    @Setter
+    public static class Pools {
+        /**
+         * Отдельные пулы по классам нагрузки для чтений knowledge DB и для rules DB.
+         * По умолчанию выключено (один пул на БД).
+         */
+        private boolean enabled = false;
+
+        /**
+         * Пул HTTP-запросов (/recommendation, /rule, /management).
+         */
+        private final Pool online = new Pool(10, 2, 2_000);
+
+        /**
+         * Пул команд Telegram-бота.
+         */
+        private final Pool bot = new Pool(3, 0, 2_000);
+
+        /**
+         * Пул фоновых задач: загрузки снимков, tailer, фильтры, прогрев.
+         */
+        private final Pool background = new Pool(3, 0, 30_000);
+
+        public Pool forWorkload(Workload workload) {
+            return switch (workload) {
+                case ONLINE -> online;
+                case BOT -> bot;
+                case BACKGROUND -> background;
+            };
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class Pool {
+        private int maximumPoolSize;
+
+        private int minimumIdle;
+
+        /**
+         * Сколько ждать свободное соединение (мс), прежде чем запрос завершится ошибкой.
+         */
+        private long connectionTimeoutMs;
+
+        public Pool() {
+        }
+
+        Pool(int maximumPoolSize, int minimumIdle, long connectionTimeoutMs) {
+            this.maximumPoolSize = maximumPoolSize;
+            this.minimumIdle = minimumIdle;
+            this.connectionTimeoutMs = connectionTimeoutMs;
+        }
+    }
+
+    @Getter
+    @Setter
+    public static class DataSourceSettings {
+        /**
+         * Имя в логах. По умолчанию replica-N / shard-N.
+         */
+        private String name;
+
+        private String url;
+
+        private String username;
+
+        private String password;
+
+        private String driverClassName;
+    }
+}
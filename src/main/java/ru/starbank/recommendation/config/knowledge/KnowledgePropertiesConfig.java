@@ -0,0 +1,12 @@
+package ru.starbank.recommendation.config.knowledge;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Включает бин KnowledgeProperties.
+ */
+@Configuration
+@EnableConfigurationProperties(KnowledgeProperties.class)
+public class KnowledgePropertiesConfig {
+}
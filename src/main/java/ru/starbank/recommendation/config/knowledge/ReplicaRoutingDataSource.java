@@ -0,0 +1,227 @@
+package ru.starbank.recommendation.config.knowledge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Маршрутизация чтений knowledge DB по репликам ({@code knowledge.read-replicas.enabled=true}).
+ *
+ * <p>Каждое соединение берётся у исправной реплики с наименьшим числом выданных и ещё не закрытых
+ * соединений (при равенстве — по кругу). Реплики проверяются в фоне ({@link Connection#isValid});
+ * до первой успешной проверки и после ошибки реплика не используется. Если исправных реплик нет
+ * или реплика не выдала соединение, оно берётся у основной БД.</p>
+ *
+ * <p>Чтения, которым нужны только что записанные данные (реплика может отставать), выполняются
+ * в {@link #readFromPrimary}: все соединения потока на это время берутся у основной БД.</p>
+ *
+ * <p>Только для чтения: пишущие компоненты используют основной DataSource напрямую.</p>
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final Map<Object, Replica> replicasByKey = new LinkedHashMap<>();
+    private final AtomicInteger nextStart = new AtomicInteger();
+    private final int healthCheckTimeoutSeconds;
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * @param primary  основная БД (запасной вариант)
+     * @param replicas имя реплики -> DataSource; закрываются вместе с этим DataSource
+     */
+    public ReplicaRoutingDataSource(
+            DataSource primary,
+            Map<String, DataSource> replicas,
+            Duration healthCheckInterval,
+            int healthCheckTimeoutSeconds
+    ) {
+        this.primary = Objects.requireNonNull(primary, "primary must not be null");
+        this.healthCheckTimeoutSeconds = healthCheckTimeoutSeconds;
+
+        Map<Object, Object> targets = new LinkedHashMap<>();
+        targets.put(PRIMARY, primary);
+        replicas.forEach((name, dataSource) -> {
+            Replica replica = new Replica(name, dataSource);
+            this.replicas.add(replica);
+            this.replicasByKey.put(name, replica);
+            targets.put(name, dataSource);
+        });
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMs = healthCheckInterval.toMillis();
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Выполняет действие так, что соединения текущего потока берутся у основной БД, а не у реплик.
+     */
+    public static <T> T readFromPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            } else {
+                PRIMARY_ONLY.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Исправная реплика с наименьшим числом открытых соединений или {@link #PRIMARY}.
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+        int size = replicas.size();
+        if (size == 0 || PRIMARY_ONLY.get() != null) {
+            return PRIMARY;
+        }
+        int start = Math.floorMod(nextStart.getAndIncrement(), size);
+        Replica best = null;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.healthy.get() && (best == null || replica.outstanding.get() < best.outstanding.get())) {
+                best = replica;
+            }
+        }
+        return best == null ? PRIMARY : best.name;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = replicasByKey.get(determineCurrentLookupKey());
+        if (replica == null) {
+            return primary.getConnection();
+        }
+        replica.outstanding.incrementAndGet();
+        try {
+            return tracked(replica.dataSource.getConnection(), replica);
+        } catch (SQLException | RuntimeException e) {
+            replica.outstanding.decrementAndGet();
+            markDown(replica, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    /**
+     * Состояние реплик: имя -> исправна ли.
+     */
+    public Map<String, Boolean> replicaHealth() {
+        Map<String, Boolean> health = new LinkedHashMap<>();
+        replicas.forEach(replica -> health.put(replica.name, replica.healthy.get()));
+        return health;
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    log.warn("Failed to close knowledge replica {}", replica.name, e);
+                }
+            }
+        }
+    }
+
+    private void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean valid;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                valid = connection.isValid(healthCheckTimeoutSeconds);
+            } catch (SQLException | RuntimeException e) {
+                log.debug("Knowledge replica {} health check failed", replica.name, e);
+                valid = false;
+            }
+            if (replica.healthy.getAndSet(valid) != valid) {
+                log.info("Knowledge replica {} is now {}", replica.name, valid ? "UP" : "DOWN");
+            }
+        }
+    }
+
+    private void markDown(Replica replica, Exception cause) {
+        if (replica.healthy.getAndSet(false)) {
+            log.warn("Knowledge replica {} is DOWN, falling back to primary", replica.name, cause);
+        }
+    }
+
+    /**
+     * Соединение, которое при закрытии уменьшает счётчик открытых соединений реплики.
+     */
+    private static Connection tracked(Connection connection, Replica replica) {
+        AtomicBoolean released = new AtomicBoolean();
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "equals":
+                            return proxy == args[0];
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        default:
+                            break;
+                    }
+                    if (method.getName().equals("close") && released.compareAndSet(false, true)) {
+                        replica.outstanding.decrementAndGet();
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static final class Replica {
+        private final String name;
+        private final DataSource dataSource;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicBoolean healthy = new AtomicBoolean();
+
+        private Replica(String name, DataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package ru.starbank.recommendation.config.pool;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.springframework.stereotype.Component;
+import ru.starbank.recommendation.domain.dto.management.ConnectionPoolStatsDto;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Реестр именованных пулов соединений Hikari и их метрик (GET /management/pools).
+ *
+ * <p>Пулы регистрируются при создании ({@link #register}); этот же объект подключается к ним как
+ * {@link MetricsTrackerFactory} и считает выдачи соединений, время ожидания и таймауты.
+ * Текущие active/idle/pending берутся из статистики пула.</p>
+ */
+@Component
+public class ConnectionPools implements MetricsTrackerFactory {
+
+    private final Map<String, HikariDataSource> pools = new ConcurrentSkipListMap<>();
+    private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+    /**
+     * Даёт пулу имя и подключает метрики. Вызывается до первого соединения.
+     */
+    public HikariDataSource register(String name, HikariDataSource pool) {
+        pool.setPoolName(name);
+        pool.setMetricsTrackerFactory(this);
+        pools.put(name, pool);
+        return pool;
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        Tracker tracker = new Tracker(poolStats);
+        trackers.put(poolName, tracker);
+        return tracker;
+    }
+
+    /**
+     * Метрики всех зарегистрированных пулов (пул, к которому ещё не обращались, — с нулями).
+     */
+    public List<ConnectionPoolStatsDto> stats() {
+        return pools.entrySet().stream()
+                    .map(entry -> {
+                        Tracker tracker = trackers.get(entry.getValue().getPoolName());
+                        return tracker == null
+                                ? new ConnectionPoolStatsDto(entry.getKey(), 0, 0, 0, 0,
+                                        entry.getValue().getMaximumPoolSize(), 0, 0.0, 0.0, 0)
+                                : tracker.toDto(entry.getKey());
+                    })
+                    .toList();
+    }
+
+    private static final class Tracker implements IMetricsTracker {
+        private final PoolStats poolStats;
+        private final LongAdder acquired = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+        private final LongAdder timeouts = new LongAdder();
+
+        private Tracker(PoolStats poolStats) {
+            this.poolStats = poolStats;
+        }
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquired.increment();
+            waitNanos.add(elapsedAcquiredNanos);
+            maxWaitNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+
+        private ConnectionPoolStatsDto toDto(String name) {
+            long count = acquired.sum();
+            double millisPerNano = 1.0 / TimeUnit.MILLISECONDS.toNanos(1);
+            return new ConnectionPoolStatsDto(
+                    name,
+                    poolStats.getActiveConnections(),
+                    poolStats.getIdleConnections(),
+                    poolStats.getTotalConnections(),
+                    poolStats.getPendingThreads(),
+                    poolStats.getMaxConnections(),
+                    count,
+                    count == 0 ? 0.0 : waitNanos.sum() * millisPerNano / count,
+                    maxWaitNanos.get() * millisPerNano,
+                    timeouts.sum()
+            );
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ru.starbank.recommendation.config.pool;
+
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JdbcTemplate, ограничивающий запросы сроком потока ({@link QueryDeadline}).
+ *
+ * <p>Оставшееся время округляется вверх до секунд (единица {@link Statement#setQueryTimeout}) и применяется,
+ * если оно меньше уже заданного таймаута. Если срок уже истёк, запрос не выполняется:
+ * бросается {@link QueryTimeoutException}. Потоки без срока (фоновые задачи) работают как обычно.</p>
+ */
+public class DeadlineAwareJdbcTemplate extends JdbcTemplate {
+
+    public DeadlineAwareJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    protected void applyStatementSettings(Statement stmt) throws SQLException {
+        super.applyStatementSettings(stmt);
+        long remaining = QueryDeadline.remainingNanos();
+        if (remaining < 0) {
+            return;
+        }
+        if (remaining == 0) {
+            throw new QueryTimeoutException("Query deadline has already passed");
+        }
+        int seconds = (int) Math.min(Integer.MAX_VALUE, (remaining + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        int current = stmt.getQueryTimeout();
+        if (current == 0 || seconds < current) {
+            stmt.setQueryTimeout(seconds);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ru.starbank.recommendation.config.pool;
+
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Срок, до которого должны завершиться запросы к БД текущего потока (по {@link System#nanoTime()}).
+ *
+ * <p>Онлайн-запрос, вычисляемый с таймаутом ({@code RuleEvaluationExecutor}), назначает срок своим ветвям.
+ * {@link DeadlineAwareJdbcTemplate} превращает оставшееся время в таймаут JDBC-запроса, поэтому ветвь,
+ * заблокированная в БД, завершается вскоре после того, как запрос получил 503, а не занимает поток пула.
+ * Пулы, выполняющие задачи от имени вызывающего потока, переносят срок ({@link #propagating}), как и
+ * {@link Workload}.</p>
+ */
+public final class QueryDeadline {
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private QueryDeadline() {
+    }
+
+    /**
+     * Выполняет действие со сроком deadlineNanos (более ранний срок вызывающего потока сохраняется).
+     */
+    public static <T> T call(long deadlineNanos, Supplier<T> action) {
+        Long previous = CURRENT.get();
+        CURRENT.set(previous == null || deadlineNanos - previous < 0 ? deadlineNanos : previous);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * Оставшееся время (нс), 0 — срок истёк; -1, если у потока нет срока.
+     */
+    public static long remainingNanos() {
+        Long deadline = CURRENT.get();
+        if (deadline == null) {
+            return -1;
+        }
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Оборачивает задачу так, что она выполнится со сроком вызывающего потока.
+     */
+    public static Runnable inherit(Runnable task) {
+        Long deadline = CURRENT.get();
+        if (deadline == null) {
+            return task;
+        }
+        return () -> call(deadline, () -> {
+            task.run();
+            return null;
+        });
+    }
+
+    /**
+     * Executor, который переносит срок отправителя задачи в поток исполнения.
+     */
+    public static Executor propagating(Executor executor) {
+        return task -> executor.execute(inherit(task));
+    }
+
+    private static void restore(Long previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package ru.starbank.recommendation.config.pool;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Класс нагрузки текущего потока: определяет пул соединений knowledge DB ({@link WorkloadRoutingDataSource}).
+ *
+ * <p>HTTP-запросы помечаются {@link #ONLINE} ({@link WorkloadFilter}), команды Telegram-бота — {@link #BOT}.
+ * Всё остальное (задачи по расписанию, прогрев, загрузка снимков) по умолчанию считается {@link #BACKGROUND}.
+ * Пулы, выполняющие задачи от имени вызывающего потока, переносят его класс нагрузки ({@link #propagating}).</p>
+ */
+public enum Workload {
+
+    ONLINE,
+    BOT,
+    BACKGROUND;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Класс нагрузки текущего потока, по умолчанию BACKGROUND.
+     */
+    public static Workload current() {
+        Workload workload = CURRENT.get();
+        return workload == null ? BACKGROUND : workload;
+    }
+
+    /**
+     * Назначает потоку этот класс нагрузки до закрытия scope, после чего восстанавливает предыдущий.
+     */
+    public Scope open() {
+        Workload previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> restore(previous);
+    }
+
+    /**
+     * Выполняет действие с этим классом нагрузки и восстанавливает предыдущий.
+     */
+    public <T> T call(Supplier<T> action) {
+        try (Scope ignored = open()) {
+            return action.get();
+        }
+    }
+
+    public void run(Runnable action) {
+        call(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Оборачивает задачу так, что она выполнится с классом нагрузки вызывающего потока.
+     */
+    public static Runnable inherit(Runnable task) {
+        Workload workload = current();
+        return () -> workload.run(task);
+    }
+
+    public static <T> Callable<T> inherit(Callable<T> task) {
+        Workload workload = current();
+        return () -> {
+            try (Scope ignored = workload.open()) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * Executor, который переносит класс нагрузки отправителя задачи в поток исполнения.
+     */
+    public static Executor propagating(Executor executor) {
+        return task -> executor.execute(inherit(task));
+    }
+
+    private static void restore(Workload previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Область действия класса нагрузки; закрывается в том же потоке.
+     */
+    @FunctionalInterface
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,28 @@
+package ru.starbank.recommendation.config.pool;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Помечает обработку HTTP-запросов классом нагрузки {@link Workload#ONLINE}.
+ */
+@Component
+public class WorkloadFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain filterChain
+    ) throws ServletException, IOException {
+        try (Workload.Scope ignored = Workload.ONLINE.open()) {
+            filterChain.doFilter(request, response);
+        }
+    }
+}
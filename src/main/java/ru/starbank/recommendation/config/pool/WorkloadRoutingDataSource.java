@@ -0,0 +1,42 @@
+package ru.starbank.recommendation.config.pool;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * DataSource, выдающий соединения из пула класса нагрузки текущего потока ({@link Workload#current()}).
+ *
+ * <p>У каждого класса нагрузки свой пул, поэтому всплеск запросов бота или долгая фоновая задача
+ * не занимают соединения, нужные онлайн-запросам.</p>
+ */
+public class WorkloadRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private final Map<Workload, DataSource> pools;
+
+    public WorkloadRoutingDataSource(Map<Workload, DataSource> pools) {
+        this.pools = new EnumMap<>(pools);
+        if (this.pools.size() != Workload.values().length) {
+            throw new IllegalArgumentException("A pool is required for every workload: " + pools.keySet());
+        }
+        setTargetDataSources(new LinkedHashMap<>(this.pools));
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return Workload.current();
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DataSource pool : pools.values()) {
+            if (pool instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package ru.starbank.recommendation.config.recommendation;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Настройки вычисления рекомендаций из application.yml (префикс {@code recommendation}).
+ * В классе указаны значения по умолчанию.
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "recommendation")
+public class RecommendationProperties {
+
+    private final Evaluation evaluation = new Evaluation();
+
+    /**
+     * Пул параллельного вычисления ({@code recommendation.evaluation.mode=concurrent}). Режим читается
+     * условием бина RuleEvaluationExecutor: при {@code sequential} (по умолчанию) пул не создаётся.
+     */
+    @Getter
+    @Setter
+    public static class Evaluation {
+        /**
+         * Потоки пула вычисления. По умолчанию 16.
+         */
+        private int threads = 16;
+
+        /**
+         * Очередь задач пула. Если она заполнена, запрос получает 503. По умолчанию 256.
+         */
+        private int queueCapacity = 256;
+
+        /**
+         * Таймаут вычисления рекомендаций одного запроса (мс). По истечении запрос получает 503.
+         * По умолчанию 2000.
+         */
+        private long timeoutMs = 2_000;
+    }
+}
@@ -0,0 +1,12 @@
+package ru.starbank.recommendation.config.recommendation;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Включает бин RecommendationProperties.
+ */
+@Configuration
+@EnableConfigurationProperties(RecommendationProperties.class)
+public class RecommendationPropertiesConfig {
+}
@@ -5,9 +5,13 @@ import com.github.benmanes.caffeine.cache.Caffeine;
 import jakarta.validation.constraints.NotNull;
 import org.springframework.stereotype.Component;
 import ru.starbank.recommendation.config.bot.TelegramBotProperties;
+import ru.starbank.recommendation.config.cache.CacheStatsRecorder;
+import ru.starbank.recommendation.config.cache.ObservableCaches;
+import ru.starbank.recommendation.config.cache.ObservedCache;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -16,12 +20,13 @@ import java.util.Objects;
  * Настройки берутся из {@link TelegramBotProperties}.
  */
 @Component
-public class TelegramRateLimiter {
+public class TelegramRateLimiter implements ObservableCaches {
 
     private final Duration cooldown;
     private final Duration window;
     private final int maxPerWindow;
 
+    private final CacheStatsRecorder stats = new CacheStatsRecorder();
     private final Cache<Long, WindowState> stateCache;
 
     public TelegramRateLimiter(TelegramBotProperties properties) {
@@ -36,9 +41,15 @@ public class TelegramRateLimiter {
         this.stateCache = Caffeine.newBuilder()
                                   .expireAfterAccess(Duration.ofMillis(rl.getExpireAfterAccessMs()))
                                   .maximumSize(rl.getMaxCacheSize())
+                                  .recordStats(() -> stats)
                                   .build();
     }
 
+    @Override
+    public Map<String, ObservedCache> observableCaches() {
+        return Map.of("telegram-rate-limit", new ObservedCache(stateCache, stats));
+    }
+
     /**
      * @return true если запрос разрешён, false если лимит превышен
      */
@@ -0,0 +1,19 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * DTO ответа точечного сброса кешей (POST /management/clear-caches/users/{user_id},
+ * POST /management/clear-caches/product-types/{product_type}).
+ */
+public record CacheInvalidationDto(
+
+        @JsonProperty("caches")
+        List<String> caches,
+
+        @JsonProperty("invalidated")
+        int invalidated
+) {
+}
@@ -0,0 +1,34 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.time.Instant;
+
+/**
+ * DTO ответа для GET /management/clear-caches/status: прогресс фонового обновления кешей
+ * после мягкого сброса.
+ */
+public record CacheRefreshStatusDto(
+
+        @JsonProperty("generation")
+        long generation,
+
+        @JsonProperty("in_progress")
+        boolean inProgress,
+
+        @JsonProperty("total")
+        int total,
+
+        @JsonProperty("refreshed")
+        int refreshed,
+
+        @JsonProperty("failed")
+        int failed,
+
+        @JsonProperty("started_at")
+        Instant startedAt,
+
+        @JsonProperty("finished_at")
+        Instant finishedAt
+) {
+}
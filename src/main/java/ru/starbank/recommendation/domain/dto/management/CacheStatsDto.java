@@ -0,0 +1,49 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Статистика одного кеша (элемент ответа GET /management/caches).
+ *
+ * <p>Перцентили времени загрузки приблизительные (корзины степеней двойки) и равны null,
+ * если у кеша нет гистограммы.</p>
+ */
+public record CacheStatsDto(
+
+        @JsonProperty("name")
+        String name,
+
+        @JsonProperty("hit_count")
+        long hitCount,
+
+        @JsonProperty("miss_count")
+        long missCount,
+
+        @JsonProperty("hit_ratio")
+        double hitRatio,
+
+        @JsonProperty("load_count")
+        long loadCount,
+
+        @JsonProperty("load_failure_count")
+        long loadFailureCount,
+
+        @JsonProperty("average_load_millis")
+        double averageLoadMillis,
+
+        @JsonProperty("load_millis_p50")
+        Double loadMillisP50,
+
+        @JsonProperty("load_millis_p95")
+        Double loadMillisP95,
+
+        @JsonProperty("load_millis_p99")
+        Double loadMillisP99,
+
+        @JsonProperty("eviction_count")
+        long evictionCount,
+
+        @JsonProperty("estimated_size")
+        long estimatedSize
+) {
+}
@@ -0,0 +1,15 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * DTO ответа для GET /management/caches.
+ */
+public record CacheStatsResponseDto(
+
+        @JsonProperty("caches")
+        List<CacheStatsDto> caches
+) {
+}
@@ -0,0 +1,40 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Метрики одного пула соединений (элемент ответа GET /management/pools).
+ */
+public record ConnectionPoolStatsDto(
+
+        @JsonProperty("name")
+        String name,
+
+        @JsonProperty("active")
+        int active,
+
+        @JsonProperty("idle")
+        int idle,
+
+        @JsonProperty("total")
+        int total,
+
+        @JsonProperty("pending")
+        int pending,
+
+        @JsonProperty("max_pool_size")
+        int maxPoolSize,
+
+        @JsonProperty("connections_acquired")
+        long connectionsAcquired,
+
+        @JsonProperty("average_wait_millis")
+        double averageWaitMillis,
+
+        @JsonProperty("max_wait_millis")
+        double maxWaitMillis,
+
+        @JsonProperty("timeouts")
+        long timeouts
+) {
+}
@@ -0,0 +1,15 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+/**
+ * DTO ответа для GET /management/pools.
+ */
+public record ConnectionPoolsResponseDto(
+
+        @JsonProperty("pools")
+        List<ConnectionPoolStatsDto> pools
+) {
+}
@@ -0,0 +1,13 @@
+package ru.starbank.recommendation.domain.dto.management;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * DTO ответа для GET /management/readiness: ACCEPTING_TRAFFIC или REFUSING_TRAFFIC.
+ */
+public record ReadinessDto(
+
+        @JsonProperty("state")
+        String state
+) {
+}
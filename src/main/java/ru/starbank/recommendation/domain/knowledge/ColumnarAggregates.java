@@ -0,0 +1,243 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Агрегаты транзакций всех пользователей в колоночном виде.
+ *
+ * <p>Каждая пара (тип продукта, тип транзакции) — колонка из двух {@link LongBuffer}
+ * (количество и сумма), индексированных плотным номером пользователя из {@link UserOrdinalIndex}.
+ * Ответ на вопрос правила — поиск номера и чтение из колонки, без объектов на пользователя.</p>
+ *
+ * <p>Колонки — либо обёртки над {@code long[]} (после загрузки из БД), либо окна в файл снимка,
+ * отображённый в память ({@link ColumnarAggregatesFile}).</p>
+ *
+ * <p>Экземпляр неизменяем после {@link Builder#build()}; пользователь, которого нет в индексе,
+ * считается пользователем без транзакций.</p>
+ */
+public final class ColumnarAggregates {
+
+    private static final ColumnarAggregates EMPTY = builder().build();
+
+    private final UserOrdinalIndex index;
+    private final String[] productTypes;
+    private final String[] transactionTypes;
+    private final LongBuffer[] counts;
+    private final LongBuffer[] sums;
+
+    ColumnarAggregates(
+            UserOrdinalIndex index,
+            String[] productTypes,
+            String[] transactionTypes,
+            LongBuffer[] counts,
+            LongBuffer[] sums
+    ) {
+        this.index = index;
+        this.productTypes = productTypes;
+        this.transactionTypes = transactionTypes;
+        this.counts = counts;
+        this.sums = sums;
+    }
+
+    public static ColumnarAggregates empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder(1_024);
+    }
+
+    public static Builder builder(int expectedUsers) {
+        return new Builder(expectedUsers);
+    }
+
+    public boolean hasAnyTransaction(UUID userId, String productType) {
+        return countTransactions(userId, productType) > 0;
+    }
+
+    /**
+     * Количество транзакций по продуктам типа productType (все типы транзакций).
+     */
+    public int countTransactions(UUID userId, String productType) {
+        int ordinal = index.ordinalOf(userId);
+        int pt = indexOf(productTypes, productType);
+        if (ordinal < 0 || pt < 0) {
+            return 0;
+        }
+        long count = 0;
+        for (int tt = 0; tt < transactionTypes.length; tt++) {
+            count += counts[column(pt, tt)].get(ordinal);
+        }
+        return Math.toIntExact(count);
+    }
+
+    /**
+     * Сумма amount по продуктам типа productType и транзакциям типа transactionType.
+     */
+    public long sumAmount(UUID userId, String productType, String transactionType) {
+        int ordinal = index.ordinalOf(userId);
+        int pt = indexOf(productTypes, productType);
+        int tt = indexOf(transactionTypes, transactionType);
+        if (ordinal < 0 || pt < 0 || tt < 0) {
+            return 0L;
+        }
+        return sums[column(pt, tt)].get(ordinal);
+    }
+
+    /**
+     * Снимок одного пользователя в формате {@link UserAggregates} с номерами типов из dictionary.
+     */
+    public UserAggregates aggregatesFor(UUID userId, TypeDictionary dictionary) {
+        int ordinal = index.ordinalOf(userId);
+        if (ordinal < 0) {
+            return UserAggregates.empty();
+        }
+        UserAggregates.Builder builder = UserAggregates.builder(dictionary);
+        for (int pt = 0; pt < productTypes.length; pt++) {
+            for (int tt = 0; tt < transactionTypes.length; tt++) {
+                int column = column(pt, tt);
+                long count = counts[column].get(ordinal);
+                if (count > 0) {
+                    builder.add(productTypes[pt], transactionTypes[tt], count, sums[column].get(ordinal));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    public int userCount() {
+        return index.size();
+    }
+
+    /**
+     * Оценка занимаемой памяти (байты): индекс и колонки.
+     */
+    public long estimatedBytes() {
+        long columns = 0;
+        for (LongBuffer c : counts) {
+            columns += (long) c.capacity() * Long.BYTES;
+        }
+        for (LongBuffer s : sums) {
+            columns += (long) s.capacity() * Long.BYTES;
+        }
+        return index.estimatedBytes() + columns;
+    }
+
+    UserOrdinalIndex index() {
+        return index;
+    }
+
+    String[] productTypes() {
+        return productTypes;
+    }
+
+    String[] transactionTypes() {
+        return transactionTypes;
+    }
+
+    LongBuffer counts(int column) {
+        return counts[column].duplicate();
+    }
+
+    LongBuffer sums(int column) {
+        return sums[column].duplicate();
+    }
+
+    private int column(int productTypeIndex, int transactionTypeIndex) {
+        return productTypeIndex * transactionTypes.length + transactionTypeIndex;
+    }
+
+    private static int indexOf(String[] dictionary, String value) {
+        for (int i = 0; i < dictionary.length; i++) {
+            if (dictionary[i].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Накопитель строк {@code GROUP BY user_id, product type, transaction type}.
+     *
+     * <p>Справочники типов пополняются по мере чтения; колонки растут удвоением.</p>
+     */
+    public static final class Builder {
+
+        private final UserOrdinalIndex index;
+        private final List<String> productTypes = new ArrayList<>();
+        private final List<String> transactionTypes = new ArrayList<>();
+        private final List<long[]> counts = new ArrayList<>();
+        private final List<long[]> sums = new ArrayList<>();
+        private final List<String> columnKeys = new ArrayList<>();
+        private int capacity;
+
+        private Builder(int expectedUsers) {
+            this.capacity = Math.max(16, expectedUsers);
+            this.index = new UserOrdinalIndex(capacity);
+        }
+
+        public Builder add(UUID userId, String productType, String transactionType, long count, long sum) {
+            Objects.requireNonNull(userId, "userId must not be null");
+            Objects.requireNonNull(productType, "productType must not be null");
+            Objects.requireNonNull(transactionType, "transactionType must not be null");
+
+            int ordinal = index.getOrAssign(userId);
+            if (ordinal >= capacity) {
+                grow();
+            }
+            int column = columnFor(productType, transactionType);
+            counts.get(column)[ordinal] += count;
+            sums.get(column)[ordinal] += sum;
+            return this;
+        }
+
+        public ColumnarAggregates build() {
+            String[] pts = productTypes.toArray(String[]::new);
+            String[] tts = transactionTypes.toArray(String[]::new);
+            int users = index.size();
+
+            LongBuffer[] countColumns = new LongBuffer[pts.length * tts.length];
+            LongBuffer[] sumColumns = new LongBuffer[pts.length * tts.length];
+            for (int pt = 0; pt < pts.length; pt++) {
+                for (int tt = 0; tt < tts.length; tt++) {
+                    int target = pt * tts.length + tt;
+                    int source = columnKeys.indexOf(pts[pt] + '\u0000' + tts[tt]);
+                    countColumns[target] = LongBuffer.wrap(
+                            source < 0 ? new long[users] : Arrays.copyOf(counts.get(source), users));
+                    sumColumns[target] = LongBuffer.wrap(
+                            source < 0 ? new long[users] : Arrays.copyOf(sums.get(source), users));
+                }
+            }
+            return new ColumnarAggregates(index, pts, tts, countColumns, sumColumns);
+        }
+
+        private int columnFor(String productType, String transactionType) {
+            if (!productTypes.contains(productType)) {
+                productTypes.add(productType);
+            }
+            if (!transactionTypes.contains(transactionType)) {
+                transactionTypes.add(transactionType);
+            }
+            String key = productType + '\u0000' + transactionType;
+            int column = columnKeys.indexOf(key);
+            if (column < 0) {
+                columnKeys.add(key);
+                counts.add(new long[capacity]);
+                sums.add(new long[capacity]);
+                column = columnKeys.size() - 1;
+            }
+            return column;
+        }
+
+        private void grow() {
+            capacity <<= 1;
+            counts.replaceAll(c -> Arrays.copyOf(c, capacity));
+            sums.replaceAll(s -> Arrays.copyOf(s, capacity));
+        }
+    }
+}
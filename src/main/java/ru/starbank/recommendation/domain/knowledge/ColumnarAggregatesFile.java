@@ -0,0 +1,190 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Бинарный файл снимка {@link ColumnarAggregates}, читаемый через {@link FileChannel#map}.
+ *
+ * <p>Формат (little-endian):</p>
+ * <pre>
+ * int    magic ("SBAG")
+ * int    version
+ * long   createdAt (epoch ms)
+ * int    users, productTypes, transactionTypes
+ * ...    словари типов: short длина + UTF-8
+ * ...    выравнивание до 8 байт
+ * long[users] msb, long[users] lsb  — UUID пользователей в порядке номеров
+ * по каждой колонке (productType x transactionType): long[users] counts, long[users] sums
+ * </pre>
+ *
+ * <p>При чтении колонки остаются окнами в отображённый файл; в куче строится только индекс UUID.
+ * Файл другой версии считается отсутствующим.</p>
+ */
+public final class ColumnarAggregatesFile {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x53424147;
+    private static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private ColumnarAggregatesFile() {
+    }
+
+    /**
+     * Снимок, прочитанный из файла.
+     *
+     * @param aggregates данные
+     * @param createdAt  время записи файла
+     */
+    public record Mapped(ColumnarAggregates aggregates, Instant createdAt) {
+    }
+
+    /**
+     * Записывает снимок во временный файл рядом с target и атомарно подменяет target.
+     * Уже отображённые в память старые версии файла остаются валидными.
+     */
+    public static void write(ColumnarAggregates aggregates, Instant createdAt, Path target) throws IOException {
+        String[] pts = aggregates.productTypes();
+        String[] tts = aggregates.transactionTypes();
+        int users = aggregates.userCount();
+
+        byte[][] dictionary = new byte[pts.length + tts.length][];
+        int headerSize = Integer.BYTES * 2 + Long.BYTES + Integer.BYTES * 3;
+        for (int i = 0; i < dictionary.length; i++) {
+            dictionary[i] = (i < pts.length ? pts[i] : tts[i - pts.length]).getBytes(StandardCharsets.UTF_8);
+            headerSize += Short.BYTES + dictionary[i].length;
+        }
+        int dataOffset = align(headerSize);
+        long size = dataOffset + (long) users * Long.BYTES * (2 + 2L * pts.length * tts.length);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Columnar snapshot too large for a single mapping: " + size + " bytes");
+        }
+
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.order(ORDER);
+
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(createdAt.toEpochMilli());
+                buffer.putInt(users).putInt(pts.length).putInt(tts.length);
+                for (byte[] entry : dictionary) {
+                    buffer.putShort((short) entry.length).put(entry);
+                }
+                buffer.position(dataOffset);
+
+                long[] msb = new long[users];
+                long[] lsb = new long[users];
+                aggregates.index().exportKeys(msb, lsb);
+                LongBuffer longs = buffer.asLongBuffer();
+                longs.put(msb).put(lsb);
+                for (int column = 0; column < pts.length * tts.length; column++) {
+                    longs.put(aggregates.counts(column).rewind());
+                    longs.put(aggregates.sums(column).rewind());
+                }
+                buffer.force();
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Отображает файл в память. Возвращает null, если файла нет или его версия не совпадает.
+     *
+     * @throws IOException файл повреждён или не читается
+     */
+    public static Mapped map(Path source) throws IOException {
+        if (!Files.isRegularFile(source)) {
+            return null;
+        }
+        try {
+            return read(source);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Columnar aggregates snapshot is truncated or corrupted: " + source, e);
+        }
+    }
+
+    private static Mapped read(Path source) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ORDER);
+        }
+
+        if (buffer.remaining() < Integer.BYTES * 2 || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a columnar aggregates snapshot: " + source);
+        }
+        if (buffer.getInt() != VERSION) {
+            return null;
+        }
+        Instant createdAt = Instant.ofEpochMilli(buffer.getLong());
+        int users = buffer.getInt();
+        int ptCount = buffer.getInt();
+        int ttCount = buffer.getInt();
+        String[] productTypes = readStrings(buffer, ptCount);
+        String[] transactionTypes = readStrings(buffer, ttCount);
+        int columns = ptCount * ttCount;
+
+        int dataOffset = align(buffer.position());
+        long expectedSize = dataOffset + (long) users * Long.BYTES * (2 + 2L * columns);
+        if (buffer.capacity() != expectedSize) {
+            throw new IOException("Columnar aggregates snapshot is truncated or corrupted: " + source);
+        }
+
+        LongBuffer msb = longs(buffer, dataOffset, users);
+        LongBuffer lsb = longs(buffer, dataOffset + users * Long.BYTES, users);
+        UserOrdinalIndex index = new UserOrdinalIndex(users);
+        for (int ordinal = 0; ordinal < users; ordinal++) {
+            if (index.getOrAssign(new UUID(msb.get(ordinal), lsb.get(ordinal))) != ordinal) {
+                throw new IOException("Duplicate user in columnar aggregates snapshot: " + source);
+            }
+        }
+
+        LongBuffer[] counts = new LongBuffer[columns];
+        LongBuffer[] sums = new LongBuffer[columns];
+        int offset = dataOffset + 2 * users * Long.BYTES;
+        for (int column = 0; column < columns; column++) {
+            counts[column] = longs(buffer, offset, users);
+            offset += users * Long.BYTES;
+            sums[column] = longs(buffer, offset, users);
+            offset += users * Long.BYTES;
+        }
+
+        return new Mapped(new ColumnarAggregates(index, productTypes, transactionTypes, counts, sums), createdAt);
+    }
+
+    private static String[] readStrings(ByteBuffer buffer, int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buffer.getShort()];
+            buffer.get(bytes);
+            result[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return result;
+    }
+
+    private static LongBuffer longs(ByteBuffer buffer, int offset, int count) {
+        return buffer.slice(offset, count * Long.BYTES).order(ORDER).asLongBuffer();
+    }
+
+    private static int align(int offset) {
+        return (offset + Long.BYTES - 1) & -Long.BYTES;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Словарь типов продуктов и транзакций: строка -> небольшой порядковый номер.
+ *
+ * <p>Типов единицы (DEBIT, SAVING, DEPOSIT, ...), поэтому номера выдаются один раз на словарь
+ * и не освобождаются. Позволяет {@link UserAggregates} хранить пары типов упакованными в long.
+ * Номера имеют смысл только внутри своего словаря: снимки, построенные разными словарями, не сравниваются.</p>
+ *
+ * <p>Чтение без блокировок: таблицы неизменяемы и публикуются через volatile-поля, новый тип
+ * (редкое событие) копирует их под блокировкой словаря. Массив имён публикуется раньше таблицы номеров,
+ * поэтому любой номер, полученный из {@link #find}/{@link #intern}, уже имеет имя.</p>
+ */
+@Component
+public final class TypeDictionary {
+
+    private volatile Map<String, Integer> ordinals = Map.of();
+    private volatile String[] names = new String[0];
+
+    /**
+     * Номер типа или -1, если такой тип ещё не встречался.
+     */
+    public int find(String type) {
+        Integer ordinal = ordinals.get(type);
+        return ordinal == null ? -1 : ordinal;
+    }
+
+    /**
+     * Номер типа; при первом появлении типа выдаётся новый.
+     */
+    public int intern(String type) {
+        int ordinal = find(type);
+        if (ordinal >= 0) {
+            return ordinal;
+        }
+        Objects.requireNonNull(type, "type must not be null");
+        synchronized (this) {
+            ordinal = find(type);
+            if (ordinal >= 0) {
+                return ordinal;
+            }
+            String[] current = names;
+            String[] extended = Arrays.copyOf(current, current.length + 1);
+            extended[current.length] = type;
+            Map<String, Integer> extendedOrdinals = new HashMap<>(ordinals);
+            extendedOrdinals.put(type, current.length);
+
+            names = extended;
+            ordinals = Map.copyOf(extendedOrdinals);
+            return current.length;
+        }
+    }
+
+    public String nameOf(int ordinal) {
+        return names[ordinal];
+    }
+
+    /**
+     * Количество известных типов.
+     */
+    public int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,401 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Агрегаты транзакций одного пользователя из knowledge DB.
+ *
+ * <p>Снимок строится одним запросом {@code GROUP BY t.product_id, t.type} без JOIN с products:
+ * тип продукта берётся из ProductCatalog в памяти. Снимок содержит количество и сумму транзакций
+ * по каждой паре (тип продукта, тип транзакции) — строки продуктов одного типа суммируются. Из него отвечают
+ * все вопросы динамических правил: USER_OF, ACTIVE_USER_OF, TRANSACTION_SUM_COMPARE*.</p>
+ *
+ * <p>Хранение компактное: пара типов — номера из {@link TypeDictionary}, упакованные в один long;
+ * количества и суммы — параллельные массивы {@code long[]}. Пар у пользователя единицы,
+ * поиск идёт по отсортированному массиву ключей, без хеширования строк, объектов-ключей и боксинга.
+ * Словарь передаётся в {@link #builder(TypeDictionary)} и хранится в снимке; у пустого снимка
+ * ({@link #empty()}) словаря нет — пар в нём нет.</p>
+ *
+ * <p>{@code sequence} и {@code openGaps} — позиция, на которую загружен снимок (0, если неизвестна):
+ * в снимок вошли транзакции с ingest-номером не больше sequence, кроме номеров из openGaps.
+ * Инкрементально применять можно только транзакции вне этого множества ({@link #canApply}).</p>
+ */
+public final class UserAggregates {
+
+    private static final long[] NO_VALUES = new long[0];
+    private static final UserAggregates EMPTY = new UserAggregates(null, NO_VALUES, NO_VALUES, NO_VALUES, 0L, NO_VALUES);
+
+    private final TypeDictionary dictionary;
+
+    /**
+     * (productType << 32 | transactionType), по возрастанию.
+     */
+    private final long[] keys;
+    private final long[] counts;
+    private final long[] sums;
+    private final long sequence;
+
+    /**
+     * Номера не больше sequence, не вошедшие в снимок, по возрастанию.
+     */
+    private final long[] openGaps;
+
+    private UserAggregates(TypeDictionary dictionary, long[] keys, long[] counts, long[] sums,
+                           long sequence, long[] openGaps) {
+        this.dictionary = dictionary;
+        this.keys = keys;
+        this.counts = counts;
+        this.sums = sums;
+        this.sequence = sequence;
+        this.openGaps = openGaps;
+    }
+
+    /**
+     * Пользователь без транзакций (или неизвестный пользователь).
+     */
+    public static UserAggregates empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder(TypeDictionary dictionary) {
+        return new Builder(dictionary);
+    }
+
+    /**
+     * Есть ли хотя бы одна транзакция по продуктам типа productType.
+     */
+    public boolean hasAnyTransaction(String productType) {
+        return countTransactions(productType) > 0;
+    }
+
+    /**
+     * Количество транзакций по продуктам типа productType (все типы транзакций).
+     */
+    public int countTransactions(String productType) {
+        if (keys.length == 0) {
+            return 0;
+        }
+        int pt = dictionary.find(productType);
+        if (pt < 0) {
+            return 0;
+        }
+        long count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (productTypeOf(keys[i]) == pt) {
+                count += counts[i];
+            }
+        }
+        return Math.toIntExact(count);
+    }
+
+    /**
+     * Сумма amount по продуктам типа productType и транзакциям типа transactionType.
+     */
+    public long sumAmount(String productType, String transactionType) {
+        if (keys.length == 0) {
+            return 0L;
+        }
+        int pt = dictionary.find(productType);
+        int tt = dictionary.find(transactionType);
+        if (pt < 0 || tt < 0) {
+            return 0L;
+        }
+        int i = indexOf(keys, pack(pt, tt));
+        return i < 0 ? 0L : sums[i];
+    }
+
+    /**
+     * Типы продуктов, по которым у пользователя есть транзакции.
+     */
+    public Set<String> productTypes() {
+        Set<String> types = new LinkedHashSet<>();
+        for (long key : keys) {
+            types.add(dictionary.nameOf(productTypeOf(key)));
+        }
+        return Set.copyOf(types);
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    /**
+     * Ingest-номер, на который загружен снимок (с учётом применённых транзакций), или 0.
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * Номера не больше {@link #sequence()}, не вошедшие в снимок, по возрастанию (копия).
+     */
+    public long[] openGaps() {
+        return openGaps.clone();
+    }
+
+    /**
+     * Известен ли ingest-номер снимка (можно ли инкрементально применять новые транзакции).
+     */
+    public boolean hasSequence() {
+        return sequence > 0;
+    }
+
+    /**
+     * Точно ли транзакция с этим номером не вошла в снимок: номер больше {@link #sequence()}
+     * или остался открытым пропуском. Иначе транзакция могла быть учтена при загрузке.
+     */
+    public boolean canApply(long transactionSequence) {
+        return transactionSequence > sequence || Arrays.binarySearch(openGaps, transactionSequence) >= 0;
+    }
+
+    /**
+     * Учитывает ли снимок всё, что входит в позицию (watermark, openGaps) другого загрузчика:
+     * его номер не меньше watermark, а его открытые пропуски до watermark открыты и там.
+     *
+     * @param openGaps пропуски позиции по возрастанию
+     */
+    public boolean isAtOrAfter(long watermark, long[] openGaps) {
+        if (sequence < watermark) {
+            return false;
+        }
+        for (long gap : this.openGaps) {
+            if (gap <= watermark && Arrays.binarySearch(openGaps, gap) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Новый снимок с учётом одной транзакции, которую можно применить ({@link #canApply}).
+     * Применяется только к снимкам с ingest-номером ({@link #hasSequence()}), поэтому словарь у снимка есть.
+     *
+     * @throws IllegalArgumentException транзакция могла уже войти в снимок
+     */
+    public UserAggregates withTransaction(String productType, String transactionType, long amount, long transactionSequence) {
+        if (!canApply(transactionSequence)) {
+            throw new IllegalArgumentException(
+                    "Transaction ingest_seq=" + transactionSequence + " may already be counted in " + this);
+        }
+        if (dictionary == null) {
+            throw new IllegalStateException("Empty aggregates without a sequence cannot be updated incrementally");
+        }
+        long key = pack(dictionary.intern(productType), dictionary.intern(transactionType));
+        int i = indexOf(keys, key);
+        if (i >= 0) {
+            long[] newCounts = counts.clone();
+            long[] newSums = sums.clone();
+            newCounts[i] += 1;
+            newSums[i] += amount;
+            return new UserAggregates(dictionary, keys, newCounts, newSums,
+                    Math.max(sequence, transactionSequence), withoutGap(transactionSequence));
+        }
+
+        int at = -(i + 1);
+        return new UserAggregates(
+                dictionary,
+                insert(keys, at, key),
+                insert(counts, at, 1),
+                insert(sums, at, amount),
+                Math.max(sequence, transactionSequence),
+                withoutGap(transactionSequence)
+        );
+    }
+
+    /**
+     * Оценка занимаемой памяти в куче (байты): объект, три массива и пропуски.
+     */
+    public int estimatedBytes() {
+        int gaps = openGaps.length == 0 ? 0 : 16 + openGaps.length * Long.BYTES;
+        return 32 + 3 * (16 + keys.length * Long.BYTES) + gaps;
+    }
+
+    /**
+     * Количество пар (тип продукта, тип транзакции); для {@link UserAggregatesCodec}.
+     */
+    int pairCount() {
+        return keys.length;
+    }
+
+    String productTypeAt(int pair) {
+        return dictionary.nameOf(productTypeOf(keys[pair]));
+    }
+
+    String transactionTypeAt(int pair) {
+        return dictionary.nameOf(transactionTypeOf(keys[pair]));
+    }
+
+    long countAt(int pair) {
+        return counts[pair];
+    }
+
+    long sumAt(int pair) {
+        return sums[pair];
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof UserAggregates that)) {
+            return false;
+        }
+        return sequence == that.sequence
+                && Arrays.equals(openGaps, that.openGaps)
+                && (keys.length == 0 || dictionary == that.dictionary)
+                && Arrays.equals(keys, that.keys)
+                && Arrays.equals(counts, that.counts)
+                && Arrays.equals(sums, that.sums);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(keys), Arrays.hashCode(counts), Arrays.hashCode(sums), sequence, Arrays.hashCode(openGaps));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("UserAggregates[");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(dictionary.nameOf(productTypeOf(keys[i]))).append('/')
+              .append(dictionary.nameOf(transactionTypeOf(keys[i])))
+              .append("=").append(counts[i]).append(':').append(sums[i]);
+        }
+        sb.append(", sequence=").append(sequence);
+        if (openGaps.length > 0) {
+            sb.append(", openGaps=").append(Arrays.toString(openGaps));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static long pack(int productType, int transactionType) {
+        return ((long) productType << 32) | (transactionType & 0xFFFF_FFFFL);
+    }
+
+    private static int productTypeOf(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int transactionTypeOf(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Позиция ключа или -(точка вставки + 1), как в {@link Arrays#binarySearch(long[], long)}.
+     */
+    private static int indexOf(long[] keys, long key) {
+        return Arrays.binarySearch(keys, key);
+    }
+
+    private long[] withoutGap(long transactionSequence) {
+        int i = Arrays.binarySearch(openGaps, transactionSequence);
+        if (i < 0) {
+            return openGaps;
+        }
+        if (openGaps.length == 1) {
+            return NO_VALUES;
+        }
+        long[] result = new long[openGaps.length - 1];
+        System.arraycopy(openGaps, 0, result, 0, i);
+        System.arraycopy(openGaps, i + 1, result, i, openGaps.length - i - 1);
+        return result;
+    }
+
+    private static long[] insert(long[] values, int at, long value) {
+        long[] result = new long[values.length + 1];
+        System.arraycopy(values, 0, result, 0, at);
+        result[at] = value;
+        System.arraycopy(values, at, result, at + 1, values.length - at);
+        return result;
+    }
+
+    /**
+     * Накопитель строк результата GROUP BY.
+     */
+    public static final class Builder {
+
+        private final TypeDictionary dictionary;
+        private long[] keys = new long[8];
+        private long[] counts = new long[8];
+        private long[] sums = new long[8];
+        private int size;
+        private long sequence;
+        private long[] openGaps = NO_VALUES;
+
+        private Builder(TypeDictionary dictionary) {
+            this.dictionary = Objects.requireNonNull(dictionary, "dictionary must not be null");
+        }
+
+        /**
+         * Учитывает ingest-номер транзакций строки (в снимке сохраняется максимальный).
+         */
+        public Builder sequence(long transactionSequence) {
+            this.sequence = Math.max(this.sequence, transactionSequence);
+            return this;
+        }
+
+        /**
+         * Номера не больше sequence, не вошедшие в снимок.
+         */
+        public Builder openGaps(long[] gaps) {
+            long[] sorted = gaps.clone();
+            Arrays.sort(sorted);
+            this.openGaps = sorted.length == 0 ? NO_VALUES : sorted;
+            return this;
+        }
+
+        public Builder add(String productType, String transactionType, long count, long sum) {
+            long key = pack(dictionary.intern(productType), dictionary.intern(transactionType));
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    counts[i] += count;
+                    sums[i] += sum;
+                    return this;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+                sums = Arrays.copyOf(sums, size * 2);
+            }
+            keys[size] = key;
+            counts[size] = count;
+            sums[size] = sum;
+            size++;
+            return this;
+        }
+
+        public UserAggregates build() {
+            if (size == 0 && sequence == 0) {
+                return EMPTY;
+            }
+            // сортировка вставками параллельных массивов: пар единицы
+            long[] k = Arrays.copyOf(keys, size);
+            long[] c = Arrays.copyOf(counts, size);
+            long[] s = Arrays.copyOf(sums, size);
+            for (int i = 1; i < size; i++) {
+                long key = k[i];
+                long count = c[i];
+                long sum = s[i];
+                int j = i - 1;
+                while (j >= 0 && k[j] > key) {
+                    k[j + 1] = k[j];
+                    c[j + 1] = c[j];
+                    s[j + 1] = s[j];
+                    j--;
+                }
+                k[j + 1] = key;
+                c[j + 1] = count;
+                s[j + 1] = sum;
+            }
+            return new UserAggregates(dictionary, k, c, s, sequence, sequence == 0 ? NO_VALUES : openGaps);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Бинарное представление {@link UserAggregates} для хранения вне JVM (L2-кеш).
+ *
+ * <p>Номера типов из {@link TypeDictionary} у каждого словаря (и процесса) свои, поэтому типы пишутся строками:</p>
+ * <pre>
+ * byte   version
+ * long   sequence
+ * int    gaps
+ * long × gaps  openGaps
+ * int    pairs
+ * по каждой паре: UTF productType, UTF transactionType, long count, long sum
+ * </pre>
+ */
+public final class UserAggregatesCodec {
+
+    public static final byte VERSION = 2;
+
+    private UserAggregatesCodec() {
+    }
+
+    public static byte[] encode(UserAggregates aggregates) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + aggregates.pairCount() * 40);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(aggregates.sequence());
+            long[] openGaps = aggregates.openGaps();
+            out.writeInt(openGaps.length);
+            for (long gap : openGaps) {
+                out.writeLong(gap);
+            }
+            out.writeInt(aggregates.pairCount());
+            for (int i = 0; i < aggregates.pairCount(); i++) {
+                out.writeUTF(aggregates.productTypeAt(i));
+                out.writeUTF(aggregates.transactionTypeAt(i));
+                out.writeLong(aggregates.countAt(i));
+                out.writeLong(aggregates.sumAt(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Восстанавливает снимок, выдавая номера типов из dictionary. Возвращает null,
+     * если данные записаны другой версией формата.
+     *
+     * @throws IllegalArgumentException данные повреждены
+     */
+    public static UserAggregates decode(byte[] data, TypeDictionary dictionary) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != VERSION) {
+                return null;
+            }
+            UserAggregates.Builder builder = UserAggregates.builder(dictionary).sequence(in.readLong());
+            long[] openGaps = new long[in.readInt()];
+            for (int i = 0; i < openGaps.length; i++) {
+                openGaps[i] = in.readLong();
+            }
+            builder.openGaps(openGaps);
+            int pairs = in.readInt();
+            for (int i = 0; i < pairs; i++) {
+                builder.add(in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+            }
+            return builder.build();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Corrupted user aggregates data", e);
+        }
+    }
+}
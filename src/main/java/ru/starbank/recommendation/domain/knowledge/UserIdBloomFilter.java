@@ -0,0 +1,97 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума по UUID пользователей.
+ *
+ * <p>{@link #mightContain} = false означает, что пользователь точно не добавлялся;
+ * true — что, вероятно, добавлялся (ложноположительные ответы с заданной вероятностью).
+ * Удаление не поддерживается: фильтр целиком пересобирается владельцем.</p>
+ *
+ * <p>Биты лежат в {@link AtomicLongArray} (размер — степень двойки), поэтому добавление
+ * безопасно параллельно с чтением. Номера битов — двойное хеширование двух перемешанных
+ * половин UUID, без создания объектов.</p>
+ */
+public final class UserIdBloomFilter {
+
+    private static final int MAX_HASHES = 16;
+
+    private final AtomicLongArray words;
+    private final long bitMask;
+    private final int hashCount;
+
+    private UserIdBloomFilter(long bits, int hashCount) {
+        this.words = new AtomicLongArray(Math.toIntExact(bits >>> 6));
+        this.bitMask = bits - 1;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Фильтр под expectedInsertions элементов с долей ложноположительных ответов около falsePositiveRate.
+     */
+    public static UserIdBloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1): " + falsePositiveRate);
+        }
+        long n = Math.max(1, expectedInsertions);
+        double optimalBits = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bits = Math.max(64, Long.highestOneBit((long) Math.ceil(optimalBits) - 1) << 1);
+        if (bits >>> 6 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Bloom filter too large for " + expectedInsertions + " users");
+        }
+        int hashes = (int) Math.round((double) bits / n * Math.log(2));
+        return new UserIdBloomFilter(bits, Math.max(1, Math.min(MAX_HASHES, hashes)));
+    }
+
+    public void put(UUID userId) {
+        long h1 = mix(userId.getMostSignificantBits() ^ Long.rotateLeft(userId.getLeastSignificantBits(), 32));
+        long h2 = mix(userId.getLeastSignificantBits() + 0x9E37_79B9_7F4A_7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = words.get(word);
+            while ((current & mask) == 0 && !words.compareAndSet(word, current, current | mask)) {
+                current = words.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(UUID userId) {
+        long h1 = mix(userId.getMostSignificantBits() ^ Long.rotateLeft(userId.getLeastSignificantBits(), 32));
+        long h2 = mix(userId.getLeastSignificantBits() + 0x9E37_79B9_7F4A_7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitMask + 1;
+    }
+
+    public int hashCount() {
+        return hashCount;
+    }
+
+    /**
+     * Оценка занимаемой памяти в куче (байты).
+     */
+    public long estimatedBytes() {
+        return 16 + (long) words.length() * Long.BYTES;
+    }
+
+    /**
+     * Финализатор SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+        return z ^ (z >>> 31);
+    }
+}
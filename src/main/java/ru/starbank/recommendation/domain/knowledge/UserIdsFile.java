@@ -0,0 +1,104 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Бинарный файл списка UUID пользователей (ключи кеша для прогрева после рестарта).
+ *
+ * <p>Формат (big-endian, {@link DataOutputStream}):</p>
+ * <pre>
+ * int    magic ("SBWU")
+ * int    version
+ * long   createdAt (epoch ms)
+ * int    count
+ * long[count * 2] msb, lsb каждого UUID
+ * </pre>
+ *
+ * <p>Файл другой версии считается отсутствующим.</p>
+ */
+public final class UserIdsFile {
+
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x53425755;
+
+    private UserIdsFile() {
+    }
+
+    /**
+     * Список, прочитанный из файла.
+     *
+     * @param userIds   пользователи в порядке записи
+     * @param createdAt время записи файла
+     */
+    public record Saved(List<UUID> userIds, Instant createdAt) {
+    }
+
+    /**
+     * Записывает список во временный файл рядом с target и атомарно подменяет target.
+     */
+    public static void write(Collection<UUID> userIds, Instant createdAt, Path target) throws IOException {
+        Path parent = target.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, target.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(createdAt.toEpochMilli());
+                out.writeInt(userIds.size());
+                for (UUID userId : userIds) {
+                    out.writeLong(userId.getMostSignificantBits());
+                    out.writeLong(userId.getLeastSignificantBits());
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Читает файл. Возвращает null, если файла нет или его версия не совпадает.
+     *
+     * @throws IOException файл повреждён или не читается
+     */
+    public static Saved read(Path source) throws IOException {
+        if (!Files.isRegularFile(source)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a user ids file: " + source);
+            }
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            Instant createdAt = Instant.ofEpochMilli(in.readLong());
+            int count = in.readInt();
+            if (count < 0 || (long) count * 2 * Long.BYTES > Files.size(source)) {
+                throw new IOException("User ids file is truncated or corrupted: " + source);
+            }
+            List<UUID> userIds = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                userIds.add(new UUID(in.readLong(), in.readLong()));
+            }
+            return new Saved(List.copyOf(userIds), createdAt);
+        } catch (EOFException e) {
+            throw new IOException("User ids file is truncated or corrupted: " + source, e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Индекс UUID пользователя -> плотный порядковый номер (0..size-1).
+ *
+ * <p>Открытая адресация с линейным пробированием по двум массивам long (старшие и младшие биты UUID),
+ * без объектов на запись. Заполняется только при построении {@link ColumnarAggregates};
+ * после построения используется только на чтение.</p>
+ */
+final class UserOrdinalIndex {
+
+    private static final int EMPTY = -1;
+
+    private long[] msb;
+    private long[] lsb;
+    private int[] ordinals;
+    private int mask;
+    private int size;
+
+    UserOrdinalIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Порядковый номер пользователя или -1, если его нет в индексе.
+     */
+    int ordinalOf(UUID userId) {
+        long hi = userId.getMostSignificantBits();
+        long lo = userId.getLeastSignificantBits();
+        int slot = slotFor(hi, lo);
+        while (true) {
+            int ordinal = ordinals[slot];
+            if (ordinal == EMPTY) {
+                return EMPTY;
+            }
+            if (msb[slot] == hi && lsb[slot] == lo) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Возвращает номер пользователя, при отсутствии присваивает следующий.
+     */
+    int getOrAssign(UUID userId) {
+        long hi = userId.getMostSignificantBits();
+        long lo = userId.getLeastSignificantBits();
+        int slot = slotFor(hi, lo);
+        while (true) {
+            int ordinal = ordinals[slot];
+            if (ordinal == EMPTY) {
+                break;
+            }
+            if (msb[slot] == hi && lsb[slot] == lo) {
+                return ordinal;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int assigned = size++;
+        msb[slot] = hi;
+        lsb[slot] = lo;
+        ordinals[slot] = assigned;
+        if (size * 2 > ordinals.length) {
+            resize(ordinals.length << 1);
+        }
+        return assigned;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * UUID пользователей в порядке номеров: старшие биты в msbOut, младшие в lsbOut (длина не меньше size()).
+     */
+    void exportKeys(long[] msbOut, long[] lsbOut) {
+        for (int slot = 0; slot < ordinals.length; slot++) {
+            int ordinal = ordinals[slot];
+            if (ordinal != EMPTY) {
+                msbOut[ordinal] = msb[slot];
+                lsbOut[ordinal] = lsb[slot];
+            }
+        }
+    }
+
+    long estimatedBytes() {
+        return (long) ordinals.length * (Long.BYTES * 2 + Integer.BYTES);
+    }
+
+    private int slotFor(long hi, long lo) {
+        long h = hi ^ lo;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h & mask;
+    }
+
+    private void allocate(int capacity) {
+        msb = new long[capacity];
+        lsb = new long[capacity];
+        ordinals = new int[capacity];
+        Arrays.fill(ordinals, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private void resize(int capacity) {
+        long[] oldMsb = msb;
+        long[] oldLsb = lsb;
+        int[] oldOrdinals = ordinals;
+        allocate(capacity);
+
+        for (int i = 0; i < oldOrdinals.length; i++) {
+            if (oldOrdinals[i] == EMPTY) {
+                continue;
+            }
+            int slot = slotFor(oldMsb[i], oldLsb[i]);
+            while (ordinals[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            msb[slot] = oldMsb[i];
+            lsb[slot] = oldLsb[i];
+            ordinals[slot] = oldOrdinals[i];
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package ru.starbank.recommendation.domain.rules;
+
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+/**
+ * Per-user transaction facts that all fixed rule sets are evaluated from.
+ *
+ * <p>Derived from the user's cached {@link UserAggregates} ({@link #from}), so repeat requests
+ * evaluate fixed rules without touching the database. {@code RecommendationRepository#fixedRuleFacts}
+ * loads the same facts with one SQL statement.</p>
+ *
+ * <p>The {@code matches*} methods are the only definition of the fixed rule conditions and thresholds;
+ * the repository's per-user checks evaluate them over the loaded facts.</p>
+ *
+ * @param userExists    the user is present in {@code users}
+ * @param debitCount    number of DEBIT transactions
+ * @param investCount   number of INVEST transactions
+ * @param creditCount   number of CREDIT transactions
+ * @param debitDeposit  sum of DEBIT deposits
+ * @param debitWithdraw sum of DEBIT withdrawals
+ * @param savingDeposit sum of SAVING deposits
+ */
+public record FixedRuleFacts(
+        boolean userExists,
+        long debitCount,
+        long investCount,
+        long creditCount,
+        long debitDeposit,
+        long debitWithdraw,
+        long savingDeposit
+) {
+
+    static final long INVEST_500_SAVING_DEPOSIT_THRESHOLD = 1_000;
+    static final long TOP_SAVING_DEPOSIT_THRESHOLD = 50_000;
+    static final long SIMPLE_CREDIT_WITHDRAW_THRESHOLD = 100_000;
+
+    /**
+     * Facts from the user's aggregates. Transactions reference {@code users}, so a user with any
+     * transaction exists; a user without transactions matches no fixed rule either way.
+     */
+    public static FixedRuleFacts from(UserAggregates aggregates) {
+        return new FixedRuleFacts(
+                !aggregates.isEmpty(),
+                aggregates.countTransactions("DEBIT"),
+                aggregates.countTransactions("INVEST"),
+                aggregates.countTransactions("CREDIT"),
+                aggregates.sumAmount("DEBIT", "DEPOSIT"),
+                aggregates.sumAmount("DEBIT", "WITHDRAW"),
+                aggregates.sumAmount("SAVING", "DEPOSIT")
+        );
+    }
+
+    /**
+     * Uses DEBIT, has no INVEST, SAVING deposits above 1 000.
+     */
+    public boolean matchesInvest500() {
+        return userExists
+                && debitCount > 0
+                && investCount == 0
+                && savingDeposit > INVEST_500_SAVING_DEPOSIT_THRESHOLD;
+    }
+
+    /**
+     * Uses DEBIT, DEBIT or SAVING deposits of at least 50 000, DEBIT deposits exceed withdrawals.
+     */
+    public boolean matchesTopSaving() {
+        return userExists
+                && debitCount > 0
+                && (debitDeposit >= TOP_SAVING_DEPOSIT_THRESHOLD || savingDeposit >= TOP_SAVING_DEPOSIT_THRESHOLD)
+                && debitDeposit - debitWithdraw > 0;
+    }
+
+    /**
+     * Has no CREDIT, DEBIT deposits exceed withdrawals, DEBIT withdrawals above 100 000.
+     */
+    public boolean matchesSimpleCredit() {
+        return userExists
+                && creditCount == 0
+                && debitDeposit - debitWithdraw > 0
+                && debitWithdraw > SIMPLE_CREDIT_WITHDRAW_THRESHOLD;
+    }
+}
@@ -2,6 +2,9 @@ package ru.starbank.recommendation.domain.rules;
 
 import ru.starbank.recommendation.domain.dto.RecommendationDto;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -19,4 +22,50 @@ public interface RecommendationRuleSet {
      * @return optional recommendation
      */
     Optional<RecommendationDto> check(UUID userId);
+
+    /**
+     * Checks whether user matches rule set using facts already loaded for the user.
+     *
+     * <p>Fixed rule sets answer from {@code facts} without querying the database;
+     * by default the rule set runs its own check.</p>
+     *
+     * @param userId user id
+     * @param facts  user's fixed rule facts, loaded once per request
+     * @return optional recommendation
+     */
+    default Optional<RecommendationDto> check(UUID userId, FixedRuleFacts facts) {
+        return check(userId);
+    }
+
+    /**
+     * Checks a whole cohort of users.
+     *
+     * <p>By default calls {@link #check(UUID)} per user; fixed rule sets load facts for
+     * the whole cohort with set-based queries and pass them to {@link #checkAll(Map)}.</p>
+     *
+     * @param userIds user ids
+     * @return recommendation per matching user (users that do not match are absent)
+     */
+    default Map<UUID, RecommendationDto> checkAll(Collection<UUID> userIds) {
+        Map<UUID, RecommendationDto> matched = new HashMap<>();
+        for (UUID userId : userIds) {
+            check(userId).ifPresent(recommendation -> matched.put(userId, recommendation));
+        }
+        return matched;
+    }
+
+    /**
+     * Checks a cohort of users using facts already loaded for them.
+     *
+     * <p>Shared by all rule sets: applies {@link #check(UUID, FixedRuleFacts)} to every user.</p>
+     *
+     * @param facts fixed rule facts per user
+     * @return recommendation per matching user (users that do not match are absent)
+     */
+    default Map<UUID, RecommendationDto> checkAll(Map<UUID, FixedRuleFacts> facts) {
+        Map<UUID, RecommendationDto> matched = new HashMap<>();
+        facts.forEach((userId, userFacts) ->
+                check(userId, userFacts).ifPresent(recommendation -> matched.put(userId, recommendation)));
+        return matched;
+    }
 }
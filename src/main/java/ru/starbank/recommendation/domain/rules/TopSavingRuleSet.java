@@ -6,6 +6,8 @@ import org.springframework.stereotype.Component;
 import ru.starbank.recommendation.domain.dto.RecommendationDto;
 import ru.starbank.recommendation.repository.RecommendationRepository;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -27,8 +29,22 @@ public class TopSavingRuleSet implements RecommendationRuleSet {
 
     @Override
     public Optional<RecommendationDto> check(UUID userId) {
-        if (!fixedRulesRepository.matchesTopSaving(userId)) {
-            log.info("Rule matched: Top Saving for user_id={}", userId);
+        return recommendIf(fixedRulesRepository.matchesTopSaving(userId), userId);
+    }
+
+    @Override
+    public Optional<RecommendationDto> check(UUID userId, FixedRuleFacts facts) {
+        return recommendIf(facts.matchesTopSaving(), userId);
+    }
+
+    @Override
+    public Map<UUID, RecommendationDto> checkAll(Collection<UUID> userIds) {
+        return checkAll(fixedRulesRepository.fixedRuleFacts(userIds));
+    }
+
+    private Optional<RecommendationDto> recommendIf(boolean matches, UUID userId) {
+        if (!matches) {
+            log.debug("Rule not matched: Top Saving for user_id={}", userId);
             return Optional.empty();
         }
         return Optional.of(new RecommendationDto(PRODUCT_ID, PRODUCT_NAME, text()));
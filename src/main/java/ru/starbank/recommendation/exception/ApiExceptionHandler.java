@@ -52,6 +52,16 @@ public class ApiExceptionHandler {
         return new ResponseEntity<>(errorResponse, HttpStatus.NOT_FOUND);
     }
 
+    /**
+     * Рекомендации не вычислены за таймаут запроса или пул вычисления перегружен: клиенту стоит повторить позже.
+     */
+    @ExceptionHandler(RecommendationUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleRecommendationUnavailableException(RecommendationUnavailableException ex) {
+        log.warn("Рекомендации недоступны: {}", ex.getMessage());
+        ErrorResponse errorResponse = new ErrorResponse(ex.getMessage());
+        return new ResponseEntity<>(errorResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     /**
      * Обработка ошибок некорректных аргументов правила/движка.
      * Это ошибки запроса/данных, поэтому возвращаем 400.
@@ -59,7 +69,8 @@ public class ApiExceptionHandler {
     @ExceptionHandler({
             InvalidRuleArgumentsException.class,
             InvalidProductIdException.class,
-            UnsupportedQueryTypeException.class
+            UnsupportedQueryTypeException.class,
+            UnknownCacheException.class
     })
     public ResponseEntity<ErrorResponse> handleBadRequestRuntime(RuntimeException ex) {
         log.warn("Ошибка запроса: {}", ex.getMessage());
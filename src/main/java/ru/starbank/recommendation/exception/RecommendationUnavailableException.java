@@ -0,0 +1,11 @@
+package ru.starbank.recommendation.exception;
+
+/**
+ * Рекомендации не вычислены вовремя: истёк таймаут запроса или пул вычисления перегружен.
+ */
+public class RecommendationUnavailableException extends RuntimeException {
+
+    public RecommendationUnavailableException(String message) {
+        super(message);
+    }
+}
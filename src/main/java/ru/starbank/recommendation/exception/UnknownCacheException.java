@@ -0,0 +1,11 @@
+package ru.starbank.recommendation.exception;
+
+/**
+ * Неизвестное имя кеша в management API.
+ */
+public class UnknownCacheException extends RuntimeException {
+
+    public UnknownCacheException(String message) {
+        super(message);
+    }
+}
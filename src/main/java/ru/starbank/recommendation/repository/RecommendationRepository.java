@@ -2,9 +2,20 @@ package ru.starbank.recommendation.repository;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.stereotype.Repository;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.rules.FixedRuleFacts;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeShards;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -13,132 +24,150 @@ import java.util.UUID;
  *
  * <p>Note: This repository intentionally uses DB-native units for amount comparisons,
  * matching the verified working example on the same database.</p>
+ *
+ * <p>Product types are resolved through the in-memory {@link ProductCatalog}: queries filter
+ * by {@code t.product_id IN (...)} instead of joining {@code products}.</p>
+ *
+ * <p>Every query is user-scoped and runs on the user's shard ({@link KnowledgeShards#namedForUser}).</p>
  */
 @Repository
 public class RecommendationRepository {
     private static final Logger log = LoggerFactory.getLogger(RecommendationRepository.class);
 
-    private final JdbcTemplate jdbcTemplate;
+    /**
+     * Aggregates behind {@link FixedRuleFacts}, shared by the single-user and the cohort statements.
+     */
+    private static final String FACT_COLUMNS = """
+                COUNT(CASE WHEN t.product_id IN (:debit) THEN 1 END) AS debit_count,
+                COUNT(CASE WHEN t.product_id IN (:invest) THEN 1 END) AS invest_count,
+                COUNT(CASE WHEN t.product_id IN (:credit) THEN 1 END) AS credit_count,
+                COALESCE(SUM(CASE WHEN t.product_id IN (:debit) AND t.type = 'DEPOSIT' THEN t.amount END), 0) AS debit_deposit,
+                COALESCE(SUM(CASE WHEN t.product_id IN (:debit) AND t.type = 'WITHDRAW' THEN t.amount END), 0) AS debit_withdraw,
+                COALESCE(SUM(CASE WHEN t.product_id IN (:saving) AND t.type = 'DEPOSIT' THEN t.amount END), 0) AS saving_deposit
+            """;
+
+    private static final FixedRuleFacts UNKNOWN_USER = new FixedRuleFacts(false, 0, 0, 0, 0, 0, 0);
 
-    public RecommendationRepository(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate must not be null");
+    private final KnowledgeShards shards;
+    private final ProductCatalog productCatalog;
+    private final KnowledgeProperties properties;
+
+    public RecommendationRepository(KnowledgeShards shards, ProductCatalog productCatalog, KnowledgeProperties properties) {
+        this.shards = Objects.requireNonNull(shards, "shards must not be null");
+        this.productCatalog = Objects.requireNonNull(productCatalog, "productCatalog must not be null");
+        this.properties = Objects.requireNonNull(properties, "properties must not be null");
     }
 
-    public boolean matchesInvest500(UUID userId) {
+    /**
+     * Facts for all fixed rule sets in one statement: the user's transactions are scanned once
+     * with conditional aggregates instead of one correlated subquery per condition.
+     */
+    public FixedRuleFacts fixedRuleFacts(UUID userId) {
         String sql = """
             SELECT
-                EXISTS (SELECT 1 FROM public.users WHERE id = ?)
-                AND EXISTS (
-                    SELECT 1
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? AND p.type = 'DEBIT'
-                )
-                AND NOT EXISTS (
-                    SELECT 1
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? AND p.type = 'INVEST'
-                )
-                AND COALESCE((
-                    SELECT SUM(t.amount)
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ?
-                      AND p.type = 'SAVING'
-                      AND t.type = 'DEPOSIT'
-                ), 0) > ? AS result
+                EXISTS (SELECT 1 FROM public.users u WHERE u.id = :userId) AS user_exists,
+            """ + FACT_COLUMNS + """
+            FROM transactions t
+            WHERE t.user_id = :userId
+              AND t.product_id IN (:debit, :invest, :credit, :saving)
             """;
 
-        return Boolean.TRUE.equals(
-                jdbcTemplate.queryForObject(sql, Boolean.class, userId, userId, userId, userId, 1000)
-        );
+        return shards.namedForUser(userId).queryForObject(sql, productParams(userId),
+                (rs, rowNum) -> facts(rs, rs.getBoolean("user_exists")));
     }
 
-    public boolean matchesTopSaving(UUID userId) {
+    /**
+     * Facts for all fixed rule sets for a cohort of users: one {@code GROUP BY user_id} pass per
+     * {@code knowledge.aggregates.load-batch-size} users of a shard.
+     *
+     * @return facts for every requested user (users absent from {@code users} get {@code userExists=false})
+     */
+    public Map<UUID, FixedRuleFacts> fixedRuleFacts(Collection<UUID> userIds) {
         String sql = """
-            SELECT (
-                EXISTS (SELECT 1 FROM public.users u WHERE u.id = ?)
-                AND EXISTS (
-                    SELECT 1
-                    FROM transactions t
-                    JOIN products p ON t.product_id = p.id
-                    WHERE t.user_id = ? AND p.type = 'DEBIT'
-                )
-                AND (
-                    (SELECT COALESCE(SUM(t.amount), 0)
-                       FROM transactions t
-                       JOIN products p ON p.id = t.product_id
-                      WHERE p.type = 'DEBIT'
-                        AND t.type = 'DEPOSIT'
-                        AND t.user_id = ?) >= ?
-                    OR
-                    (SELECT COALESCE(SUM(t.amount), 0)
-                       FROM transactions t
-                       JOIN products p ON p.id = t.product_id
-                      WHERE p.type = 'SAVING'
-                        AND t.type = 'DEPOSIT'
-                        AND t.user_id = ?) >= ?
-                )
-                AND (
-                    SELECT COALESCE(SUM(CASE WHEN t.type = 'DEPOSIT' THEN t.amount ELSE 0 END), 0)
-                         - COALESCE(SUM(CASE WHEN t.type = 'WITHDRAW' THEN t.amount ELSE 0 END), 0)
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE p.type = 'DEBIT'
-                      AND t.user_id = ?
-                ) > 0
-            ) AS result
+            SELECT
+                u.id AS user_id,
+            """ + FACT_COLUMNS + """
+            FROM public.users u
+            LEFT JOIN transactions t
+                   ON t.user_id = u.id
+                  AND t.product_id IN (:debit, :invest, :credit, :saving)
+            WHERE u.id IN (:userIds)
+            GROUP BY u.id
             """;
 
-        return Boolean.TRUE.equals(
-                jdbcTemplate.queryForObject(
-                        sql,
-                        Boolean.class,
-                        userId,
-                        userId,
-                        userId, 50_000,
-                        userId, 50_000,
-                        userId
-                )
-        );
+        Map<Integer, List<UUID>> byShard = new HashMap<>();
+        for (UUID userId : userIds) {
+            byShard.computeIfAbsent(shards.shardOf(userId), shard -> new ArrayList<>()).add(userId);
+        }
+
+        int batchSize = Math.max(1, properties.getAggregates().getLoadBatchSize());
+        Map<UUID, FixedRuleFacts> facts = new HashMap<>(userIds.size() * 2);
+        for (List<UUID> shardUsers : byShard.values()) {
+            for (int from = 0; from < shardUsers.size(); from += batchSize) {
+                List<UUID> batch = shardUsers.subList(from, Math.min(shardUsers.size(), from + batchSize));
+                MapSqlParameterSource params = productParams().addValue("userIds", batch);
+                shards.namedForUser(batch.get(0)).query(sql, params, rs -> {
+                    facts.put(UUID.fromString(rs.getString("user_id")), facts(rs, true));
+                });
+            }
+        }
+        for (UUID userId : userIds) {
+            facts.putIfAbsent(userId, UNKNOWN_USER);
+        }
+        return facts;
+    }
+
+    /**
+     * Fixed rule conditions are defined once, in {@link FixedRuleFacts}; this only loads the facts.
+     */
+    public boolean matchesInvest500(UUID userId) {
+        return fixedRuleFacts(userId).matchesInvest500();
+    }
+
+    public boolean matchesTopSaving(UUID userId) {
+        return fixedRuleFacts(userId).matchesTopSaving();
     }
 
     public boolean matchesSimpleCredit(UUID userId) {
-        String sql = """
-            SELECT
-                EXISTS (SELECT 1 FROM public.users u WHERE u.id = ?)
-                AND NOT EXISTS (
-                    SELECT 1
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE p.type = 'CREDIT'
-                      AND t.user_id = ?
-                )
-                AND 0 < (
-                    SELECT COALESCE(SUM(CASE t.type
-                        WHEN 'DEPOSIT' THEN t.amount
-                        ELSE 0 END), 0)
-                         - COALESCE(SUM(CASE t.type
-                        WHEN 'WITHDRAW' THEN t.amount
-                        ELSE 0 END), 0)
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE p.type = 'DEBIT'
-                      AND t.user_id = ?
-                )
-                AND ? < (
-                    SELECT COALESCE(SUM(t.amount), 0)
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE p.type = 'DEBIT'
-                      AND t.type = 'WITHDRAW'
-                      AND t.user_id = ?
-                ) AS result
-            """;
+        return fixedRuleFacts(userId).matchesSimpleCredit();
+    }
 
-        return Boolean.TRUE.equals(
-                jdbcTemplate.queryForObject(sql, Boolean.class, userId, userId, userId, 100_000, userId)
+    private static FixedRuleFacts facts(ResultSet rs, boolean userExists) throws SQLException {
+        return new FixedRuleFacts(
+                userExists,
+                rs.getLong("debit_count"),
+                rs.getLong("invest_count"),
+                rs.getLong("credit_count"),
+                rs.getLong("debit_deposit"),
+                rs.getLong("debit_withdraw"),
+                rs.getLong("saving_deposit")
         );
     }
-}
\ No newline at end of file
+
+    /**
+     * Common parameters: user id and product ids of every product type used by fixed rules.
+     */
+    private MapSqlParameterSource productParams(UUID userId) {
+        return productParams().addValue("userId", userId);
+    }
+
+    /**
+     * Product ids of every product type used by fixed rules.
+     */
+    private MapSqlParameterSource productParams() {
+        return new MapSqlParameterSource()
+                .addValue("debit", productIds("DEBIT"))
+                .addValue("invest", productIds("INVEST"))
+                .addValue("saving", productIds("SAVING"))
+                .addValue("credit", productIds("CREDIT"));
+    }
+
+    private List<UUID> productIds(String productType) {
+        List<UUID> ids = productCatalog.productIdsOf(productType);
+        if (ids.isEmpty()) {
+            log.debug("No products of type {} in catalog", productType);
+            return List.of(ProductCatalog.NO_PRODUCT);
+        }
+        return ids;
+    }
+}
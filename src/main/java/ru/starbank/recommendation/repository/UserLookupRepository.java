@@ -1,8 +1,9 @@
 package ru.starbank.recommendation.repository;
 
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeShards;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
@@ -13,10 +14,10 @@ import java.util.UUID;
 @Repository
 public class UserLookupRepository {
 
-    private final JdbcTemplate jdbcTemplate;
+    private final KnowledgeShards shards;
 
-    public UserLookupRepository(JdbcTemplate jdbcTemplate) {
-        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate must not be null");
+    public UserLookupRepository(KnowledgeShards shards) {
+        this.shards = Objects.requireNonNull(shards, "shards must not be null");
     }
 
     /**
@@ -31,16 +32,20 @@ public class UserLookupRepository {
                 WHERE username = ?
                 """;
 
-        return jdbcTemplate.query(
-                sql,
-                (rs, rowNum) -> new BankUserRow(
-                        UUID.fromString(rs.getString("id")),
-                        rs.getString("first_name"),
-                        rs.getString("last_name"),
-                        rs.getString("username")
-                ),
-                username
-        );
+        // username не ключ шардирования: ищем во всех шардах
+        return shards.fanOut(jdbc -> jdbc.query(
+                              sql,
+                              (rs, rowNum) -> new BankUserRow(
+                                      UUID.fromString(rs.getString("id")),
+                                      rs.getString("first_name"),
+                                      rs.getString("last_name"),
+                                      rs.getString("username")
+                              ),
+                              username
+                      ))
+                      .stream()
+                      .flatMap(Collection::stream)
+                      .toList();
     }
 
     /**
@@ -0,0 +1,84 @@
+package ru.starbank.recommendation.repository.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.domain.knowledge.UserAggregatesCodec;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Встроенная реализация {@link SharedAggregatesCache} в памяти процесса.
+ *
+ * <p>Общая только для кешей внутри одной JVM; используется в тестах и локально вместо
+ * внешнего хранилища. Значения хранятся сериализованными, как во внешнем хранилище.</p>
+ *
+ * <p>Метки сбросов хранятся не по пользователю, а по {@value #VERSION_STRIPES} полосам user_id
+ * плюс общая метка {@link #clear}: сброс одного пользователя может отменить запись соседа по полосе,
+ * но не наоборот. Метка сохраняется вместе со значением, и чтение отбрасывает значение с устаревшей
+ * меткой — даже если запись успела проверить метку до сброса, а положить значение после.</p>
+ */
+public class InMemorySharedAggregatesCache implements SharedAggregatesCache {
+
+    private static final int VERSION_STRIPES = 1024;
+
+    private final Cache<UUID, Entry> entries;
+    private final TypeDictionary dictionary;
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final AtomicLong clearVersion = new AtomicLong();
+
+    public InMemorySharedAggregatesCache(long maximumSize, Duration timeToLive, TypeDictionary dictionary) {
+        this.dictionary = Objects.requireNonNull(dictionary, "dictionary must not be null");
+        this.entries = Caffeine.newBuilder()
+                               .maximumSize(maximumSize)
+                               .expireAfterWrite(timeToLive)
+                               .build();
+    }
+
+    @Override
+    public UserAggregates get(UUID userId) {
+        Entry entry = entries.getIfPresent(userId);
+        if (entry == null || entry.version() != version(userId)) {
+            return null;
+        }
+        return UserAggregatesCodec.decode(entry.data(), dictionary);
+    }
+
+    @Override
+    public long version(UUID userId) {
+        return clearVersion.get() + versions.get(stripe(userId));
+    }
+
+    @Override
+    public boolean put(UUID userId, UserAggregates aggregates, long version) {
+        if (version(userId) != version) {
+            return false;
+        }
+        entries.put(userId, new Entry(version, UserAggregatesCodec.encode(aggregates)));
+        return true;
+    }
+
+    @Override
+    public void evict(UUID userId) {
+        versions.incrementAndGet(stripe(userId));
+        entries.invalidate(userId);
+    }
+
+    @Override
+    public void clear() {
+        clearVersion.incrementAndGet();
+        entries.invalidateAll();
+    }
+
+    private static int stripe(UUID userId) {
+        return Math.floorMod(userId.hashCode(), VERSION_STRIPES);
+    }
+
+    private record Entry(long version, byte[] data) {
+    }
+}
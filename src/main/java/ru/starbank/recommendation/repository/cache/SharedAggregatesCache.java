@@ -0,0 +1,41 @@
+package ru.starbank.recommendation.repository.cache;
+
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+import java.util.UUID;
+
+/**
+ * Второй уровень (L2) кеша агрегатов пользователя, общий для всех экземпляров сервиса.
+ *
+ * <p>Стоит за локальным Caffeine-кешем (L1): промах L1 сначала ищется здесь и только потом
+ * загружается из knowledge DB, а загруженное значение записывается в L2 для остальных узлов.
+ * Реализация отвечает за сериализацию ({@link ru.starbank.recommendation.domain.knowledge.UserAggregatesCodec})
+ * и срок жизни записей. Ошибки хранилища не должны ломать запросы: реализация возвращает промах.</p>
+ *
+ * <p>Запись условная: загрузчик берёт {@link #version} до чтения knowledge DB, и {@link #put} не пишет значение,
+ * если после этого пользователь был сброшен ({@link #evict}, {@link #clear}). Иначе снимок, прочитанный до сброса,
+ * вернулся бы в L2 после него.</p>
+ */
+public interface SharedAggregatesCache {
+
+    /**
+     * Снимок пользователя или null при промахе.
+     */
+    UserAggregates get(UUID userId);
+
+    /**
+     * Метка сбросов пользователя: меняется при каждом {@link #evict} и {@link #clear}.
+     */
+    long version(UUID userId);
+
+    /**
+     * Записывает снимок, если метка пользователя всё ещё равна version.
+     *
+     * @return записан ли снимок
+     */
+    boolean put(UUID userId, UserAggregates aggregates, long version);
+
+    void evict(UUID userId);
+
+    void clear();
+}
@@ -0,0 +1,91 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import org.springframework.stereotype.Component;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Поколение кеша агрегатов.
+ *
+ * <p>Каждый сброс кеша ({@code /management/clear-caches}) начинает новое поколение. Запись кеша
+ * ({@link CachedAggregates}) хранит поколение, действовавшее на начало её загрузки, поэтому загрузка,
+ * начатая до сброса и завершившаяся после него, остаётся записью старого поколения.</p>
+ *
+ * <p>Поколение считается обработанным ({@link #settled()}), когда фоновый проход мягкого сброса
+ * завершён. Запись старше обработанного поколения проход пропустил — её перезагружает первое
+ * чтение. Записи поколений между обработанным и текущим ждут своей очереди в проходе.</p>
+ */
+@Component
+public class CacheGeneration {
+
+    private volatile long current;
+    private volatile long settled;
+
+    public long current() {
+        return current;
+    }
+
+    public long settled() {
+        return settled;
+    }
+
+    /**
+     * Начинает новое поколение.
+     *
+     * @param settledNow записи прежних поколений уже сброшены (жёсткий сброс) — чтение не должно их ждать
+     * @return номер нового поколения
+     */
+    public synchronized long next(boolean settledNow) {
+        long next = current + 1;
+        current = next;
+        if (settledNow) {
+            settled = next;
+        }
+        return next;
+    }
+
+    /**
+     * Проход поколения generation завершён.
+     */
+    public synchronized void settle(long generation) {
+        if (generation > settled && generation <= current) {
+            settled = generation;
+        }
+    }
+
+    /**
+     * Нужно ли перезагрузить запись при чтении: её поколение старше завершённого прохода.
+     */
+    public boolean isStale(CachedAggregates entry) {
+        return entry.generation() < settled;
+    }
+
+    /**
+     * Загрузчик кеша, помечающий записи поколением на начало загрузки.
+     */
+    public CacheLoader<UUID, CachedAggregates> stamping(UserAggregatesLoader loader) {
+        Objects.requireNonNull(loader, "loader must not be null");
+        return new CacheLoader<>() {
+            @Override
+            public CachedAggregates load(UUID userId) {
+                long generation = current;
+                return new CachedAggregates(loader.load(userId), generation);
+            }
+
+            @Override
+            public Map<UUID, CachedAggregates> loadAll(Set<? extends UUID> userIds) {
+                long generation = current;
+                Map<UUID, UserAggregates> loaded = loader.loadAll(userIds);
+                Map<UUID, CachedAggregates> entries = new HashMap<>(loaded.size() * 2);
+                loaded.forEach((userId, aggregates) -> entries.put(userId, new CachedAggregates(aggregates, generation)));
+                return entries;
+            }
+        };
+    }
+}
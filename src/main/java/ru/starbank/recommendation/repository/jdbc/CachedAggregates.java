@@ -0,0 +1,20 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+/**
+ * Запись кеша агрегатов: снимок пользователя и поколение кеша ({@link CacheGeneration}),
+ * действовавшее, когда его загрузка началась.
+ *
+ * @param aggregates снимок пользователя
+ * @param generation поколение кеша на начало загрузки
+ */
+public record CachedAggregates(UserAggregates aggregates, long generation) {
+
+    /**
+     * Тот же снимок с изменённым значением; поколение сохраняется.
+     */
+    CachedAggregates with(UserAggregates updated) {
+        return new CachedAggregates(updated, generation);
+    }
+}
@@ -0,0 +1,194 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.ColumnarAggregates;
+import ru.starbank.recommendation.domain.knowledge.ColumnarAggregatesFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Колоночное in-memory хранилище агрегатов всех пользователей ({@code knowledge.aggregates.source=columnar}).
+ *
+ * <p>Загружается при старте одним проходом {@code GROUP BY user_id, product_id, type} по transactions
+ * (во всех шардах параллельно) и перезагружается с интервалом {@code knowledge.aggregates.refresh-interval-ms}. Новый снимок
+ * строится целиком и подменяет старый одной записью volatile-ссылки, поэтому читатели
+ * никогда не видят частично загруженных данных.</p>
+ *
+ * <p>Если задан {@code knowledge.aggregates.snapshot-file}, после каждой загрузки снимок пишется
+ * в файл ({@link ColumnarAggregatesFile}), а при старте свежий файл отображается в память
+ * и обслуживает чтения, пока идёт первая загрузка из БД.</p>
+ *
+ * <p>Точечно сброшенные пользователи ({@link #invalidateUser}) читаются мимо снимка (через кеш
+ * и загрузку из БД), пока не завершится перезагрузка, начатая после сброса.</p>
+ */
+@Repository
+@ConditionalOnProperty(prefix = "knowledge.aggregates", name = "source", havingValue = "columnar")
+public class ColumnarAggregateStore {
+    private static final Logger log = LoggerFactory.getLogger(ColumnarAggregateStore.class);
+
+    private final KnowledgeShards shards;
+    private final ProductCatalog productCatalog;
+    private final Path snapshotFile;
+    private final Duration snapshotMaxAge;
+
+    private volatile ColumnarAggregates snapshot;
+
+    /**
+     * user_id -> момент точечного сброса.
+     */
+    private final Map<UUID, Instant> invalidatedUsers = new ConcurrentHashMap<>();
+
+    public ColumnarAggregateStore(
+            KnowledgeShards shards,
+            ProductCatalog productCatalog,
+            KnowledgeProperties properties
+    ) {
+        this.shards = Objects.requireNonNull(shards, "shards must not be null");
+        this.productCatalog = Objects.requireNonNull(productCatalog, "productCatalog must not be null");
+
+        KnowledgeProperties.Aggregates settings = properties.getAggregates();
+        String file = settings.getSnapshotFile();
+        this.snapshotFile = file == null || file.isBlank() ? null : Path.of(file);
+        this.snapshotMaxAge = Duration.ofMillis(settings.getSnapshotMaxAgeMs());
+    }
+
+    /**
+     * Быстрый старт: отображение файла снимка в память до первой загрузки из БД.
+     */
+    @PostConstruct
+    void mapSnapshotFile() {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            ColumnarAggregatesFile.Mapped mapped = ColumnarAggregatesFile.map(snapshotFile);
+            if (mapped == null) {
+                log.info("No usable columnar snapshot file at {}", snapshotFile);
+                return;
+            }
+            Duration age = Duration.between(mapped.createdAt(), Instant.now());
+            if (age.compareTo(snapshotMaxAge) > 0) {
+                log.info("Columnar snapshot file {} is too old ({}), ignored", snapshotFile, age);
+                return;
+            }
+            snapshot = mapped.aggregates();
+            log.info("Columnar snapshot mapped from {}: users={}, age={}",
+                    snapshotFile, mapped.aggregates().userCount(), age);
+        } catch (IOException e) {
+            log.warn("Failed to map columnar snapshot file {}, starting cold", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Текущий снимок или null, если первая загрузка ещё не завершилась.
+     */
+    public ColumnarAggregates snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Снимок для чтения данных пользователя или null, если снимка нет или пользователь сброшен.
+     */
+    public ColumnarAggregates snapshotFor(UUID userId) {
+        if (!invalidatedUsers.isEmpty() && invalidatedUsers.containsKey(userId)) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Точечный сброс пользователя: до следующей перезагрузки его данные читаются не из снимка.
+     */
+    public void invalidateUser(UUID userId) {
+        invalidatedUsers.put(userId, Instant.now());
+    }
+
+    /**
+     * Полная перезагрузка. При ошибке остаётся предыдущий снимок.
+     * Перезагрузки не пересекаются: снимок, начатый раньше, не может заменить более поздний.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${knowledge.aggregates.refresh-interval-ms:300000}")
+    public synchronized void reload() {
+        Instant startedAt = Instant.now();
+        ColumnarAggregates loaded;
+        try {
+            loaded = load();
+        } catch (DataAccessException e) {
+            log.error("Columnar aggregates load failed, keeping previous snapshot", e);
+            return;
+        }
+        snapshot = loaded;
+        invalidatedUsers.values().removeIf(invalidatedAt -> invalidatedAt.isBefore(startedAt));
+        log.info("Columnar aggregates loaded: users={}, ~{}MB, took={}ms",
+                loaded.userCount(),
+                loaded.estimatedBytes() / (1024 * 1024),
+                Duration.between(startedAt, Instant.now()).toMillis());
+
+        writeSnapshotFile(loaded, startedAt);
+    }
+
+    private void writeSnapshotFile(ColumnarAggregates loaded, Instant loadedAt) {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            ColumnarAggregatesFile.write(loaded, loadedAt, snapshotFile);
+        } catch (IOException e) {
+            log.warn("Failed to write columnar snapshot file {}", snapshotFile, e);
+        }
+    }
+
+    /**
+     * Загрузка всех шардов параллельно в один снимок.
+     */
+    private ColumnarAggregates load() {
+        long users = shards.fanOut(jdbc -> jdbc.queryForObject("SELECT COUNT(*) FROM users", Long.class))
+                           .stream()
+                           .mapToLong(count -> count == null ? 0 : count)
+                           .sum();
+        ColumnarAggregates.Builder builder = ColumnarAggregates.builder(Math.toIntExact(users));
+
+        shards.fanOut(jdbc -> {
+            jdbc.query("""
+                    SELECT t.user_id AS user_id,
+                           t.product_id AS product_id,
+                           t.type AS transaction_type,
+                           COUNT(*) AS tx_count,
+                           COALESCE(SUM(t.amount), 0) AS amount_sum
+                    FROM transactions t
+                    GROUP BY t.user_id, t.product_id, t.type
+                    """, rs -> {
+                UUID productId = UUID.fromString(rs.getString("product_id"));
+                String productType = productCatalog.typeOf(productId);
+                if (productType == null) {
+                    log.warn("Unknown product in transactions, skipped: product_id={}", productId);
+                    return;
+                }
+                UUID userId = UUID.fromString(rs.getString("user_id"));
+                String transactionType = rs.getString("transaction_type");
+                long count = rs.getLong("tx_count");
+                long sum = rs.getLong("amount_sum");
+                synchronized (builder) {
+                    builder.add(userId, productType, transactionType, count, sum);
+                }
+            });
+            return null;
+        });
+
+        return builder.build();
+    }
+}
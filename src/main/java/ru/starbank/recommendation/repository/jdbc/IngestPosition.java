@@ -0,0 +1,65 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Позиция {@code TransactionTailer} в каждом шарде: последний обработанный ingest-номер (watermark)
+ * и открытые пропуски — номера не больше него, строки которых ещё не закоммичены.
+ *
+ * <p>Снимок агрегатов загружается на позицию tailer-а ({@link UserAggregatesLoader}): в него входят
+ * транзакции с номером не больше watermark, кроме открытых пропусков, и снимок помечается этой позицией.
+ * Остальные транзакции tailer применит к снимку сам: новые номера и пропуски, закоммиченные позже.
+ * Транзакцию, которую снимок мог уже учесть, tailer не применяет, а сбрасывает снимок
+ * ({@link KnowledgeRepository#applyTransaction}).</p>
+ *
+ * <p>Tailer публикует позицию до того, как применить транзакцию к кешу. Загрузка, прочитавшая
+ * предыдущую позицию, к этому моменту уже стоит в кеше, и применение дожидается её завершения.</p>
+ *
+ * <p>Если открытых пропусков больше {@link #MAX_STAMPED_GAPS}, позиция публикуется как неизвестная:
+ * снимки загружаются без позиции и сбрасываются первой же новой транзакцией.</p>
+ */
+@Component
+public class IngestPosition {
+
+    /**
+     * Сколько открытых пропусков может храниться в снимке и в условии запроса загрузки.
+     */
+    public static final int MAX_STAMPED_GAPS = 64;
+
+    private final Map<Integer, Position> positions = new ConcurrentHashMap<>();
+
+    /**
+     * Позиция шарда; {@link Position#UNKNOWN}, пока tailer его не инициализировал.
+     */
+    public Position of(int shard) {
+        return positions.getOrDefault(shard, Position.UNKNOWN);
+    }
+
+    /**
+     * @param openGaps открытые пропуски по возрастанию
+     */
+    public void publish(int shard, long watermark, Collection<Long> openGaps) {
+        if (openGaps.size() > MAX_STAMPED_GAPS) {
+            positions.put(shard, Position.UNKNOWN);
+            return;
+        }
+        positions.put(shard, new Position(watermark, openGaps.stream().mapToLong(Long::longValue).toArray()));
+    }
+
+    /**
+     * @param watermark последний обработанный ingest-номер; 0 — позиция неизвестна
+     * @param openGaps  открытые пропуски по возрастанию (массив не изменяется)
+     */
+    public record Position(long watermark, long[] openGaps) {
+
+        public static final Position UNKNOWN = new Position(0L, new long[0]);
+
+        public boolean isKnown() {
+            return watermark > 0;
+        }
+    }
+}
@@ -1,38 +1,84 @@
 package ru.starbank.recommendation.repository.jdbc;
 
-import com.github.benmanes.caffeine.cache.Cache;
-import org.springframework.jdbc.core.JdbcTemplate;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Repository;
-import ru.starbank.recommendation.config.cache.CacheConfig;
+import ru.starbank.recommendation.domain.knowledge.ColumnarAggregates;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.cache.SharedAggregatesCache;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Репозиторий knowledge DB (read-only).
  *
- * <p>Stage 3: кеширование через явный Caffeine get-if-absent-compute.</p>
+ * <p>Stage 3: кеширование через Caffeine {@link AsyncLoadingCache} с фоновой перезагрузкой
+ * (refreshAfterWrite): горячие записи обновляются, пока читатели получают текущее значение.</p>
+ *
+ * <p>Все вопросы по пользователю (есть ли транзакции, их количество, суммы) отвечаются
+ * из одного снимка {@link UserAggregates}, который загружается одним GROUP BY-запросом
+ * и кешируется одной записью на пользователя.</p>
+ *
+ * <p>Промахи кеша загружаются через {@link UserAggregatesLoader} (сырые транзакции
+ * или материализованная таблица, в зависимости от настроек).</p>
+ *
+ * <p>При {@code knowledge.aggregates.source=columnar} ответы берутся из {@link ColumnarAggregateStore}
+ * (чтение из массивов, без JDBC); кеш используется только до завершения его первой загрузки.</p>
+ *
+ * <p>Если включён L2 ({@link SharedAggregatesCache}), сбросы и инкрементальные обновления
+ * снимков сбрасывают и его записи, чтобы следующий промах L1 не получил из L2 устаревшее значение.</p>
+ *
+ * <p>Изменения данных пользователя отмечаются в {@link ReplicaLagGuard}: пока реплики могут отставать,
+ * его снимок загружается из основной БД.</p>
+ *
+ * <p>Записи кеша помечены поколением ({@link CacheGeneration}); запись, пропущенная проходом мягкого
+ * сброса, перезагружается в фоне при чтении.</p>
  */
 @Repository
 @SuppressWarnings({"nullness", "NullableProblems"})
 public class KnowledgeRepository {
 
-    private final JdbcTemplate jdbcTemplate;
+    private final AsyncLoadingCache<UUID, CachedAggregates> asyncUserAggregatesCache;
+    private final LoadingCache<UUID, CachedAggregates> userAggregatesCache;
 
-    private final Cache<CacheConfig.HasAnyTransactionKey, Boolean> hasAnyTransactionCache;
-    private final Cache<CacheConfig.CountTransactionsKey, Integer> countTransactionsCache;
-    private final Cache<CacheConfig.SumAmountKey, Long> sumAmountCache;
+    /**
+     * null, если колоночный режим выключен.
+     */
+    private final ColumnarAggregateStore columnarStore;
+
+    /**
+     * null, если L2 выключен.
+     */
+    private final SharedAggregatesCache sharedCache;
+
+    private final TypeDictionary typeDictionary;
+    private final ReplicaLagGuard replicaLagGuard;
+    private final CacheGeneration cacheGeneration;
 
     public KnowledgeRepository(
-            JdbcTemplate jdbcTemplate,
-            Cache<CacheConfig.HasAnyTransactionKey, Boolean> hasAnyTransactionCache,
-            Cache<CacheConfig.CountTransactionsKey, Integer> countTransactionsCache,
-            Cache<CacheConfig.SumAmountKey, Long> sumAmountCache
+            AsyncLoadingCache<UUID, CachedAggregates> userAggregatesCache,
+            ObjectProvider<ColumnarAggregateStore> columnarStore,
+            ObjectProvider<SharedAggregatesCache> sharedCache,
+            TypeDictionary typeDictionary,
+            ReplicaLagGuard replicaLagGuard,
+            CacheGeneration cacheGeneration
     ) {
-        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate must not be null");
-        this.hasAnyTransactionCache = Objects.requireNonNull(hasAnyTransactionCache, "hasAnyTransactionCache must not be null");
-        this.countTransactionsCache = Objects.requireNonNull(countTransactionsCache, "countTransactionsCache must not be null");
-        this.sumAmountCache = Objects.requireNonNull(sumAmountCache, "sumAmountCache must not be null");
+        this.asyncUserAggregatesCache = Objects.requireNonNull(userAggregatesCache, "userAggregatesCache must not be null");
+        this.userAggregatesCache = userAggregatesCache.synchronous();
+        this.columnarStore = columnarStore.getIfAvailable();
+        this.sharedCache = sharedCache.getIfAvailable();
+        this.typeDictionary = Objects.requireNonNull(typeDictionary, "typeDictionary must not be null");
+        this.replicaLagGuard = Objects.requireNonNull(replicaLagGuard, "replicaLagGuard must not be null");
+        this.cacheGeneration = Objects.requireNonNull(cacheGeneration, "cacheGeneration must not be null");
     }
 
     /**
@@ -40,19 +86,11 @@ public class KnowledgeRepository {
      * есть ли хотя бы одна транзакция по продуктам данного типа.
      */
     public boolean hasAnyTransaction(UUID userId, String productType) {
-        CacheConfig.HasAnyTransactionKey key = new CacheConfig.HasAnyTransactionKey(userId, productType);
-
-        return Boolean.TRUE.equals(hasAnyTransactionCache.get(key, k -> {
-            Integer cnt = jdbcTemplate.queryForObject("""
-                    SELECT COUNT(*)
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE t.user_id = ?
-                      AND p.type = ?
-                    """, Integer.class, k.userId(), k.productType());
-
-            return cnt != null && cnt > 0;
-        }));
+        ColumnarAggregates columnar = columnarFor(userId);
+        if (columnar != null) {
+            return columnar.hasAnyTransaction(userId, productType);
+        }
+        return aggregatesFor(userId).hasAnyTransaction(productType);
     }
 
     /**
@@ -60,19 +98,11 @@ public class KnowledgeRepository {
      * Используется для ACTIVE_USER_OF (threshold >= 5).
      */
     public int countTransactions(UUID userId, String productType) {
-        CacheConfig.CountTransactionsKey key = new CacheConfig.CountTransactionsKey(userId, productType);
-
-        return countTransactionsCache.get(key, k -> {
-            Integer cnt = jdbcTemplate.queryForObject("""
-                    SELECT COUNT(*)
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE t.user_id = ?
-                      AND p.type = ?
-                    """, Integer.class, k.userId(), k.productType());
-
-            return cnt == null ? 0 : cnt;
-        });
+        ColumnarAggregates columnar = columnarFor(userId);
+        if (columnar != null) {
+            return columnar.countTransactions(userId, productType);
+        }
+        return aggregatesFor(userId).countTransactions(productType);
     }
 
     /**
@@ -81,29 +111,201 @@ public class KnowledgeRepository {
      * <p>Например: productType=DEBIT, transactionType=WITHDRAW.</p>
      */
     public long sumAmount(UUID userId, String productType, String transactionType) {
-        CacheConfig.SumAmountKey key = new CacheConfig.SumAmountKey(userId, productType, transactionType);
-
-        return sumAmountCache.get(key, k -> {
-            Long sum = jdbcTemplate.queryForObject("""
-                    SELECT COALESCE(SUM(t.amount), 0)
-                    FROM transactions t
-                    JOIN products p ON p.id = t.product_id
-                    WHERE t.user_id = ?
-                      AND p.type = ?
-                      AND t.type = ?
-                    """, Long.class, k.userId(), k.productType(), k.transactionType());
-
-            return sum == null ? 0L : sum;
+        ColumnarAggregates columnar = columnarFor(userId);
+        if (columnar != null) {
+            return columnar.sumAmount(userId, productType, transactionType);
+        }
+        return aggregatesFor(userId).sumAmount(productType, transactionType);
+    }
+
+    /**
+     * Возвращает агрегаты пользователя по всем типам продуктов и транзакций.
+     *
+     * <p>При промахе кеша выполняется ровно один запрос к knowledge DB.</p>
+     */
+    public UserAggregates aggregatesFor(UUID userId) {
+        Objects.requireNonNull(userId, "userId must not be null");
+        ColumnarAggregates columnar = columnarFor(userId);
+        if (columnar != null) {
+            return columnar.aggregatesFor(userId, typeDictionary);
+        }
+        return current(userId, userAggregatesCache.get(userId));
+    }
+
+    /**
+     * Агрегаты нескольких пользователей сразу.
+     *
+     * <p>Снимки, которых нет в кеше, загружаются пакетно ({@link UserAggregatesLoader#loadAll}):
+     * один запрос на {@code knowledge.aggregates.load-batch-size} пользователей вместо запроса на каждого,
+     * и кладутся в кеш.</p>
+     *
+     * @return снимок для каждого из userIds (пустой для пользователей без транзакций)
+     */
+    public Map<UUID, UserAggregates> aggregatesFor(Collection<UUID> userIds) {
+        Objects.requireNonNull(userIds, "userIds must not be null");
+        Map<UUID, UserAggregates> result = new HashMap<>(userIds.size() * 2);
+        List<UUID> cached = new ArrayList<>(userIds.size());
+        for (UUID userId : userIds) {
+            ColumnarAggregates columnar = columnarFor(userId);
+            if (columnar != null) {
+                result.put(userId, columnar.aggregatesFor(userId, typeDictionary));
+            } else {
+                cached.add(userId);
+            }
+        }
+        if (!cached.isEmpty()) {
+            userAggregatesCache.getAll(cached).forEach((userId, entry) -> result.put(userId, current(userId, entry)));
+        }
+        return result;
+    }
+
+    /**
+     * Применяет новую транзакцию к закешированному снимку пользователя.
+     *
+     * <p>Если снимка в кеше нет — ничего не делает (он будет загружен при следующем обращении
+     * и уже будет содержать транзакцию). Применяется только транзакция, которая точно не вошла в снимок
+     * ({@link UserAggregates#canApply}: номер больше позиции снимка или её открытый пропуск).
+     * Иначе, как и у снимка без позиции, отличить учтённую транзакцию от новой нельзя — снимок сбрасывается.</p>
+     *
+     * <p>Обновлённая запись считается записанной заново: отсчёт expireAfterWrite/refreshAfterWrite
+     * начинается снова, поэтому истечение записи не исправляет расхождения у активных пользователей.</p>
+     *
+     * @param sequence ingest-номер транзакции
+     */
+    public void applyTransaction(UUID userId, String productType, String transactionType, long amount, long sequence) {
+        Objects.requireNonNull(userId, "userId must not be null");
+        replicaLagGuard.markChanged(userId);
+        evictShared(userId);
+        userAggregatesCache.asMap().computeIfPresent(userId, (id, current) -> {
+            UserAggregates aggregates = current.aggregates();
+            if (!aggregates.hasSequence() || !aggregates.canApply(sequence)) {
+                return null;
+            }
+            return current.with(aggregates.withTransaction(productType, transactionType, amount, sequence));
         });
     }
 
+    /**
+     * Точечный сброс снимка пользователя. Следующее обращение загрузит его заново.
+     *
+     * @return был ли снимок в кеше
+     */
+    public boolean invalidateUser(UUID userId) {
+        Objects.requireNonNull(userId, "userId must not be null");
+        replicaLagGuard.markChanged(userId);
+        evictShared(userId);
+        return userAggregatesCache.asMap().remove(userId) != null;
+    }
+
+    /**
+     * Сброс снимков всех закешированных пользователей, у которых есть транзакции по продуктам типа productType.
+     *
+     * <p>Подходит, когда изменились данные по типу, а справочник продуктов — нет: снимок, построенный
+     * по старому справочнику, может не содержать типа вовсе. Исправления справочника обрабатывает
+     * {@code CacheManagementService#invalidateProductType}.</p>
+     *
+     * @return количество сброшенных снимков
+     */
+    public int invalidateProductType(String productType) {
+        Objects.requireNonNull(productType, "productType must not be null");
+        int[] removed = {0};
+        for (UUID userId : cachedUserIds()) {
+            userAggregatesCache.asMap().computeIfPresent(userId, (id, current) -> {
+                if (!current.aggregates().hasAnyTransaction(productType)) {
+                    return current;
+                }
+                removed[0]++;
+                evictShared(id);
+                return null;
+            });
+        }
+        return removed[0];
+    }
+
+    /**
+     * Пользователи, чьи снимки сейчас в кеше (копия на момент вызова).
+     */
+    public List<UUID> cachedUserIds() {
+        return List.copyOf(userAggregatesCache.asMap().keySet());
+    }
+
+    /**
+     * Самые востребованные пользователи кеша (по частоте обращений политики вытеснения), не больше limit.
+     */
+    public List<UUID> hottestUserIds(int limit) {
+        return userAggregatesCache.policy().eviction()
+                                  .map(eviction -> List.copyOf(eviction.hottest(limit).keySet()))
+                                  .orElseGet(() -> cachedUserIds().stream().limit(limit).toList());
+    }
+
+    /**
+     * Загружает в кеш снимки пользователей, которых там ещё нет (пакетными запросами, см. {@link #aggregatesFor(Collection)}),
+     * не блокируя вызывающего. В колоночном режиме с готовым снимком ничего не делает.
+     *
+     * @return завершается после загрузки; значение — сколько пользователей запрошено у кеша
+     */
+    public CompletableFuture<Integer> warmUp(Collection<UUID> userIds) {
+        if (columnarStore != null && columnarStore.snapshot() != null) {
+            return CompletableFuture.completedFuture(0);
+        }
+        return asyncUserAggregatesCache.getAll(userIds).thenApply(Map::size);
+    }
+
+    /**
+     * Фоновая перезагрузка снимка пользователя, если он ещё в кеше и загружен до начала поколения generation.
+     * Пока загрузка идёт, читатели получают текущее значение.
+     *
+     * @return завершается после перезагрузки; для вытесненного пользователя и записи этого поколения —
+     * сразу, без загрузки
+     */
+    public CompletableFuture<?> refresh(UUID userId, long generation) {
+        CachedAggregates entry = userAggregatesCache.asMap().get(userId);
+        if (entry == null || entry.generation() >= generation) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return userAggregatesCache.refresh(userId);
+    }
+
     /**
      * Полная очистка всех кешей knowledge DB.
      * Используется management endpoint /management/clear-caches.
      */
     public void clearCaches() {
-        hasAnyTransactionCache.invalidateAll();
-        countTransactionsCache.invalidateAll();
-        sumAmountCache.invalidateAll();
+        clearSharedCache();
+        userAggregatesCache.invalidateAll();
+    }
+
+    /**
+     * Очистка только L2 (перед мягким сбросом, чтобы фоновая перезагрузка L1 читала knowledge DB).
+     */
+    public void clearSharedCache() {
+        if (sharedCache != null) {
+            sharedCache.clear();
+        }
+    }
+
+    private void evictShared(UUID userId) {
+        if (sharedCache != null) {
+            sharedCache.evict(userId);
+        }
+    }
+
+    /**
+     * Снимок записи кеша; запись, пропущенная проходом мягкого сброса, перезагружается в фоне,
+     * а до конца перезагрузки отдаётся текущее значение.
+     */
+    private UserAggregates current(UUID userId, CachedAggregates entry) {
+        if (cacheGeneration.isStale(entry)) {
+            userAggregatesCache.refresh(userId);
+        }
+        return entry.aggregates();
+    }
+
+    /**
+     * Колоночный снимок для пользователя или null: режим выключен, снимок не загружен
+     * или пользователь точечно сброшен до следующей перезагрузки.
+     */
+    private ColumnarAggregates columnarFor(UUID userId) {
+        return columnarStore == null ? null : columnarStore.snapshotFor(userId);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,129 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.starbank.recommendation.config.pool.QueryDeadline;
+import ru.starbank.recommendation.config.pool.Workload;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Шарды knowledge DB для чтения: данные пользователя лежат в шарде
+ * {@code floorMod(msb(user_id) ^ lsb(user_id), N)}.
+ *
+ * <p>Без шардирования ({@code knowledge.sharding.enabled=false}) шард один — {@code knowledgeReadJdbcTemplate}.
+ * Запросы по одному пользователю идут в его шард ({@link #forUser}); операции по всем
+ * пользователям выполняются во всех шардах параллельно ({@link #fanOut}), результаты объединяет вызывающий.
+ * Справочные таблицы (products) есть в каждом шарде и читаются из первого ({@link #any}).</p>
+ */
+public class KnowledgeShards implements AutoCloseable {
+
+    private final List<JdbcTemplate> shards;
+    private final List<NamedParameterJdbcTemplate> namedShards;
+    private final ExecutorService fanOutExecutor;
+    private final List<AutoCloseable> resources;
+
+    /**
+     * @param shards    JdbcTemplate каждого шарда, порядок определяет номер шарда
+     * @param resources пулы соединений шардов, закрываются вместе с этим объектом
+     */
+    public KnowledgeShards(List<JdbcTemplate> shards, List<AutoCloseable> resources) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one knowledge shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.namedShards = this.shards.stream().map(NamedParameterJdbcTemplate::new).toList();
+        this.resources = List.copyOf(resources);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.fanOutExecutor = this.shards.size() == 1 ? null : Executors.newFixedThreadPool(this.shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-shard-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Один шард (без шардирования).
+     */
+    public static KnowledgeShards single(JdbcTemplate jdbcTemplate) {
+        return new KnowledgeShards(List.of(Objects.requireNonNull(jdbcTemplate, "jdbcTemplate must not be null")), List.of());
+    }
+
+    public int count() {
+        return shards.size();
+    }
+
+    public int shardOf(UUID userId) {
+        return (int) Math.floorMod(userId.getMostSignificantBits() ^ userId.getLeastSignificantBits(), (long) shards.size());
+    }
+
+    public JdbcTemplate forUser(UUID userId) {
+        return shards.get(shardOf(userId));
+    }
+
+    public NamedParameterJdbcTemplate namedForUser(UUID userId) {
+        return namedShards.get(shardOf(userId));
+    }
+
+    public JdbcTemplate shard(int shard) {
+        return shards.get(shard);
+    }
+
+    /**
+     * Шард для справочных данных, одинаковых во всех шардах.
+     */
+    public JdbcTemplate any() {
+        return shards.get(0);
+    }
+
+    /**
+     * Выполняет запрос во всех шардах параллельно. Запросы в шардах выполняются с классом нагрузки
+     * ({@link Workload}) и сроком ({@link QueryDeadline}) вызывающего потока.
+     *
+     * @return результаты в порядке номеров шардов
+     */
+    public <T> List<T> fanOut(Function<JdbcTemplate, T> query) {
+        if (fanOutExecutor == null) {
+            return Collections.singletonList(query.apply(shards.get(0)));
+        }
+        Executor executor = Workload.propagating(QueryDeadline.propagating(fanOutExecutor));
+        List<CompletableFuture<T>> futures = new ArrayList<>(shards.size());
+        for (JdbcTemplate shard : shards) {
+            futures.add(CompletableFuture.supplyAsync(() -> query.apply(shard), executor));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    @Override
+    public void close() throws Exception {
+        if (fanOutExecutor != null) {
+            fanOutExecutor.shutdownNow();
+        }
+        for (AutoCloseable resource : resources) {
+            resource.close();
+        }
+    }
+}
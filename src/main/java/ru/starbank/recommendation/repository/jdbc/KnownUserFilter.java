@@ -0,0 +1,104 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.UserIdBloomFilter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Фильтр известных пользователей knowledge DB ({@code knowledge.user-filter.enabled=true}).
+ *
+ * <p>Фильтр Блума по {@code users.id} строится при старте и пересобирается с интервалом
+ * {@code knowledge.user-filter.refresh-interval-ms}. Между пересборками он пополняется
+ * пользователями из новых транзакций ({@link #add}, вызывается {@code TransactionTailer}).
+ * Новый фильтр строится целиком и подменяет старый одной записью volatile-ссылки;
+ * добавления во время сборки попадают в оба фильтра.</p>
+ *
+ * <p>Пока первая загрузка не завершена, все пользователи считаются возможно существующими.</p>
+ */
+@Repository
+@ConditionalOnProperty(prefix = "knowledge.user-filter", name = "enabled", havingValue = "true")
+public class KnownUserFilter {
+    private static final Logger log = LoggerFactory.getLogger(KnownUserFilter.class);
+
+    private final KnowledgeShards shards;
+    private final long expectedUsers;
+    private final double falsePositiveRate;
+
+    private volatile UserIdBloomFilter filter;
+    private volatile UserIdBloomFilter building;
+
+    public KnownUserFilter(KnowledgeShards shards, KnowledgeProperties properties) {
+        this.shards = Objects.requireNonNull(shards, "shards must not be null");
+
+        KnowledgeProperties.UserFilter settings = properties.getUserFilter();
+        this.expectedUsers = settings.getExpectedUsers();
+        this.falsePositiveRate = settings.getFalsePositiveRate();
+    }
+
+    /**
+     * false — пользователя точно нет в knowledge DB (на момент последней загрузки и с учётом
+     * пользователей из новых транзакций); true — возможно, есть.
+     */
+    public boolean mightExist(UUID userId) {
+        UserIdBloomFilter current = filter;
+        return current == null || current.mightContain(userId);
+    }
+
+    /**
+     * Добавляет известного пользователя до следующей пересборки.
+     */
+    public void add(UUID userId) {
+        UserIdBloomFilter current = filter;
+        if (current != null) {
+            current.put(userId);
+        }
+        UserIdBloomFilter next = building;
+        if (next != null) {
+            next.put(userId);
+        }
+    }
+
+    /**
+     * Полная пересборка. При ошибке остаётся предыдущий фильтр.
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "${knowledge.user-filter.refresh-interval-ms:300000}")
+    public synchronized void reload() {
+        Instant startedAt = Instant.now();
+        try {
+            long users = shards.fanOut(jdbc -> jdbc.queryForObject("SELECT COUNT(*) FROM users", Long.class))
+                               .stream()
+                               .mapToLong(count -> count == null ? 0 : count)
+                               .sum();
+            // запас на рост до следующей пересборки
+            long capacity = Math.max(expectedUsers, users * 5 / 4);
+            UserIdBloomFilter next = UserIdBloomFilter.create(capacity, falsePositiveRate);
+            building = next;
+
+            shards.fanOut(jdbc -> {
+                jdbc.query("SELECT id FROM users", rs -> {
+                    next.put(UUID.fromString(rs.getString("id")));
+                });
+                return null;
+            });
+
+            filter = next;
+            log.info("Known user filter loaded: users={}, bits={}, hashes={}, ~{}KB, took={}ms",
+                    users, next.bitSize(), next.hashCount(), next.estimatedBytes() / 1024,
+                    Duration.between(startedAt, Instant.now()).toMillis());
+        } catch (DataAccessException e) {
+            log.error("Known user filter load failed, keeping previous filter", e);
+        } finally {
+            building = null;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory справочник продуктов knowledge DB: products(id, type).
+ *
+ * <p>Таблица products маленькая и почти не меняется, поэтому вместо JOIN с ней в каждом запросе
+ * тип продукта определяется в Java, а фильтрация по типу делается через {@code product_id IN (...)}.</p>
+ *
+ * <p>Справочник загружается лениво при первом обращении и обновляется по расписанию
+ * ({@code knowledge.product-catalog.refresh-interval-ms}, по умолчанию 5 минут).
+ * Если встречается неизвестный product_id или тип продукта, справочник перечитывается немедленно,
+ * но не чаще одного раза в {@code knowledge.product-catalog.miss-reload-interval-ms} (по умолчанию 1 секунда):
+ * поток запросов с несуществующими id не превращается в поток полных перечитываний,
+ * а одновременные промахи дожидаются одного перечитывания.</p>
+ */
+@Component
+public class ProductCatalog {
+    private static final Logger log = LoggerFactory.getLogger(ProductCatalog.class);
+
+    /**
+     * Id-заглушка для типа без продуктов: сохраняет {@code IN (...)} корректным и ничему не соответствует.
+     */
+    public static final UUID NO_PRODUCT = new UUID(0L, 0L);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long missReloadIntervalNanos;
+
+    private volatile Snapshot snapshot;
+
+    public ProductCatalog(KnowledgeShards shards,
+                          @Value("${knowledge.product-catalog.miss-reload-interval-ms:1000}") long missReloadIntervalMs) {
+        this.jdbcTemplate = Objects.requireNonNull(shards, "shards must not be null").any();
+        this.missReloadIntervalNanos = TimeUnit.MILLISECONDS.toNanos(missReloadIntervalMs);
+    }
+
+    /**
+     * Тип продукта по его id или null, если продукт неизвестен даже после перечитывания справочника.
+     */
+    public String typeOf(UUID productId) {
+        Snapshot current = snapshot();
+        String type = current.typeById().get(productId);
+        if (type == null) {
+            type = reloadOnMiss(current).typeById().get(productId);
+        }
+        return type;
+    }
+
+    /**
+     * Все id продуктов заданного типа (пустой список, если таких продуктов нет даже после перечитывания справочника).
+     */
+    public List<UUID> productIdsOf(String productType) {
+        Snapshot current = snapshot();
+        List<UUID> ids = current.idsByType().get(productType);
+        if (ids == null) {
+            ids = reloadOnMiss(current).idsByType().get(productType);
+        }
+        return ids == null ? List.of() : ids;
+    }
+
+    /**
+     * Перечитывает справочник из knowledge DB по расписанию.
+     */
+    @Scheduled(
+            initialDelayString = "${knowledge.product-catalog.refresh-interval-ms:300000}",
+            fixedDelayString = "${knowledge.product-catalog.refresh-interval-ms:300000}"
+    )
+    public void refresh() {
+        reload();
+    }
+
+    /**
+     * Перечитывает справочник и возвращает id продуктов, чей тип изменился: переназначенные,
+     * новые и удалённые. Снимки агрегатов с такими продуктами построены по старому справочнику.
+     */
+    public synchronized Set<UUID> reloadChanges() {
+        Snapshot previous = snapshot;
+        Snapshot loaded = reload();
+        if (previous == null) {
+            return Set.of();
+        }
+        Set<UUID> changed = new HashSet<>();
+        loaded.typeById().forEach((id, type) -> {
+            if (!type.equals(previous.typeById().get(id))) {
+                changed.add(id);
+            }
+        });
+        previous.typeById().keySet().forEach(id -> {
+            if (!loaded.typeById().containsKey(id)) {
+                changed.add(id);
+            }
+        });
+        return Set.copyOf(changed);
+    }
+
+    private synchronized Snapshot reload() {
+        Map<UUID, String> typeById = new HashMap<>();
+        Map<String, List<UUID>> idsByType = new HashMap<>();
+
+        jdbcTemplate.query("SELECT id, type FROM products", rs -> {
+            UUID id = UUID.fromString(rs.getString("id"));
+            String type = rs.getString("type");
+            typeById.put(id, type);
+            idsByType.computeIfAbsent(type, k -> new ArrayList<>()).add(id);
+        });
+
+        Map<String, List<UUID>> frozen = new HashMap<>();
+        idsByType.forEach((type, ids) -> frozen.put(type, List.copyOf(ids)));
+
+        Snapshot loaded = new Snapshot(Map.copyOf(typeById), Map.copyOf(frozen), System.nanoTime());
+        snapshot = loaded;
+        log.debug("Product catalog refreshed: products={}, types={}", typeById.size(), frozen.keySet());
+        return loaded;
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : reload();
+    }
+
+    /**
+     * Перечитывание по промаху: не чаще раза в {@code missReloadIntervalNanos}.
+     * Если снимок уже заменил другой поток, возвращается его результат.
+     */
+    private Snapshot reloadOnMiss(Snapshot seen) {
+        if (System.nanoTime() - seen.loadedAtNanos() < missReloadIntervalNanos) {
+            return seen;
+        }
+        synchronized (this) {
+            Snapshot current = snapshot;
+            return current != seen ? current : reload();
+        }
+    }
+
+    /**
+     * Неизменяемый снимок справочника; loadedAtNanos — момент загрузки по {@link System#nanoTime()}.
+     */
+    public record Snapshot(Map<UUID, String> typeById, Map<String, List<UUID>> idsByType, long loadedAtNanos) {
+    }
+}
@@ -0,0 +1,68 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.stereotype.Component;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.config.knowledge.ReplicaRoutingDataSource;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * Чтение своих записей при репликах ({@code knowledge.read-replicas.enabled=true}).
+ *
+ * <p>Когда данные пользователя меняются (новая транзакция, точечный сброс), его снимок сбрасывается из кеша,
+ * а реплика ещё может не содержать изменений. Такие пользователи запоминаются на
+ * {@code knowledge.read-replicas.max-lag-ms}, и их снимки в это время загружаются из основной БД
+ * ({@link ReplicaRoutingDataSource#readFromPrimary}). Без реплик ничего не запоминается.</p>
+ */
+@Component
+public class ReplicaLagGuard {
+
+    /**
+     * Сколько пользователей помнить одновременно; при переполнении самые старые отметки забываются раньше срока.
+     */
+    private static final long MAX_TRACKED_USERS = 100_000;
+
+    /**
+     * null, если реплики выключены.
+     */
+    private final Cache<UUID, Boolean> recentlyChanged;
+
+    public ReplicaLagGuard(KnowledgeProperties properties) {
+        KnowledgeProperties.ReadReplicas settings =
+                Objects.requireNonNull(properties, "properties must not be null").getReadReplicas();
+        this.recentlyChanged = settings.isEnabled() && settings.getMaxLagMs() > 0
+                ? Caffeine.newBuilder()
+                          .maximumSize(MAX_TRACKED_USERS)
+                          .expireAfterWrite(Duration.ofMillis(settings.getMaxLagMs()))
+                          .build()
+                : null;
+    }
+
+    /**
+     * Данные пользователя только что изменились: следующие загрузки его снимка идут в основную БД.
+     */
+    public void markChanged(UUID userId) {
+        if (recentlyChanged != null) {
+            recentlyChanged.put(userId, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Должен ли снимок пользователя читаться из основной БД.
+     */
+    public boolean requiresPrimary(UUID userId) {
+        return recentlyChanged != null && recentlyChanged.getIfPresent(userId) != null;
+    }
+
+    /**
+     * Выполняет загрузку из основной БД, если пользователь недавно изменился, иначе — как обычно.
+     */
+    public <T> T load(UUID userId, Supplier<T> loader) {
+        return requiresPrimary(userId) ? ReplicaRoutingDataSource.readFromPrimary(loader) : loader.get();
+    }
+}
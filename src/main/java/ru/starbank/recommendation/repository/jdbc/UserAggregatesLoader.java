@@ -0,0 +1,355 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.stereotype.Repository;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.config.knowledge.ReplicaRoutingDataSource;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.cache.SharedAggregatesCache;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Загрузчик {@link UserAggregates} из knowledge DB: {@link CacheLoader} кеша агрегатов
+ * (промахи и фоновая перезагрузка, см. CacheConfig).
+ *
+ * <p>Источник выбирается настройкой {@code knowledge.aggregates.source}:</p>
+ * <ul>
+ *   <li>LIVE — один GROUP BY по сырым транзакциям пользователя;</li>
+ *   <li>MATERIALIZED — чтение по первичному ключу из user_product_aggregates. Если последний
+ *   полный проход материализации старше {@code knowledge.aggregates.max-staleness-ms}
+ *   (или ещё не выполнялся), используется LIVE.</li>
+ * </ul>
+ *
+ * <p>При включённом tailer ({@code knowledge.tailer.enabled}) LIVE-снимок читается на позицию tailer-а
+ * в шарде пользователя ({@link IngestPosition}), взятую до запроса: в него входят транзакции с номером
+ * не больше watermark, кроме открытых пропусков, и строки без номера (записанные до его появления),
+ * а снимок помечается этой позицией. Всё остальное
+ * tailer применит к снимку инкрементально. Пока позиция неизвестна, снимок читается без неё
+ * и сбрасывается первой новой транзакцией. Снимок из L2 принимается, только если он не отстаёт
+ * от позиции ({@link UserAggregates#isAtOrAfter}).</p>
+ *
+ * <p>При включённом L2 ({@code knowledge.cache.l2.enabled}) значение сначала ищется в {@link SharedAggregatesCache},
+ * а загруженное из БД записывается туда для остальных экземпляров сервиса — условно, по метке
+ * {@link SharedAggregatesCache#version}, взятой до чтения БД: сброс пользователя во время загрузки
+ * не даёт записать в L2 снимок, прочитанный до сброса.</p>
+ *
+ * <p>Пакетные промахи ({@code getAll}) загружаются {@link #loadAll} запросами на много пользователей сразу.</p>
+ *
+ * <p>Снимки пользователей, чьи данные только что изменились, читаются из основной БД, а не с реплики
+ * ({@link ReplicaLagGuard}).</p>
+ */
+@Repository
+public class UserAggregatesLoader implements CacheLoader<UUID, UserAggregates> {
+    private static final Logger log = LoggerFactory.getLogger(UserAggregatesLoader.class);
+
+    /**
+     * Как часто перечитывать время последней материализации (мс), чтобы не ходить за ним на каждый промах.
+     */
+    private static final long FRESHNESS_CHECK_INTERVAL_MS = 5_000;
+
+    private final KnowledgeShards shards;
+    private final ProductCatalog productCatalog;
+    private final UserAggregatesTableRepository tableRepository;
+    private final ObjectProvider<SharedAggregatesCache> sharedCache;
+    private final TypeDictionary typeDictionary;
+    private final ReplicaLagGuard replicaLagGuard;
+    private final IngestPosition ingestPosition;
+    private final KnowledgeProperties.Aggregates settings;
+    private final boolean tailerEnabled;
+    private final String sequenceColumn;
+
+    private volatile Instant lastRefreshedAt;
+    private volatile long freshnessCheckedAtMs;
+
+    public UserAggregatesLoader(
+            KnowledgeShards shards,
+            ProductCatalog productCatalog,
+            UserAggregatesTableRepository tableRepository,
+            ObjectProvider<SharedAggregatesCache> sharedCache,
+            TypeDictionary typeDictionary,
+            ReplicaLagGuard replicaLagGuard,
+            IngestPosition ingestPosition,
+            KnowledgeProperties properties
+    ) {
+        this.shards = Objects.requireNonNull(shards, "shards must not be null");
+        this.productCatalog = Objects.requireNonNull(productCatalog, "productCatalog must not be null");
+        this.tableRepository = Objects.requireNonNull(tableRepository, "tableRepository must not be null");
+        this.sharedCache = Objects.requireNonNull(sharedCache, "sharedCache must not be null");
+        this.typeDictionary = Objects.requireNonNull(typeDictionary, "typeDictionary must not be null");
+        this.replicaLagGuard = Objects.requireNonNull(replicaLagGuard, "replicaLagGuard must not be null");
+        this.ingestPosition = Objects.requireNonNull(ingestPosition, "ingestPosition must not be null");
+        this.settings = Objects.requireNonNull(properties, "properties must not be null").getAggregates();
+        this.tailerEnabled = properties.getTailer().isEnabled();
+        this.sequenceColumn = properties.getTailer().getSequenceColumn();
+    }
+
+    @Override
+    public UserAggregates load(UUID userId) {
+        SharedAggregatesCache l2 = sharedCache.getIfAvailable();
+        if (l2 == null) {
+            return replicaLagGuard.load(userId, () -> loadFromDatabase(userId));
+        }
+        long version = l2.version(userId);
+        UserAggregates shared = acceptShared(userId, l2.get(userId));
+        if (shared != null) {
+            return shared;
+        }
+        UserAggregates loaded = replicaLagGuard.load(userId, () -> loadFromDatabase(userId));
+        l2.put(userId, loaded, version);
+        return loaded;
+    }
+
+    /**
+     * Пакетная загрузка промахов {@code getAll}: сначала L2, остальные — запросами {@code user_id IN (...)}
+     * по {@code knowledge.aggregates.load-batch-size} пользователей в шарде каждого.
+     * Пользователи без транзакций получают пустой снимок. Недавно изменившиеся пользователи
+     * загружаются отдельно, из основной БД.
+     */
+    @Override
+    public Map<UUID, UserAggregates> loadAll(Set<? extends UUID> userIds) {
+        Map<UUID, UserAggregates> result = new HashMap<>(userIds.size() * 2);
+        SharedAggregatesCache l2 = sharedCache.getIfAvailable();
+        List<UUID> missing = new ArrayList<>(userIds.size());
+        Set<UUID> changed = new HashSet<>();
+        Map<UUID, Long> versions = new HashMap<>();
+        for (UUID userId : userIds) {
+            if (l2 != null) {
+                versions.put(userId, l2.version(userId));
+            }
+            UserAggregates shared = l2 == null ? null : acceptShared(userId, l2.get(userId));
+            if (shared != null) {
+                result.put(userId, shared);
+            } else {
+                missing.add(userId);
+                if (replicaLagGuard.requiresPrimary(userId)) {
+                    changed.add(userId);
+                }
+            }
+        }
+
+        Map<UUID, UserAggregates> loaded;
+        if (changed.isEmpty()) {
+            loaded = loadAllFromDatabase(missing);
+        } else {
+            List<UUID> unchanged = missing.stream().filter(userId -> !changed.contains(userId)).toList();
+            loaded = new HashMap<>(loadAllFromDatabase(unchanged));
+            loaded.putAll(ReplicaRoutingDataSource.readFromPrimary(() -> loadAllFromDatabase(List.copyOf(changed))));
+        }
+        for (UUID userId : missing) {
+            UserAggregates aggregates = loaded.getOrDefault(userId, UserAggregates.empty());
+            result.put(userId, aggregates);
+            if (l2 != null) {
+                l2.put(userId, aggregates, versions.get(userId));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Снимок из L2, если он не отстаёт от позиции tailer-а: транзакции до неё tailer уже мог применить
+     * к кешу, пока снимка в нём не было.
+     */
+    private UserAggregates acceptShared(UUID userId, UserAggregates shared) {
+        if (shared == null || !tailerEnabled) {
+            return shared;
+        }
+        IngestPosition.Position position = ingestPosition.of(shards.shardOf(userId));
+        if (position.isKnown() && !shared.isAtOrAfter(position.watermark(), position.openGaps())) {
+            log.debug("Shared aggregates behind ingest position, reloading: user_id={}, sequence={}, watermark={}",
+                    userId, shared.sequence(), position.watermark());
+            return null;
+        }
+        return shared;
+    }
+
+    private Map<UUID, UserAggregates> loadAllFromDatabase(List<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        boolean materialized = settings.getSource() == KnowledgeProperties.AggregatesSource.MATERIALIZED
+                && materializedIsFresh();
+        Map<Integer, List<UUID>> byShard = new HashMap<>();
+        for (UUID userId : userIds) {
+            byShard.computeIfAbsent(shards.shardOf(userId), shard -> new ArrayList<>()).add(userId);
+        }
+
+        int batchSize = Math.max(1, settings.getLoadBatchSize());
+        Map<UUID, UserAggregates> result = new HashMap<>(userIds.size() * 2);
+        for (List<UUID> shardUsers : byShard.values()) {
+            for (int from = 0; from < shardUsers.size(); from += batchSize) {
+                List<UUID> batch = shardUsers.subList(from, Math.min(shardUsers.size(), from + batchSize));
+                result.putAll(materialized ? tableRepository.findByUserIds(batch) : loadLive(batch));
+            }
+        }
+        return result;
+    }
+
+    private UserAggregates loadFromDatabase(UUID userId) {
+        if (settings.getSource() == KnowledgeProperties.AggregatesSource.MATERIALIZED && materializedIsFresh()) {
+            return tableRepository.findByUserId(userId);
+        }
+        return loadLive(userId);
+    }
+
+    /**
+     * Агрегирование сырых транзакций пользователя одним запросом (без JOIN с products) в его шарде.
+     */
+    public UserAggregates loadLive(UUID userId) {
+        IngestPosition.Position position = position(shards.shardOf(userId));
+        UserAggregates.Builder builder = stamped(UserAggregates.builder(typeDictionary), position);
+        List<Object> args = new ArrayList<>(2 + position.openGaps().length);
+        args.add(userId);
+        StringBuilder where = new StringBuilder("t.user_id = ?");
+        if (position.isKnown()) {
+            where.append(" AND (t.").append(sequenceColumn).append(" IS NULL OR t.").append(sequenceColumn).append(" <= ?");
+            args.add(position.watermark());
+            if (position.openGaps().length > 0) {
+                where.append(" AND t.").append(sequenceColumn).append(" NOT IN (")
+                     .append(String.join(", ", Collections.nCopies(position.openGaps().length, "?")))
+                     .append(')');
+                for (long gap : position.openGaps()) {
+                    args.add(gap);
+                }
+            }
+            where.append(')');
+        }
+
+        shards.forUser(userId).query(liveSql(where), rs -> {
+            UUID productId = UUID.fromString(rs.getString("product_id"));
+            String productType = productCatalog.typeOf(productId);
+            if (productType == null) {
+                log.warn("Unknown product in transactions, skipped: user_id={}, product_id={}", userId, productId);
+                return;
+            }
+            builder.add(
+                    productType,
+                    rs.getString("transaction_type"),
+                    rs.getLong("tx_count"),
+                    rs.getLong("amount_sum")
+            );
+        }, args.toArray());
+
+        return builder.build();
+    }
+
+    /**
+     * Агрегирование сырых транзакций нескольких пользователей одного шарда одним запросом.
+     * Строки обрабатываются по мере чтения; пользователи без транзакций в результат не попадают.
+     */
+    public Map<UUID, UserAggregates> loadLive(List<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        IngestPosition.Position position = position(shards.shardOf(userIds.get(0)));
+        Map<UUID, UserAggregates.Builder> builders = new HashMap<>(userIds.size() * 2);
+        MapSqlParameterSource params = new MapSqlParameterSource("userIds", userIds);
+        StringBuilder where = new StringBuilder("t.user_id IN (:userIds)");
+        if (position.isKnown()) {
+            where.append(" AND (t.").append(sequenceColumn).append(" IS NULL OR t.").append(sequenceColumn).append(" <= :watermark");
+            params.addValue("watermark", position.watermark());
+            if (position.openGaps().length > 0) {
+                where.append(" AND t.").append(sequenceColumn).append(" NOT IN (:openGaps)");
+                params.addValue("openGaps", Arrays.stream(position.openGaps()).boxed().toList());
+            }
+            where.append(')');
+        }
+
+        shards.namedForUser(userIds.get(0)).query(liveBatchSql(where), params, rs -> {
+            UUID userId = UUID.fromString(rs.getString("user_id"));
+            UUID productId = UUID.fromString(rs.getString("product_id"));
+            String productType = productCatalog.typeOf(productId);
+            if (productType == null) {
+                log.warn("Unknown product in transactions, skipped: user_id={}, product_id={}", userId, productId);
+                return;
+            }
+            builders.computeIfAbsent(userId, id -> stamped(UserAggregates.builder(typeDictionary), position))
+                    .add(
+                            productType,
+                            rs.getString("transaction_type"),
+                            rs.getLong("tx_count"),
+                            rs.getLong("amount_sum")
+                    );
+        });
+
+        Map<UUID, UserAggregates> result = new HashMap<>(builders.size() * 2);
+        builders.forEach((userId, builder) -> result.put(userId, builder.build()));
+        return result;
+    }
+
+    /**
+     * Позиция tailer-а в шарде, на которую читается снимок; без tailer-а — неизвестна.
+     */
+    private IngestPosition.Position position(int shard) {
+        return tailerEnabled ? ingestPosition.of(shard) : IngestPosition.Position.UNKNOWN;
+    }
+
+    private static UserAggregates.Builder stamped(UserAggregates.Builder builder, IngestPosition.Position position) {
+        return position.isKnown() ? builder.sequence(position.watermark()).openGaps(position.openGaps()) : builder;
+    }
+
+    private static String liveSql(CharSequence where) {
+        return """
+                SELECT t.product_id AS product_id,
+                       t.type AS transaction_type,
+                       COUNT(*) AS tx_count,
+                       COALESCE(SUM(t.amount), 0) AS amount_sum
+                FROM transactions t
+                WHERE %s
+                GROUP BY t.product_id, t.type
+                """.formatted(where);
+    }
+
+    private static String liveBatchSql(CharSequence where) {
+        return """
+                SELECT t.user_id AS user_id,
+                       t.product_id AS product_id,
+                       t.type AS transaction_type,
+                       COUNT(*) AS tx_count,
+                       COALESCE(SUM(t.amount), 0) AS amount_sum
+                FROM transactions t
+                WHERE %s
+                GROUP BY t.user_id, t.product_id, t.type
+                """.formatted(where);
+    }
+
+    private boolean materializedIsFresh() {
+        long nowMs = System.currentTimeMillis();
+        if (nowMs - freshnessCheckedAtMs > FRESHNESS_CHECK_INTERVAL_MS) {
+            try {
+                lastRefreshedAt = tableRepository.lastRefreshedAt().orElse(null);
+            } catch (DataAccessException e) {
+                log.warn("Failed to read materialized aggregates state, falling back to live aggregation", e);
+                lastRefreshedAt = null;
+            }
+            freshnessCheckedAtMs = nowMs;
+        }
+
+        Instant refreshedAt = lastRefreshedAt;
+        if (refreshedAt == null) {
+            return false;
+        }
+        boolean fresh = Duration.between(refreshedAt, Instant.now()).toMillis() <= settings.getMaxStalenessMs();
+        if (!fresh) {
+            log.debug("Materialized aggregates are stale (refreshed_at={}), using live aggregation", refreshedAt);
+        }
+        return fresh;
+    }
+}
@@ -0,0 +1,293 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Репозиторий материализованных агрегатов: таблицы user_product_aggregates и user_product_aggregates_state.
+ *
+ * <p>Таблицы создаются миграциями knowledge DB (см. db.changelog-knowledge.yaml).</p>
+ *
+ * <p>Строка состояния (id = 1) хранит, кроме времени последнего прохода, аренду прохода
+ * (locked_by/locked_until), ingest-номер, до которого пересчитаны агрегаты, и время последнего полного прохода.</p>
+ */
+@Repository
+public class UserAggregatesTableRepository {
+    private static final Logger log = LoggerFactory.getLogger(UserAggregatesTableRepository.class);
+
+    private static final int STATE_ROW_ID = 1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ProductCatalog productCatalog;
+    private final TypeDictionary typeDictionary;
+    private final String maxSequenceSql;
+    private final String changedUsersSql;
+
+    public UserAggregatesTableRepository(
+            JdbcTemplate jdbcTemplate,
+            ProductCatalog productCatalog,
+            TypeDictionary typeDictionary,
+            KnowledgeProperties properties
+    ) {
+        this.jdbcTemplate = Objects.requireNonNull(jdbcTemplate, "jdbcTemplate must not be null");
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.productCatalog = Objects.requireNonNull(productCatalog, "productCatalog must not be null");
+        this.typeDictionary = Objects.requireNonNull(typeDictionary, "typeDictionary must not be null");
+        String seq = Objects.requireNonNull(properties, "properties must not be null").getTailer().getSequenceColumn();
+        this.maxSequenceSql = "SELECT COALESCE(MAX(" + seq + "), 0) FROM transactions";
+        this.changedUsersSql = "SELECT DISTINCT user_id FROM transactions WHERE " + seq + " > ?";
+    }
+
+    /**
+     * Чтение агрегатов пользователя по первичному ключу.
+     */
+    public UserAggregates findByUserId(UUID userId) {
+        UserAggregates.Builder builder = UserAggregates.builder(typeDictionary);
+
+        jdbcTemplate.query("""
+                SELECT product_type, tx_type, tx_count, amount_sum
+                FROM user_product_aggregates
+                WHERE user_id = ?
+                """, rs -> {
+            builder.add(
+                    rs.getString("product_type"),
+                    rs.getString("tx_type"),
+                    rs.getLong("tx_count"),
+                    rs.getLong("amount_sum")
+            );
+        }, userId);
+
+        return builder.build();
+    }
+
+    /**
+     * Чтение агрегатов нескольких пользователей одним запросом. Пользователи без строк в результат не попадают.
+     */
+    public Map<UUID, UserAggregates> findByUserIds(Collection<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<UUID, UserAggregates.Builder> builders = new HashMap<>();
+
+        namedJdbcTemplate.query("""
+                SELECT user_id, product_type, tx_type, tx_count, amount_sum
+                FROM user_product_aggregates
+                WHERE user_id IN (:userIds)
+                """, new MapSqlParameterSource("userIds", userIds), rs -> {
+            builders.computeIfAbsent(UUID.fromString(rs.getString("user_id")), id -> UserAggregates.builder(typeDictionary))
+                    .add(
+                            rs.getString("product_type"),
+                            rs.getString("tx_type"),
+                            rs.getLong("tx_count"),
+                            rs.getLong("amount_sum")
+                    );
+        });
+
+        Map<UUID, UserAggregates> result = new HashMap<>(builders.size());
+        builders.forEach((userId, builder) -> result.put(userId, builder.build()));
+        return result;
+    }
+
+    /**
+     * Следующая порция id пользователей (keyset-пагинация по users.id).
+     *
+     * @param afterUserId последний обработанный id или null для первой порции
+     */
+    public List<UUID> nextUserBatch(UUID afterUserId, int batchSize) {
+        if (afterUserId == null) {
+            return jdbcTemplate.query(
+                    "SELECT id FROM users ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> UUID.fromString(rs.getString("id")),
+                    batchSize
+            );
+        }
+        return jdbcTemplate.query(
+                "SELECT id FROM users WHERE id > ? ORDER BY id LIMIT ?",
+                (rs, rowNum) -> UUID.fromString(rs.getString("id")),
+                afterUserId, batchSize
+        );
+    }
+
+    /**
+     * Пользователи, у которых есть транзакции с ingest-номером больше sequence.
+     */
+    public List<UUID> usersChangedSince(long sequence) {
+        return jdbcTemplate.query(changedUsersSql, (rs, rowNum) -> UUID.fromString(rs.getString("user_id")), sequence);
+    }
+
+    /**
+     * Текущий максимум ingest-номера (0 для пустой таблицы).
+     */
+    public long maxSequence() {
+        Long max = jdbcTemplate.queryForObject(maxSequenceSql, Long.class);
+        return max == null ? 0 : max;
+    }
+
+    /**
+     * Пересчитывает агрегаты указанных пользователей из сырых транзакций.
+     *
+     * <p>Как и LIVE-загрузка, группирует по product_id без JOIN с products: тип продукта
+     * берётся из {@link ProductCatalog}. Должен вызываться в транзакции knowledge DB, чтобы читатели
+     * не видели пустого окна между удалением и вставкой.</p>
+     */
+    public void rebuildUsers(List<UUID> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource("userIds", userIds);
+        Map<AggregateKey, long[]> aggregates = new LinkedHashMap<>();
+
+        namedJdbcTemplate.query("""
+                SELECT t.user_id AS user_id,
+                       t.product_id AS product_id,
+                       t.type AS tx_type,
+                       COUNT(*) AS tx_count,
+                       COALESCE(SUM(t.amount), 0) AS amount_sum
+                FROM transactions t
+                WHERE t.user_id IN (:userIds)
+                GROUP BY t.user_id, t.product_id, t.type
+                """, params, rs -> {
+            UUID userId = UUID.fromString(rs.getString("user_id"));
+            UUID productId = UUID.fromString(rs.getString("product_id"));
+            String productType = productCatalog.typeOf(productId);
+            if (productType == null) {
+                log.warn("Unknown product in transactions, skipped: user_id={}, product_id={}", userId, productId);
+                return;
+            }
+            long[] values = aggregates.computeIfAbsent(
+                    new AggregateKey(userId, productType, rs.getString("tx_type")), key -> new long[2]);
+            values[0] += rs.getLong("tx_count");
+            values[1] += rs.getLong("amount_sum");
+        });
+
+        List<Object[]> rows = new ArrayList<>(aggregates.size());
+        aggregates.forEach((key, values) ->
+                rows.add(new Object[]{key.userId(), key.productType(), key.transactionType(), values[0], values[1]}));
+
+        namedJdbcTemplate.update("DELETE FROM user_product_aggregates WHERE user_id IN (:userIds)", params);
+        jdbcTemplate.batchUpdate("""
+                INSERT INTO user_product_aggregates (user_id, product_type, tx_type, tx_count, amount_sum)
+                VALUES (?, ?, ?, ?, ?)
+                """, rows);
+    }
+
+    /**
+     * Время завершения последнего полного прохода материализации.
+     */
+    public Optional<Instant> lastRefreshedAt() {
+        List<Timestamp> rows = jdbcTemplate.query(
+                "SELECT refreshed_at FROM user_product_aggregates_state WHERE id = ?",
+                (rs, rowNum) -> rs.getTimestamp("refreshed_at"),
+                STATE_ROW_ID
+        );
+        return rows.stream().findFirst().map(Timestamp::toInstant);
+    }
+
+    /**
+     * Состояние инкрементальной материализации; пустое, если проходов ещё не было.
+     */
+    public RefreshState refreshState() {
+        List<RefreshState> rows = jdbcTemplate.query(
+                "SELECT last_seq, full_refreshed_at FROM user_product_aggregates_state WHERE id = ?",
+                (rs, rowNum) -> {
+                    long lastSeq = rs.getLong("last_seq");
+                    boolean noLastSeq = rs.wasNull();
+                    Timestamp fullRefreshedAt = rs.getTimestamp("full_refreshed_at");
+                    return new RefreshState(
+                            noLastSeq ? null : lastSeq,
+                            fullRefreshedAt == null ? null : fullRefreshedAt.toInstant()
+                    );
+                },
+                STATE_ROW_ID
+        );
+        return rows.stream().findFirst().orElse(new RefreshState(null, null));
+    }
+
+    /**
+     * Берёт или продлевает аренду прохода материализации.
+     *
+     * @return true, если аренда свободна, истекла или уже принадлежит owner
+     */
+    public boolean tryLock(String owner, Instant now, Instant until) {
+        int updated = jdbcTemplate.update("""
+                UPDATE user_product_aggregates_state
+                SET locked_by = ?, locked_until = ?
+                WHERE id = ? AND (locked_by IS NULL OR locked_by = ? OR locked_until < ?)
+                """, owner, Timestamp.from(until), STATE_ROW_ID, owner, Timestamp.from(now));
+        if (updated > 0) {
+            return true;
+        }
+        try {
+            // Строки состояния ещё нет: время прохода — эпоха, пока первый проход не завершится
+            return jdbcTemplate.update("""
+                    INSERT INTO user_product_aggregates_state (id, refreshed_at, locked_by, locked_until)
+                    SELECT ?, ?, ?, ?
+                    WHERE NOT EXISTS (SELECT 1 FROM user_product_aggregates_state WHERE id = ?)
+                    """, STATE_ROW_ID, Timestamp.from(Instant.EPOCH), owner, Timestamp.from(until), STATE_ROW_ID) > 0;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Освобождает аренду, если она принадлежит owner.
+     */
+    public void unlock(String owner) {
+        jdbcTemplate.update("""
+                UPDATE user_product_aggregates_state
+                SET locked_by = NULL, locked_until = NULL
+                WHERE id = ? AND locked_by = ?
+                """, STATE_ROW_ID, owner);
+    }
+
+    /**
+     * Фиксирует завершённый проход.
+     *
+     * @param lastSequence    ingest-номер, до которого пересчитаны агрегаты
+     * @param fullRefreshedAt начало полного прохода или null для инкрементального
+     */
+    public void markRefreshed(Instant refreshedAt, long lastSequence, Instant fullRefreshedAt) {
+        if (fullRefreshedAt == null) {
+            jdbcTemplate.update(
+                    "UPDATE user_product_aggregates_state SET refreshed_at = ?, last_seq = ? WHERE id = ?",
+                    Timestamp.from(refreshedAt), lastSequence, STATE_ROW_ID);
+            return;
+        }
+        jdbcTemplate.update("""
+                UPDATE user_product_aggregates_state
+                SET refreshed_at = ?, last_seq = ?, full_refreshed_at = ?
+                WHERE id = ?
+                """, Timestamp.from(refreshedAt), lastSequence, Timestamp.from(fullRefreshedAt), STATE_ROW_ID);
+    }
+
+    /**
+     * @param lastSequence    null, если полного прохода ещё не было
+     * @param fullRefreshedAt null, если полного прохода ещё не было
+     */
+    public record RefreshState(Long lastSequence, Instant fullRefreshedAt) {
+    }
+
+    private record AggregateKey(UUID userId, String productType, String transactionType) {
+    }
+}
@@ -1,34 +1,201 @@
 package ru.starbank.recommendation.service;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
+import ru.starbank.recommendation.config.cache.CacheRegistry;
+import ru.starbank.recommendation.config.cache.CacheStatsRecorder;
+import ru.starbank.recommendation.config.cache.ObservedCache;
+import ru.starbank.recommendation.domain.dto.management.CacheInvalidationDto;
+import ru.starbank.recommendation.domain.dto.management.CacheRefreshStatusDto;
+import ru.starbank.recommendation.domain.dto.management.CacheStatsDto;
+import ru.starbank.recommendation.domain.dto.management.CacheStatsResponseDto;
+import ru.starbank.recommendation.repository.jdbc.ColumnarAggregateStore;
 import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
+import ru.starbank.recommendation.service.knowledge.KnowledgeCache;
+import ru.starbank.recommendation.service.knowledge.KnowledgeCacheRefresher;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
 
 /**
  * Сервис управления кешами приложения.
  *
  * <p>Stage 3: после рефактора кеширования на "чистый Caffeine" кеши knowledge DB
  * очищаются напрямую через {@link KnowledgeRepository#clearCaches()}.</p>
+ *
+ * <p>По умолчанию сброс мягкий: увеличивается поколение кеша, а записи обновляются в фоне
+ * с ограниченной скоростью ({@link KnowledgeCacheRefresher}). Жёсткий сброс очищает кеш сразу.</p>
+ *
+ * <p>Точечный сброс ({@link #invalidateUser}, {@link #invalidateProductType}) затрагивает только
+ * данные указанного пользователя или типа продукта в выбранных кешах ({@link KnowledgeCache}).</p>
  */
 @Service
 public class CacheManagementService {
 
     private static final Logger log = LoggerFactory.getLogger(CacheManagementService.class);
 
+    private final KnowledgeCacheRefresher knowledgeCacheRefresher;
     private final KnowledgeRepository knowledgeRepository;
+    private final ProductCatalog productCatalog;
+    private final ObjectProvider<ColumnarAggregateStore> columnarStore;
+    private final CacheRegistry cacheRegistry;
 
-    public CacheManagementService(KnowledgeRepository knowledgeRepository) {
+    public CacheManagementService(
+            KnowledgeCacheRefresher knowledgeCacheRefresher,
+            KnowledgeRepository knowledgeRepository,
+            ProductCatalog productCatalog,
+            ObjectProvider<ColumnarAggregateStore> columnarStore,
+            CacheRegistry cacheRegistry
+    ) {
+        this.knowledgeCacheRefresher = knowledgeCacheRefresher;
         this.knowledgeRepository = knowledgeRepository;
+        this.productCatalog = productCatalog;
+        this.columnarStore = columnarStore;
+        this.cacheRegistry = cacheRegistry;
     }
 
     /**
-     * Полностью очищает все кеши приложения.
+     * Мягкий сброс всех кешей приложения: текущие значения отдаются, пока обновляются в фоне.
      *
      * <p>POST /management/clear-caches</p>
      */
     public void clearAllCaches() {
-        knowledgeRepository.clearCaches();
-        log.info("Caches cleared: knowledgeRepository caches invalidated");
+        long generation = knowledgeCacheRefresher.softClear();
+        log.info("Caches soft-cleared: generation={}, entries are refreshed in background", generation);
+    }
+
+    /**
+     * Жёсткий сброс всех кешей приложения: записи удаляются сразу.
+     *
+     * <p>POST /management/clear-caches?hard=true</p>
+     */
+    public void flushAllCaches() {
+        long generation = knowledgeCacheRefresher.hardClear();
+        log.info("Caches flushed: generation={}, knowledgeRepository caches invalidated", generation);
+    }
+
+    /**
+     * Прогресс фонового обновления после последнего сброса.
+     */
+    public CacheRefreshStatusDto refreshStatus() {
+        return knowledgeCacheRefresher.status();
+    }
+
+    /**
+     * Точечный сброс данных одного пользователя.
+     *
+     * <p>POST /management/clear-caches/users/{user_id}</p>
+     *
+     * @param cache кеш для сброса или null — все кеши с данными пользователя
+     */
+    public CacheInvalidationDto invalidateUser(UUID userId, KnowledgeCache cache) {
+        Set<KnowledgeCache> targets = targets(cache, EnumSet.of(
+                KnowledgeCache.USER_AGGREGATES, KnowledgeCache.COLUMNAR_AGGREGATES));
+        List<String> touched = new ArrayList<>();
+        int invalidated = 0;
+
+        if (targets.contains(KnowledgeCache.USER_AGGREGATES)) {
+            invalidated += knowledgeRepository.invalidateUser(userId) ? 1 : 0;
+            touched.add(KnowledgeCache.USER_AGGREGATES.id());
+        }
+        ColumnarAggregateStore store = columnarStore.getIfAvailable();
+        if (store != null && targets.contains(KnowledgeCache.COLUMNAR_AGGREGATES)) {
+            store.invalidateUser(userId);
+            touched.add(KnowledgeCache.COLUMNAR_AGGREGATES.id());
+        }
+
+        log.info("User caches invalidated: user_id={}, caches={}, entries={}", userId, touched, invalidated);
+        return new CacheInvalidationDto(touched, invalidated);
+    }
+
+    /**
+     * Точечный сброс данных по типу продукта: справочник продуктов и снимки пользователей
+     * с транзакциями по этому типу.
+     *
+     * <p>Если перечитанный справочник изменил тип каких-либо продуктов (в том числе перенёс их в новый тип),
+     * снимки по старому справочнику могут быть неверны у любого пользователя этих продуктов: тогда кеш агрегатов
+     * сбрасывается целиком ({@link KnowledgeCacheRefresher#hardClear}), а колоночный снимок перезагружается.
+     * Иначе сбрасываются только снимки с транзакциями по типу; колоночный снимок перезагружается,
+     * только если он запрошен явно.</p>
+     *
+     * <p>POST /management/clear-caches/product-types/{product_type}</p>
+     *
+     * @param cache кеш для сброса или null — все кеши с данными по типу продукта
+     */
+    public CacheInvalidationDto invalidateProductType(String productType, KnowledgeCache cache) {
+        Set<KnowledgeCache> targets = targets(cache, EnumSet.of(
+                KnowledgeCache.PRODUCT_CATALOG, KnowledgeCache.USER_AGGREGATES, KnowledgeCache.COLUMNAR_AGGREGATES));
+        List<String> touched = new ArrayList<>();
+        int invalidated = 0;
+
+        Set<UUID> changedProducts = Set.of();
+        if (targets.contains(KnowledgeCache.PRODUCT_CATALOG)) {
+            changedProducts = productCatalog.reloadChanges();
+            touched.add(KnowledgeCache.PRODUCT_CATALOG.id());
+        }
+        if (targets.contains(KnowledgeCache.USER_AGGREGATES)) {
+            if (changedProducts.isEmpty()) {
+                invalidated += knowledgeRepository.invalidateProductType(productType);
+            } else {
+                invalidated += knowledgeRepository.cachedUserIds().size();
+                knowledgeCacheRefresher.hardClear();
+            }
+            touched.add(KnowledgeCache.USER_AGGREGATES.id());
+        }
+        ColumnarAggregateStore store = columnarStore.getIfAvailable();
+        if (store != null && targets.contains(KnowledgeCache.COLUMNAR_AGGREGATES)
+                && (!changedProducts.isEmpty() || cache == KnowledgeCache.COLUMNAR_AGGREGATES)) {
+            store.reload();
+            touched.add(KnowledgeCache.COLUMNAR_AGGREGATES.id());
+        }
+
+        if (!changedProducts.isEmpty()) {
+            log.info("Product catalog correction: product_type={}, changed products={}", productType, changedProducts.size());
+        }
+
+        log.info("Product type caches invalidated: product_type={}, caches={}, entries={}",
+                productType, touched, invalidated);
+        return new CacheInvalidationDto(touched, invalidated);
+    }
+
+    /**
+     * Статистика всех кешей приложения ({@link CacheRegistry}).
+     *
+     * <p>GET /management/caches</p>
+     */
+    public CacheStatsResponseDto cacheStats() {
+        List<CacheStatsDto> caches = new ArrayList<>();
+        cacheRegistry.caches().forEach((name, observed) -> caches.add(toDto(name, observed)));
+        return new CacheStatsResponseDto(caches);
+    }
+
+    private static CacheStatsDto toDto(String name, ObservedCache observed) {
+        CacheStats stats = observed.cache().stats();
+        CacheStatsRecorder recorder = observed.recorder();
+        return new CacheStatsDto(
+                name,
+                stats.hitCount(),
+                stats.missCount(),
+                stats.hitRate(),
+                stats.loadCount(),
+                stats.loadFailureCount(),
+                stats.averageLoadPenalty() / 1_000_000.0,
+                recorder == null ? null : recorder.loadTimePercentileMillis(0.50),
+                recorder == null ? null : recorder.loadTimePercentileMillis(0.95),
+                recorder == null ? null : recorder.loadTimePercentileMillis(0.99),
+                stats.evictionCount(),
+                observed.cache().estimatedSize()
+        );
+    }
+
+    private static Set<KnowledgeCache> targets(KnowledgeCache requested, Set<KnowledgeCache> all) {
+        return requested == null ? all : EnumSet.of(requested);
     }
-}
\ No newline at end of file
+}
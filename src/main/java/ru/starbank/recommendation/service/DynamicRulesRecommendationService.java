@@ -40,6 +40,10 @@ public class DynamicRulesRecommendationService {
      *
      * <p>AND-логика: правило считается выполненным, если ВСЕ его queries истинны.</p>
      *
+     * <p>Все условия отвечаются из одного закешированного снимка агрегатов пользователя
+     * (см. KnowledgeRepository), поэтому данные пользователя загружаются не более одного раза —
+     * при первом условии, которому они нужны.</p>
+     *
      * <p>Важно: инкремент статистики выполняется в отдельной транзакции (см. RuleStatsService),
      * поэтому метод остаётся readOnly.</p>
      */
@@ -2,14 +2,19 @@ package ru.starbank.recommendation.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 import ru.starbank.recommendation.domain.dto.RecommendationDto;
 import ru.starbank.recommendation.domain.dto.RecommendationResponseDto;
+import ru.starbank.recommendation.domain.rules.FixedRuleFacts;
 import ru.starbank.recommendation.domain.rules.RecommendationRuleSet;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.KnownUserFilter;
 
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 /**
@@ -21,38 +26,78 @@ public class RecommendationService {
 
     private final List<RecommendationRuleSet> ruleSets;
     private final DynamicRulesRecommendationService dynamicRulesRecommendationService;
+    private final ObjectProvider<KnownUserFilter> knownUserFilter;
+    private final KnowledgeRepository knowledgeRepository;
+    private final ObjectProvider<RuleEvaluationExecutor> ruleEvaluationExecutor;
 
     /**
      * Constructor injection (DIP).
      *
      * @param ruleSets all available recommendation rule sets (fixed Stage 1 rules)
      * @param dynamicRulesRecommendationService dynamic Stage 2 rules provider
+     * @param knownUserFilter known user ids filter (present when knowledge.user-filter.enabled=true)
+     * @param knowledgeRepository cached user aggregates the fixed rule sets are evaluated from
+     * @param ruleEvaluationExecutor concurrent evaluation pool (present when recommendation.evaluation.mode=concurrent)
      */
     public RecommendationService(
             List<RecommendationRuleSet> ruleSets,
-            DynamicRulesRecommendationService dynamicRulesRecommendationService
+            DynamicRulesRecommendationService dynamicRulesRecommendationService,
+            ObjectProvider<KnownUserFilter> knownUserFilter,
+            KnowledgeRepository knowledgeRepository,
+            ObjectProvider<RuleEvaluationExecutor> ruleEvaluationExecutor
     ) {
         this.ruleSets = Objects.requireNonNull(ruleSets, "ruleSets must not be null");
         this.dynamicRulesRecommendationService = Objects.requireNonNull(
                 dynamicRulesRecommendationService,
                 "dynamicRulesRecommendationService must not be null"
         );
+        this.knownUserFilter = Objects.requireNonNull(knownUserFilter, "knownUserFilter must not be null");
+        this.knowledgeRepository = Objects.requireNonNull(knowledgeRepository, "knowledgeRepository must not be null");
+        this.ruleEvaluationExecutor = Objects.requireNonNull(ruleEvaluationExecutor, "ruleEvaluationExecutor must not be null");
     }
 
     /**
      * Builds recommendations list for a given user.
      *
+     * <p>Users the {@link KnownUserFilter} reports as definitely absent get an empty list
+     * without running any rule queries.</p>
+     *
+     * <p>Fixed rule sets are evaluated from {@link FixedRuleFacts} of the user's cached aggregates,
+     * shared with dynamic rules: a cached user costs no database query for fixed rules.</p>
+     *
+     * <p>With {@link RuleEvaluationExecutor} the fixed rule sets (one aggregates load, then in-memory checks)
+     * and the dynamic rules run as two concurrent branches, so a cache-cold request waits for the slower
+     * of them rather than their sum. The result order is the same as in sequential mode:
+     * fixed rule sets in order, then dynamic rules.</p>
+     *
      * @param userId user id
      * @return response DTO with possibly empty recommendations list
      */
     public RecommendationResponseDto getRecommendations(UUID userId) {
+        KnownUserFilter users = knownUserFilter.getIfAvailable();
+        if (users != null && !users.mightExist(userId)) {
+            log.debug("Unknown user_id={}, skipping rule evaluation", userId);
+            return new RecommendationResponseDto(userId, List.of());
+        }
+
         log.debug("Building recommendations for user_id={}, ruleSets={}", userId, ruleSets.size());
 
-        List<RecommendationDto> fixedRecommendations = ruleSets.stream()
-                                                               .flatMap(ruleSet -> ruleSet.check(userId).stream())
-                                                               .toList();
+        RuleEvaluationExecutor executor = ruleEvaluationExecutor.getIfAvailable();
+        List<RecommendationDto> fixedRecommendations;
+        List<RecommendationDto> dynamicRecommendations;
+        if (executor == null) {
+            fixedRecommendations = fixedRecommendations(userId);
+            dynamicRecommendations = dynamicRulesRecommendationService.getDynamicRecommendations(userId);
+        } else {
+            List<Supplier<List<RecommendationDto>>> branches = List.of(
+                    () -> fixedRecommendations(userId),
+                    () -> dynamicRulesRecommendationService.getDynamicRecommendations(userId)
+            );
 
-        List<RecommendationDto> dynamicRecommendations = dynamicRulesRecommendationService.getDynamicRecommendations(userId);
+            List<List<RecommendationDto>> results = executor.invokeAll(branches);
+            fixedRecommendations = results.get(0);
+            dynamicRecommendations = results.get(1);
+        }
 
         List<RecommendationDto> recommendations = Stream.concat(
                                                                 fixedRecommendations.stream(),
@@ -65,4 +110,22 @@ public class RecommendationService {
 
         return new RecommendationResponseDto(userId, recommendations);
     }
-}
\ No newline at end of file
+
+    private List<RecommendationDto> fixedRecommendations(UUID userId) {
+        if (ruleSets.isEmpty()) {
+            return List.of();
+        }
+        FixedRuleFacts facts = fixedRuleFacts(userId);
+        return ruleSets.stream()
+                       .flatMap(ruleSet -> ruleSet.check(userId, facts).stream())
+                       .toList();
+    }
+
+    /**
+     * The dynamic rules branch loads the same aggregates concurrently: the cache coalesces
+     * simultaneous misses for the same key into one load.
+     */
+    private FixedRuleFacts fixedRuleFacts(UUID userId) {
+        return FixedRuleFacts.from(knowledgeRepository.aggregatesFor(userId));
+    }
+}
@@ -0,0 +1,116 @@
+package ru.starbank.recommendation.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.starbank.recommendation.config.pool.QueryDeadline;
+import ru.starbank.recommendation.config.pool.Workload;
+import ru.starbank.recommendation.config.recommendation.RecommendationProperties;
+import ru.starbank.recommendation.exception.RecommendationUnavailableException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Выделенный ограниченный пул для параллельного вычисления правил одного запроса
+ * ({@code recommendation.evaluation.mode=concurrent}).
+ *
+ * <p>Ветви запроса выполняются параллельно, результаты возвращаются в порядке ветвей. Класс нагрузки
+ * вызывающего потока ({@link Workload}) переносится в ветви, поэтому запросы к БД идут через его пулы.</p>
+ *
+ * <p>Если все ветви не завершились за {@code recommendation.evaluation.timeout-ms} или очередь пула
+ * заполнена, бросается {@link RecommendationUnavailableException} (HTTP 503). Ошибка ветви
+ * пробрасывается вызывающему как есть.</p>
+ *
+ * <p>Отмена future не прерывает ветвь, заблокированную в JDBC, поэтому ветви получают срок запроса
+ * ({@link QueryDeadline}): запросы к knowledge DB выполняются с таймаутом, равным оставшемуся времени,
+ * и поток пула освобождается вскоре после таймаута запроса.</p>
+ */
+@Component
+@ConditionalOnProperty(prefix = "recommendation.evaluation", name = "mode", havingValue = "concurrent")
+public class RuleEvaluationExecutor {
+
+    private final ThreadPoolExecutor pool;
+    private final Executor executor;
+    private final long timeoutMs;
+
+    public RuleEvaluationExecutor(RecommendationProperties properties) {
+        RecommendationProperties.Evaluation settings = properties.getEvaluation();
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(
+                settings.getThreads(),
+                settings.getThreads(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(settings.getQueueCapacity()),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "rule-evaluation-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy()
+        );
+        this.executor = Workload.propagating(pool);
+        this.timeoutMs = settings.getTimeoutMs();
+    }
+
+    /**
+     * Выполняет ветви параллельно и ждёт все, не дольше таймаута запроса.
+     *
+     * @return результаты в порядке ветвей
+     */
+    public <T> List<T> invokeAll(List<Supplier<T>> branches) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        List<CompletableFuture<T>> futures = new ArrayList<>(branches.size());
+        try {
+            for (Supplier<T> branch : branches) {
+                futures.add(CompletableFuture.supplyAsync(() -> QueryDeadline.call(deadline, branch), executor));
+            }
+        } catch (RejectedExecutionException e) {
+            futures.forEach(future -> future.cancel(false));
+            throw new RecommendationUnavailableException("Сервис перегружен, повторите запрос позже");
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            futures.forEach(future -> future.cancel(false));
+            throw new RecommendationUnavailableException(
+                    "Рекомендации не вычислены за " + timeoutMs + " мс, повторите запрос позже");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(false));
+            throw new RecommendationUnavailableException("Вычисление рекомендаций прервано");
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    private static RuntimeException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error fatal) {
+            throw fatal;
+        }
+        return new CompletionException(cause);
+    }
+}
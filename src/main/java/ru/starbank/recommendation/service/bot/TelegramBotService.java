@@ -10,6 +10,7 @@ import org.telegram.telegrambots.meta.api.objects.Update;
 import org.telegram.telegrambots.meta.api.objects.User;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
 import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+import ru.starbank.recommendation.config.pool.Workload;
 import ru.starbank.recommendation.domain.bot.TelegramCommand;
 import ru.starbank.recommendation.domain.bot.TelegramCommandParser;
 import ru.starbank.recommendation.domain.bot.TelegramRateLimiter;
@@ -69,8 +70,17 @@ public class TelegramBotService extends TelegramLongPollingBot {
         return botUsername;
     }
 
+    /**
+     * Обращения к БД из команд бота идут через пулы класса {@link Workload#BOT}.
+     */
     @Override
     public void onUpdateReceived(Update update) {
+        try (Workload.Scope ignored = Workload.BOT.open()) {
+            handleUpdate(update);
+        }
+    }
+
+    private void handleUpdate(Update update) {
         if (!update.hasMessage() || !update.getMessage().hasText()) {
             return;
         }
@@ -4,9 +4,13 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import org.springframework.stereotype.Component;
 import ru.starbank.recommendation.config.bot.TelegramBotProperties;
+import ru.starbank.recommendation.config.cache.CacheStatsRecorder;
+import ru.starbank.recommendation.config.cache.ObservableCaches;
+import ru.starbank.recommendation.config.cache.ObservedCache;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Map;
 import java.util.Objects;
 
 /**
@@ -14,10 +18,11 @@ import java.util.Objects;
  * "Слишком часто" не чаще одного раза в заданный интервал на chatId.
  */
 @Component
-public class TelegramRateLimitFeedbackService {
+public class TelegramRateLimitFeedbackService implements ObservableCaches {
 
     private final Duration feedbackCooldown;
 
+    private final CacheStatsRecorder stats = new CacheStatsRecorder();
     private final Cache<Long, Instant> lastFeedbackAt;
 
     public TelegramRateLimitFeedbackService(TelegramBotProperties properties) {
@@ -27,11 +32,17 @@ public class TelegramRateLimitFeedbackService {
         this.feedbackCooldown = Duration.ofMillis(rl.getFeedbackCooldownMs());
 
         this.lastFeedbackAt = Caffeine.newBuilder()
-                                      .expireAfterAccess(Duration.ofMinutes(5))
-                                      .maximumSize(10_000)
+                                      .expireAfterAccess(Duration.ofMillis(rl.getFeedbackExpireAfterAccessMs()))
+                                      .maximumSize(rl.getFeedbackCacheSize())
+                                      .recordStats(() -> stats)
                                       .build();
     }
 
+    @Override
+    public Map<String, ObservedCache> observableCaches() {
+        return Map.of("telegram-rate-limit-feedback", new ObservedCache(lastFeedbackAt, stats));
+    }
+
     /**
      * @return true если можно отправить пользователю предупреждение о rate-limit сейчас
      */
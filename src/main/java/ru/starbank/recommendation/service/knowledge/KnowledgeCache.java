@@ -0,0 +1,47 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import ru.starbank.recommendation.exception.UnknownCacheException;
+
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Кеши, которые можно сбрасывать точечно через management API.
+ */
+public enum KnowledgeCache {
+
+    /**
+     * Снимки агрегатов пользователей (Caffeine).
+     */
+    USER_AGGREGATES("user-aggregates"),
+
+    /**
+     * Колоночное хранилище агрегатов (knowledge.aggregates.source=columnar).
+     */
+    COLUMNAR_AGGREGATES("columnar-aggregates"),
+
+    /**
+     * Справочник products(id, type).
+     */
+    PRODUCT_CATALOG("product-catalog");
+
+    private final String id;
+
+    KnowledgeCache(String id) {
+        this.id = id;
+    }
+
+    public String id() {
+        return id;
+    }
+
+    public static KnowledgeCache fromId(String id) {
+        for (KnowledgeCache cache : values()) {
+            if (cache.id.equals(id)) {
+                return cache;
+            }
+        }
+        throw new UnknownCacheException("Unknown cache: " + id + ". Expected one of: "
+                + Arrays.stream(values()).map(KnowledgeCache::id).collect(Collectors.joining(", ")));
+    }
+}
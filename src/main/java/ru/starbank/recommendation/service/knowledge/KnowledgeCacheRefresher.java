@@ -0,0 +1,192 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.dto.management.CacheRefreshStatusDto;
+import ru.starbank.recommendation.repository.jdbc.CacheGeneration;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Поколения кеша агрегатов и мягкий сброс.
+ *
+ * <p>Мягкий сброс увеличивает поколение и запускает фоновое обновление всех записей, которые были
+ * в кеше на этот момент, не быстрее {@code knowledge.cache.soft-clear-refresh-per-second}.
+ * Старые значения продолжают отдаваться, пока их запись не перезагружена, поэтому knowledge DB
+ * не получает одновременный промах от всех пользователей.</p>
+ *
+ * <p>Поколение хранится в записях кеша ({@link CacheGeneration}): проход пропускает записи, загруженные
+ * уже в новом поколении, а записи, которые проход не застал (их загрузка началась до сброса),
+ * перезагружаются при чтении после завершения прохода.</p>
+ *
+ * <p>Жёсткий сброс (для аварийных случаев) тоже увеличивает поколение, останавливает текущий проход
+ * и очищает кеш сразу.</p>
+ */
+@Service
+public class KnowledgeCacheRefresher {
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeCacheRefresher.class);
+
+    private static final long TICK_MS = 100;
+
+    private final KnowledgeRepository knowledgeRepository;
+    private final CacheGeneration cacheGeneration;
+    private final int refreshesPerTick;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile Pass current;
+
+    public KnowledgeCacheRefresher(
+            KnowledgeRepository knowledgeRepository,
+            CacheGeneration cacheGeneration,
+            KnowledgeProperties properties
+    ) {
+        this.knowledgeRepository = Objects.requireNonNull(knowledgeRepository, "knowledgeRepository must not be null");
+        this.cacheGeneration = Objects.requireNonNull(cacheGeneration, "cacheGeneration must not be null");
+        int perSecond = properties.getCache().getSoftClearRefreshPerSecond();
+        this.refreshesPerTick = Math.max(1, (int) (perSecond * TICK_MS / 1000));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "knowledge-cache-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Мягкий сброс: новое поколение и фоновое обновление текущих записей.
+     * Незавершённый проход предыдущего поколения останавливается.
+     *
+     * @return номер нового поколения
+     */
+    public synchronized long softClear() {
+        cancelCurrent();
+        long gen = cacheGeneration.next(false);
+        knowledgeRepository.clearSharedCache();
+
+        Pass pass = new Pass(gen, knowledgeRepository.cachedUserIds());
+        current = pass;
+        pass.task = scheduler.scheduleAtFixedRate(pass::tick, 0, TICK_MS, TimeUnit.MILLISECONDS);
+
+        log.info("Soft cache clear: generation={}, entries to refresh={}", gen, pass.userIds.size());
+        return gen;
+    }
+
+    /**
+     * Жёсткий сброс: кеш очищается сразу.
+     *
+     * @return номер нового поколения
+     */
+    public synchronized long hardClear() {
+        cancelCurrent();
+        long gen = cacheGeneration.next(true);
+        current = null;
+        knowledgeRepository.clearCaches();
+
+        log.info("Hard cache clear: generation={}", gen);
+        return gen;
+    }
+
+    public synchronized CacheRefreshStatusDto status() {
+        Pass pass = current;
+        long generation = cacheGeneration.current();
+        if (pass == null || pass.generation != generation) {
+            return new CacheRefreshStatusDto(generation, false, 0, 0, 0, null, null);
+        }
+        return pass.status();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void cancelCurrent() {
+        Pass pass = current;
+        if (pass != null && pass.task != null) {
+            pass.task.cancel(false);
+        }
+    }
+
+    /**
+     * Один проход фонового обновления.
+     */
+    private final class Pass {
+        private final long generation;
+        private final List<UUID> userIds;
+        private final Instant startedAt = Instant.now();
+        private final AtomicInteger refreshed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+
+        private volatile ScheduledFuture<?> task;
+        private volatile Instant finishedAt;
+        private int next;
+
+        private Pass(long generation, List<UUID> userIds) {
+            this.generation = generation;
+            this.userIds = userIds;
+        }
+
+        /**
+         * Выполняется только потоком scheduler.
+         */
+        private void tick() {
+            if (finishedAt != null) {
+                cancelTask();
+                return;
+            }
+            int end = Math.min(userIds.size(), next + refreshesPerTick);
+            for (; next < end; next++) {
+                knowledgeRepository.refresh(userIds.get(next), generation).whenComplete((value, error) -> {
+                    if (error == null) {
+                        refreshed.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                        log.debug("Cache refresh failed: generation={}", generation, error);
+                    }
+                    completeIfDone();
+                });
+            }
+            completeIfDone();
+        }
+
+        private synchronized void completeIfDone() {
+            if (finishedAt == null && refreshed.get() + failed.get() >= userIds.size()) {
+                finishedAt = Instant.now();
+                cancelTask();
+                cacheGeneration.settle(generation);
+                log.info("Soft cache clear finished: generation={}, refreshed={}, failed={}",
+                        generation, refreshed.get(), failed.get());
+            }
+        }
+
+        private void cancelTask() {
+            ScheduledFuture<?> t = task;
+            if (t != null) {
+                t.cancel(false);
+            }
+        }
+
+        private CacheRefreshStatusDto status() {
+            return new CacheRefreshStatusDto(
+                    generation,
+                    finishedAt == null,
+                    userIds.size(),
+                    refreshed.get(),
+                    failed.get(),
+                    startedAt,
+                    finishedAt
+            );
+        }
+    }
+}
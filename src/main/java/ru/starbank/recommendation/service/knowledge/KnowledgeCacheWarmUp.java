@@ -0,0 +1,134 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.UserIdsFile;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Прогрев кеша агрегатов после рестарта ({@code knowledge.warm-up.enabled=true}).
+ *
+ * <p>Самые востребованные ключи кеша периодически и при остановке сохраняются в файл
+ * {@code knowledge.warm-up.keys-file}. При старте (ApplicationRunner) их снимки загружаются
+ * порциями по {@code batch-size}, не быстрее {@code users-per-second}, пока не истечёт
+ * {@code deadline-ms}. Spring Boot переводит приложение в ReadinessState.ACCEPTING_TRAFFIC только
+ * после завершения всех ApplicationRunner, поэтому readiness (GET /management/readiness)
+ * включается после прогрева или по истечении срока.</p>
+ */
+@Service
+@ConditionalOnProperty(prefix = "knowledge.warm-up", name = "enabled", havingValue = "true")
+public class KnowledgeCacheWarmUp implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeCacheWarmUp.class);
+
+    private final KnowledgeRepository knowledgeRepository;
+    private final KnowledgeProperties.WarmUp settings;
+    private final Path keysFile;
+
+    public KnowledgeCacheWarmUp(KnowledgeRepository knowledgeRepository, KnowledgeProperties properties) {
+        this.knowledgeRepository = Objects.requireNonNull(knowledgeRepository, "knowledgeRepository must not be null");
+        this.settings = properties.getWarmUp();
+        String file = settings.getKeysFile();
+        this.keysFile = file == null || file.isBlank() ? null : Path.of(file);
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (keysFile == null) {
+            return;
+        }
+        UserIdsFile.Saved saved;
+        try {
+            saved = UserIdsFile.read(keysFile);
+        } catch (IOException e) {
+            log.warn("Failed to read cache warm-up keys {}, starting cold", keysFile, e);
+            return;
+        }
+        if (saved == null || saved.userIds().isEmpty()) {
+            log.info("No cache warm-up keys at {}", keysFile);
+            return;
+        }
+        warmUp(saved.userIds());
+    }
+
+    /**
+     * Сохраняет самые востребованные ключи кеша для прогрева при следующем старте.
+     */
+    @Scheduled(initialDelayString = "${knowledge.warm-up.save-interval-ms:60000}",
+            fixedDelayString = "${knowledge.warm-up.save-interval-ms:60000}")
+    @PreDestroy
+    public synchronized void saveKeys() {
+        if (keysFile == null) {
+            return;
+        }
+        List<UUID> userIds = knowledgeRepository.hottestUserIds(settings.getMaxUsers());
+        if (userIds.isEmpty()) {
+            return;
+        }
+        try {
+            UserIdsFile.write(userIds, Instant.now(), keysFile);
+            log.debug("Cache warm-up keys saved: users={}, file={}", userIds.size(), keysFile);
+        } catch (IOException e) {
+            log.warn("Failed to save cache warm-up keys {}", keysFile, e);
+        }
+    }
+
+    /**
+     * Срок проверяется и между порциями, и во время загрузки порции: ожидание порции ограничено
+     * оставшимся временем, поэтому медленная БД не задерживает готовность дольше {@code deadline-ms}.
+     */
+    private void warmUp(List<UUID> userIds) {
+        Instant startedAt = Instant.now();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(settings.getDeadlineMs());
+        int batchSize = Math.max(1, settings.getBatchSize());
+        long nanosPerUser = 1_000_000_000L / Math.max(1, settings.getUsersPerSecond());
+
+        int loaded = 0;
+        long nextBatchAt = System.nanoTime();
+        try {
+            for (int from = 0; from < userIds.size(); from += batchSize) {
+                long wait = Math.min(nextBatchAt, deadline) - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    log.warn("Cache warm-up deadline reached: loaded={} of {}", loaded, userIds.size());
+                    return;
+                }
+                List<UUID> batch = userIds.subList(from, Math.min(userIds.size(), from + batchSize));
+                knowledgeRepository.warmUp(batch).get(remaining, TimeUnit.NANOSECONDS);
+                loaded += batch.size();
+                nextBatchAt += nanosPerUser * batch.size();
+            }
+        } catch (TimeoutException e) {
+            log.warn("Cache warm-up deadline reached while loading: loaded={} of {}", loaded, userIds.size());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | RuntimeException e) {
+            log.warn("Cache warm-up failed after {} users, continuing cold", loaded, e);
+            return;
+        }
+        log.info("Cache warm-up finished: users={}, took={}ms",
+                loaded, Duration.between(startedAt, Instant.now()).toMillis());
+    }
+}
@@ -0,0 +1,252 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.repository.jdbc.IngestPosition;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeShards;
+import ru.starbank.recommendation.repository.jdbc.KnownUserFilter;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Инкрементальное обновление кеша агрегатов новыми транзакциями.
+ *
+ * <p>Работает только при {@code knowledge.tailer.enabled=true}. Читает транзакции с ingest-номером
+ * больше последнего обработанного и применяет их к закешированным снимкам
+ * ({@link KnowledgeRepository#applyTransaction}), не перечитывая историю пользователя.</p>
+ *
+ * <p>Стартовая позиция — текущий максимум ingest-номера: всё, что было до старта, уже
+ * учитывается обычной загрузкой. Номера выдаются при вставке, а не при коммите, поэтому
+ * транзакция может стать видимой позже соседей с большими номерами. Такие номера запоминаются
+ * как пропуски и перепроверяются при каждом опросе до {@code knowledge.tailer.gap-timeout-ms};
+ * появившаяся транзакция применяется так же, как новая. Пропуск, не заполненный за это время,
+ * считается откатом.</p>
+ *
+ * <p>Позиция (последний номер и открытые пропуски) публикуется в {@link IngestPosition} до применения
+ * каждой транзакции: снимки загружаются на эту позицию, поэтому транзакцию, которая могла войти
+ * в снимок, {@link KnowledgeRepository#applyTransaction} не применяет, а сбрасывает снимок.</p>
+ *
+ * <p>Строки с номером не больше уже обработанного считаются повтором и пропускаются.</p>
+ *
+ * <p>При шардировании у каждого шарда своя позиция и свои пропуски: ingest-номера в шардах независимы.</p>
+ *
+ * <p>Пользователи новых транзакций добавляются в {@link KnownUserFilter}, если он включён.</p>
+ */
+@Service
+@ConditionalOnProperty(prefix = "knowledge.tailer", name = "enabled", havingValue = "true")
+public class TransactionTailer {
+    private static final Logger log = LoggerFactory.getLogger(TransactionTailer.class);
+
+    /**
+     * Сколько пропущенных номеров перепроверяется одним запросом.
+     */
+    private static final int GAP_QUERY_CHUNK = 500;
+
+    private final KnowledgeShards shards;
+    private final ProductCatalog productCatalog;
+    private final KnowledgeRepository knowledgeRepository;
+    private final ObjectProvider<KnownUserFilter> knownUserFilter;
+    private final IngestPosition ingestPosition;
+    private final int batchSize;
+    private final long gapTimeoutMs;
+    private final int maxPendingGaps;
+    private final String maxSequenceSql;
+    private final String nextBatchSql;
+    private final String gapSqlPrefix;
+
+    /**
+     * Последний обработанный ingest-номер по каждому шарду; -1 — шард ещё не инициализирован.
+     */
+    private final long[] watermarks;
+
+    /**
+     * Пропущенные ingest-номера по каждому шарду: номер → момент (мс), после которого пропуск забывается.
+     * Порядок вставки совпадает с порядком номеров.
+     */
+    private final List<Map<Long, Long>> pendingGaps;
+
+    public TransactionTailer(
+            KnowledgeShards shards,
+            ProductCatalog productCatalog,
+            KnowledgeRepository knowledgeRepository,
+            ObjectProvider<KnownUserFilter> knownUserFilter,
+            IngestPosition ingestPosition,
+            KnowledgeProperties properties
+    ) {
+        this.shards = Objects.requireNonNull(shards, "shards must not be null");
+        this.productCatalog = Objects.requireNonNull(productCatalog, "productCatalog must not be null");
+        this.knowledgeRepository = Objects.requireNonNull(knowledgeRepository, "knowledgeRepository must not be null");
+        this.knownUserFilter = Objects.requireNonNull(knownUserFilter, "knownUserFilter must not be null");
+        this.ingestPosition = Objects.requireNonNull(ingestPosition, "ingestPosition must not be null");
+
+        KnowledgeProperties.Tailer settings = properties.getTailer();
+        String seq = settings.getSequenceColumn();
+        this.batchSize = settings.getBatchSize();
+        this.gapTimeoutMs = settings.getGapTimeoutMs();
+        this.maxPendingGaps = Math.max(0, settings.getMaxPendingGaps());
+        this.maxSequenceSql = "SELECT COALESCE(MAX(" + seq + "), 0) FROM transactions";
+        this.nextBatchSql = """
+                SELECT %1$s AS seq, user_id, product_id, type, amount
+                FROM transactions
+                WHERE %1$s > ?
+                ORDER BY %1$s
+                LIMIT ?
+                """.formatted(seq);
+        this.gapSqlPrefix = "SELECT %1$s AS seq, user_id, product_id, type, amount FROM transactions WHERE %1$s IN ("
+                .formatted(seq);
+        this.watermarks = new long[shards.count()];
+        Arrays.fill(watermarks, -1);
+        this.pendingGaps = new ArrayList<>(shards.count());
+        for (int shard = 0; shard < shards.count(); shard++) {
+            pendingGaps.add(new LinkedHashMap<>());
+        }
+    }
+
+    /**
+     * Один цикл опроса: дочитывает все новые транзакции порциями по batchSize.
+     */
+    @Scheduled(fixedDelayString = "${knowledge.tailer.poll-interval-ms:2000}")
+    public synchronized void poll() {
+        for (int shard = 0; shard < watermarks.length; shard++) {
+            poll(shard);
+        }
+    }
+
+    private void poll(int shard) {
+        JdbcTemplate jdbcTemplate = shards.shard(shard);
+        try {
+            if (watermarks[shard] < 0) {
+                Long max = jdbcTemplate.queryForObject(maxSequenceSql, Long.class);
+                watermarks[shard] = max == null ? 0 : max;
+                publishPosition(shard);
+                log.info("Transaction tailer started from ingest_seq={}, shard={}", watermarks[shard], shard);
+                return;
+            }
+
+            recheckGaps(jdbcTemplate, shard);
+
+            int applied;
+            do {
+                applied = applyNextBatch(jdbcTemplate, shard);
+            } while (applied == batchSize);
+        } catch (DataAccessException e) {
+            log.warn("Transaction tailer poll failed at ingest_seq={}, shard={}", watermarks[shard], shard, e);
+        }
+    }
+
+    private int applyNextBatch(JdbcTemplate jdbcTemplate, int shard) {
+        int[] rows = {0};
+        KnownUserFilter users = knownUserFilter.getIfAvailable();
+
+        jdbcTemplate.query(nextBatchSql, rs -> {
+            rows[0]++;
+            long seq = rs.getLong("seq");
+            long watermark = watermarks[shard];
+            if (seq <= watermark) {
+                log.debug("Duplicate ingest_seq={} skipped, shard={}", seq, shard);
+                return;
+            }
+            if (seq > watermark + 1) {
+                rememberGaps(shard, watermark + 1, seq - 1);
+            }
+
+            watermarks[shard] = seq;
+            publishPosition(shard);
+            apply(rs, seq, users);
+        }, watermarks[shard], batchSize);
+
+        return rows[0];
+    }
+
+    /**
+     * Запоминает номера [from, to] как пропуски. Если их больше {@code maxPendingGaps},
+     * отслеживаются только последние.
+     */
+    private void rememberGaps(int shard, long from, long to) {
+        Map<Long, Long> gaps = pendingGaps.get(shard);
+        long first = Math.max(from, to - maxPendingGaps + 1);
+        if (first > from) {
+            log.warn("Too many ingest_seq gaps, not tracked: {}..{}, shard={}", from, first - 1, shard);
+        }
+        long deadline = System.currentTimeMillis() + gapTimeoutMs;
+        for (long seq = first; seq <= to; seq++) {
+            gaps.put(seq, deadline);
+        }
+
+        Iterator<Long> oldest = gaps.keySet().iterator();
+        while (gaps.size() > maxPendingGaps && oldest.hasNext()) {
+            long dropped = oldest.next();
+            oldest.remove();
+            log.warn("Too many ingest_seq gaps, dropped ingest_seq={}, shard={}", dropped, shard);
+        }
+    }
+
+    /**
+     * Ищет транзакции, закоммиченные в пропущенные номера, и применяет их.
+     * Пропуски старше {@code gap-timeout-ms} забываются.
+     */
+    private void recheckGaps(JdbcTemplate jdbcTemplate, int shard) {
+        Map<Long, Long> gaps = pendingGaps.get(shard);
+        if (gaps.isEmpty()) {
+            return;
+        }
+        KnownUserFilter users = knownUserFilter.getIfAvailable();
+        List<Long> seqs = List.copyOf(gaps.keySet());
+
+        for (int from = 0; from < seqs.size(); from += GAP_QUERY_CHUNK) {
+            List<Long> chunk = seqs.subList(from, Math.min(seqs.size(), from + GAP_QUERY_CHUNK));
+            String sql = gapSqlPrefix + String.join(", ", Collections.nCopies(chunk.size(), "?")) + ")";
+            jdbcTemplate.query(sql, rs -> {
+                long seq = rs.getLong("seq");
+                gaps.remove(seq);
+                publishPosition(shard);
+                apply(rs, seq, users);
+                log.debug("Late transaction ingest_seq={} applied, shard={}", seq, shard);
+            }, chunk.toArray());
+        }
+
+        long now = System.currentTimeMillis();
+        if (gaps.values().removeIf(deadline -> deadline <= now)) {
+            publishPosition(shard);
+        }
+    }
+
+    private void apply(ResultSet rs, long seq, KnownUserFilter users) throws SQLException {
+        UUID userId = UUID.fromString(rs.getString("user_id"));
+        UUID productId = UUID.fromString(rs.getString("product_id"));
+
+        if (users != null) {
+            users.add(userId);
+        }
+
+        String productType = productCatalog.typeOf(productId);
+        if (productType != null) {
+            knowledgeRepository.applyTransaction(userId, productType, rs.getString("type"), rs.getLong("amount"), seq);
+        } else {
+            log.warn("Unknown product in transactions, skipped: user_id={}, product_id={}", userId, productId);
+        }
+    }
+
+    private void publishPosition(int shard) {
+        ingestPosition.publish(shard, watermarks[shard], pendingGaps.get(shard).keySet());
+    }
+}
@@ -0,0 +1,149 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesTableRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Фоновая материализация агрегатов пользователей в таблицу user_product_aggregates.
+ *
+ * <p>Работает только при {@code knowledge.aggregates.source=materialized}. Проход выполняет один экземпляр
+ * сервиса: он берёт аренду в user_product_aggregates_state и продлевает её после каждой порции, остальные
+ * экземпляры проход пропускают.</p>
+ *
+ * <p>Полный проход (первый и затем раз в {@code knowledge.aggregates.full-refresh-interval-ms}) идёт порциями
+ * пользователей (keyset по users.id). Между полными проходами пересчитываются только пользователи с транзакциями,
+ * ingest-номер которых больше зафиксированного прошлым проходом. Транзакции, закоммиченные позже соседей
+ * с большими номерами, попадают в таблицу со следующим полным проходом. Каждая порция пересчитывается
+ * в отдельной транзакции, поэтому таблица обновляется постепенно и никогда не бывает пустой целиком.</p>
+ *
+ * <p>По завершении прохода фиксируется время его начала — по нему
+ * {@link ru.starbank.recommendation.repository.jdbc.UserAggregatesLoader} решает, не устарели ли данные.</p>
+ */
+@Service
+@ConditionalOnProperty(prefix = "knowledge.aggregates", name = "source", havingValue = "materialized")
+public class UserAggregatesMaterializer {
+    private static final Logger log = LoggerFactory.getLogger(UserAggregatesMaterializer.class);
+
+    private final UserAggregatesTableRepository tableRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final Duration fullRefreshInterval;
+    private final Duration lease;
+    private final String owner = UUID.randomUUID().toString();
+
+    public UserAggregatesMaterializer(
+            UserAggregatesTableRepository tableRepository,
+            @Qualifier("knowledgeTransactionManager") PlatformTransactionManager knowledgeTransactionManager,
+            KnowledgeProperties properties
+    ) {
+        this.tableRepository = Objects.requireNonNull(tableRepository, "tableRepository must not be null");
+        this.transactionTemplate = new TransactionTemplate(knowledgeTransactionManager);
+        KnowledgeProperties.Aggregates settings = properties.getAggregates();
+        this.batchSize = settings.getRefreshBatchSize();
+        this.fullRefreshInterval = Duration.ofMillis(settings.getFullRefreshIntervalMs());
+        this.lease = Duration.ofMillis(settings.getRefreshLeaseMs());
+    }
+
+    /**
+     * Проход материализации: полный или по изменившимся пользователям.
+     */
+    @Scheduled(fixedDelayString = "${knowledge.aggregates.refresh-interval-ms:300000}")
+    public void refresh() {
+        Instant startedAt = Instant.now();
+        try {
+            if (!tableRepository.tryLock(owner, startedAt, startedAt.plus(lease))) {
+                log.debug("Aggregates materialization is running on another instance, skipped");
+                return;
+            }
+        } catch (DataAccessException e) {
+            log.error("Aggregates materialization lease failed", e);
+            return;
+        }
+
+        try {
+            refreshLocked(startedAt);
+        } finally {
+            try {
+                tableRepository.unlock(owner);
+            } catch (DataAccessException e) {
+                log.warn("Aggregates materialization lease release failed, it expires in {}ms", lease.toMillis(), e);
+            }
+        }
+    }
+
+    private void refreshLocked(Instant startedAt) {
+        int users = 0;
+        UUID cursor = null;
+        boolean full = false;
+
+        try {
+            UserAggregatesTableRepository.RefreshState state = tableRepository.refreshState();
+            full = state.lastSequence() == null
+                    || state.fullRefreshedAt() == null
+                    || state.fullRefreshedAt().plus(fullRefreshInterval).isBefore(startedAt);
+            long sequence = tableRepository.maxSequence();
+
+            if (full) {
+                while (true) {
+                    List<UUID> batch = tableRepository.nextUserBatch(cursor, batchSize);
+                    if (batch.isEmpty()) {
+                        break;
+                    }
+                    rebuild(batch);
+                    users += batch.size();
+                    cursor = batch.get(batch.size() - 1);
+                    if (batch.size() < batchSize) {
+                        break;
+                    }
+                }
+            } else {
+                List<UUID> changed = tableRepository.usersChangedSince(state.lastSequence());
+                for (int from = 0; from < changed.size(); from += batchSize) {
+                    List<UUID> batch = changed.subList(from, Math.min(changed.size(), from + batchSize));
+                    rebuild(batch);
+                    users += batch.size();
+                    cursor = batch.get(batch.size() - 1);
+                }
+            }
+            tableRepository.markRefreshed(startedAt, sequence, full ? startedAt : null);
+        } catch (DataAccessException | LeaseLostException e) {
+            log.error("Aggregates materialization failed after users={}, last_user_id={}, full={}", users, cursor, full, e);
+            return;
+        }
+
+        log.info("Aggregates materialized: users={}, full={}, took={}ms",
+                users, full, Duration.between(startedAt, Instant.now()).toMillis());
+    }
+
+    /**
+     * Пересчитывает порцию и продлевает аренду; если аренду перехватили, проход прерывается.
+     */
+    private void rebuild(List<UUID> batch) {
+        transactionTemplate.executeWithoutResult(status -> tableRepository.rebuildUsers(batch));
+        Instant now = Instant.now();
+        if (!tableRepository.tryLock(owner, now, now.plus(lease))) {
+            throw new LeaseLostException();
+        }
+    }
+
+    private static final class LeaseLostException extends RuntimeException {
+        private LeaseLostException() {
+            super("Aggregates materialization lease was taken over by another instance");
+        }
+    }
+}
@@ -21,8 +21,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
  * Stage 3: интеграционные тесты Management API.
  *
  * В проекте management разделён на два контроллера:
- * - CacheManagementController: POST /management/clear-caches
- * - ManagementInfoController: GET /management/info
+ * - CacheManagementController: POST /management/clear-caches, GET /management/clear-caches/status,
+ *   POST /management/clear-caches/users/{user_id}, GET /management/caches
+ * - ManagementInfoController: GET /management/info, GET /management/readiness
  */
 @SpringBootTest
 @AutoConfigureMockMvc
@@ -45,6 +46,67 @@ class ManagementEndpointsIntegrationTest {
                .andExpect(content().string(""));
     }
 
+    @Test
+    void hardClearCaches_shouldReturnOk() throws Exception {
+        mockMvc.perform(post("/management/clear-caches").param("hard", "true"))
+               .andExpect(status().isOk())
+               .andExpect(content().string(""));
+    }
+
+    @Test
+    void clearCachesStatus_shouldReportGeneration() throws Exception {
+        mockMvc.perform(post("/management/clear-caches"))
+               .andExpect(status().isOk());
+
+        mockMvc.perform(get("/management/clear-caches/status"))
+               .andExpect(status().isOk())
+               .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+               .andExpect(jsonPath("$.generation").isNumber())
+               .andExpect(jsonPath("$.total").isNumber());
+    }
+
+    @Test
+    void clearUserCaches_shouldReportTouchedCaches() throws Exception {
+        mockMvc.perform(post("/management/clear-caches/users/{userId}", "00000000-0000-0000-0000-000000000001"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.caches[0]").value("user-aggregates"))
+               .andExpect(jsonPath("$.invalidated").isNumber());
+    }
+
+    @Test
+    void clearUserCaches_shouldRejectInvalidUserIdAndUnknownCache() throws Exception {
+        mockMvc.perform(post("/management/clear-caches/users/{userId}", "not-a-uuid"))
+               .andExpect(status().isBadRequest());
+
+        mockMvc.perform(post("/management/clear-caches/users/{userId}", "00000000-0000-0000-0000-000000000001")
+                       .param("cache", "nope"))
+               .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void caches_shouldListNamedCachesWithStats() throws Exception {
+        mockMvc.perform(get("/management/caches"))
+               .andExpect(status().isOk())
+               .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+               .andExpect(jsonPath("$.caches[?(@.name == 'user-aggregates')].hit_ratio").exists())
+               .andExpect(jsonPath("$.caches[?(@.name == 'telegram-rate-limit')]").exists());
+    }
+
+    @Test
+    void pools_shouldListNamedConnectionPools() throws Exception {
+        mockMvc.perform(get("/management/pools"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.pools[?(@.name == 'knowledge')].max_pool_size").exists())
+               .andExpect(jsonPath("$.pools[?(@.name == 'rules')]").exists());
+    }
+
+    @Test
+    void readiness_shouldAcceptTraffic_afterStartup() throws Exception {
+        mockMvc.perform(get("/management/readiness"))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.state").value("ACCEPTING_TRAFFIC"));
+    }
+
     @Test
     void info_shouldReturnNameAndVersion() throws Exception {
         when(buildProperties.getName()).thenReturn("starbank-recommendation");
@@ -0,0 +1,173 @@
+package ru.starbank.recommendation.config.cache;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.jdbc.CacheGeneration;
+import ru.starbank.recommendation.repository.jdbc.CachedAggregates;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesLoader;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+class CacheConfigTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    private static final long MAX_HEAP = 1024L * 1024 * 1024;
+
+    @Test
+    void memoryBudget_shouldPreferExplicitBytes_overHeapPercent() {
+        KnowledgeProperties.Cache settings = new KnowledgeProperties().getCache();
+        settings.setMaximumBytes(DataSize.ofMegabytes(64));
+        settings.setMaxHeapPercent(50);
+
+        assertThat(CacheConfig.memoryBudget(settings, MAX_HEAP)).isEqualTo(64L * 1024 * 1024);
+    }
+
+    @Test
+    void memoryBudget_shouldTakeHeapPercent_whenBytesAreNotSet() {
+        KnowledgeProperties.Cache settings = new KnowledgeProperties().getCache();
+        settings.setMaximumBytes(null);
+        settings.setMaxHeapPercent(10);
+
+        assertThat(CacheConfig.memoryBudget(settings, MAX_HEAP)).isEqualTo(MAX_HEAP / 100 * 10);
+    }
+
+    @Test
+    void memoryBudget_shouldBeZero_whenLimitedByEntries() {
+        KnowledgeProperties.Cache settings = new KnowledgeProperties().getCache();
+        settings.setMaximumBytes(null);
+        settings.setMaxHeapPercent(0);
+
+        assertThat(CacheConfig.memoryBudget(settings, MAX_HEAP)).isZero();
+    }
+
+    @Test
+    void entryWeight_shouldAddOverhead_andGrowWithPairs() {
+        UserAggregates one = UserAggregates.builder(TYPES)
+                                           .add("DEBIT", "DEPOSIT", 1, 100)
+                                           .build();
+        UserAggregates three = UserAggregates.builder(TYPES)
+                                             .add("DEBIT", "DEPOSIT", 1, 100)
+                                             .add("DEBIT", "WITHDRAW", 1, 50)
+                                             .add("SAVING", "DEPOSIT", 2, 300)
+                                             .build();
+
+        assertThat(CacheConfig.entryWeight(one)).isEqualTo(184 + one.estimatedBytes());
+        assertThat(CacheConfig.entryWeight(three)).isGreaterThan(CacheConfig.entryWeight(one));
+    }
+
+    @Test
+    void userAggregatesCache_shouldKeepWeightWithinBudget() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .build();
+        long budget = 20L * CacheConfig.entryWeight(aggregates);
+
+        KnowledgeProperties properties = new KnowledgeProperties();
+        properties.getCache().setMaximumBytes(DataSize.ofBytes(budget));
+        UserAggregatesLoader loader = mock(UserAggregatesLoader.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        doReturn(aggregates).when(loader).load(any());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            AsyncLoadingCache<UUID, CachedAggregates> cache = new CacheConfig().userAggregatesCache(
+                    loader, new CacheGeneration(), executor, new CacheStatsRecorder(), properties);
+            LoadingCache<UUID, CachedAggregates> view = cache.synchronous();
+            for (int i = 0; i < 100; i++) {
+                view.get(UUID.randomUUID());
+            }
+            view.cleanUp();
+
+            assertThat(view.policy().eviction().orElseThrow().weightedSize().orElseThrow()).isLessThanOrEqualTo(budget);
+            assertThat(view.estimatedSize()).isLessThanOrEqualTo(20);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void knowledgeCacheExecutor_shouldRejectTask_whenQueueIsFull() {
+        KnowledgeProperties properties = new KnowledgeProperties();
+        properties.getCache().setLoaderThreads(1);
+        properties.getCache().setLoaderQueueCapacity(1);
+        ExecutorService executor = new CacheConfig().knowledgeCacheExecutor(properties);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executor.execute(() -> await(release));
+            executor.execute(() -> {
+            });
+
+            assertThatThrownBy(() -> executor.execute(() -> {
+            })).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectionAware_shouldKeepCurrentValue_whenReloadIsRejected() throws Exception {
+        CacheLoader<String, String> loader = key -> {
+            throw new AssertionError("reload must not run in the caller");
+        };
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("queue is full");
+        };
+        AsyncLoadingCache<String, String> cache = Caffeine.newBuilder()
+                                                          .executor(rejecting)
+                                                          .buildAsync(CacheConfig.rejectionAware(loader));
+        cache.put("key", CompletableFuture.completedFuture("current"));
+
+        CompletableFuture<String> refresh = cache.synchronous().refresh("key");
+
+        assertThat(refresh).isCancelled();
+        assertThat(cache.synchronous().getIfPresent("key")).isEqualTo("current");
+    }
+
+    @Test
+    void rejectionAware_shouldLoadMissInCaller_whenLoadIsRejected() {
+        Thread[] loadedIn = new Thread[1];
+        CacheLoader<String, String> loader = key -> {
+            loadedIn[0] = Thread.currentThread();
+            return "loaded";
+        };
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("queue is full");
+        };
+        AsyncLoadingCache<String, String> cache = Caffeine.newBuilder()
+                                                          .executor(rejecting)
+                                                          .buildAsync(CacheConfig.rejectionAware(loader));
+
+        assertThat(cache.synchronous().get("key")).isEqualTo("loaded");
+        assertThat(loadedIn[0]).isSameAs(Thread.currentThread());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
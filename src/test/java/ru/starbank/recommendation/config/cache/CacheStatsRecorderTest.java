@@ -0,0 +1,28 @@
+package ru.starbank.recommendation.config.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CacheStatsRecorderTest {
+
+    @Test
+    void percentiles_shouldBeZero_withoutLoads() {
+        assertThat(new CacheStatsRecorder().loadTimePercentileMillis(0.99)).isZero();
+    }
+
+    @Test
+    void percentiles_shouldBoundLoadTimesWithinFactorOfTwo() {
+        CacheStatsRecorder recorder = new CacheStatsRecorder();
+        for (int i = 0; i < 99; i++) {
+            recorder.recordLoadSuccess(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        recorder.recordLoadSuccess(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertThat(recorder.loadTimePercentileMillis(0.50)).isBetween(1.0, 2.0);
+        assertThat(recorder.loadTimePercentileMillis(0.999)).isBetween(100.0, 200.0);
+        assertThat(recorder.snapshot().loadCount()).isEqualTo(100);
+    }
+}
@@ -0,0 +1,123 @@
+package ru.starbank.recommendation.config.knowledge;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReplicaRoutingDataSourceTest {
+
+    private ReplicaRoutingDataSource router;
+
+    @AfterEach
+    void tearDown() {
+        if (router != null) {
+            router.close();
+        }
+    }
+
+    @Test
+    void getConnection_shouldPickReplicaWithFewestOutstandingConnections() throws Exception {
+        router = router(Map.of("primary", dataSource("primary")), replica("a"), replica("b"));
+
+        Connection c1 = router.getConnection();
+        Connection c2 = router.getConnection();
+        Connection c3 = router.getConnection();
+        assertThat(new String[]{c1.getCatalog(), c2.getCatalog(), c3.getCatalog()}).containsExactly("a", "b", "a");
+
+        c2.close();
+
+        assertThat(router.getConnection().getCatalog()).isEqualTo("b");
+        assertThat(router.getConnection().getCatalog()).isEqualTo("b");
+    }
+
+    @Test
+    void close_shouldReleaseOutstandingConnectionOnce() throws Exception {
+        router = router(Map.of("primary", dataSource("primary")), replica("a"), replica("b"));
+
+        Connection c1 = router.getConnection();
+        router.getConnection();
+        router.getConnection();
+
+        c1.close();
+        c1.close();
+
+        assertThat(router.getConnection().getCatalog()).isEqualTo("b");
+    }
+
+    @Test
+    void getConnection_shouldFallBackToPrimary_andMarkReplicaDown_whenReplicaFails() throws Exception {
+        Connection healthCheck = mock(Connection.class);
+        when(healthCheck.isValid(anyInt())).thenReturn(true);
+        DataSource failing = mock(DataSource.class);
+        when(failing.getConnection()).thenReturn(healthCheck).thenThrow(new SQLException("replica is gone"));
+        router = router(Map.of("primary", dataSource("primary")), Map.entry("a", failing));
+
+        assertThat(router.getConnection().getCatalog()).isEqualTo("primary");
+        assertThat(router.replicaHealth()).containsEntry("a", false);
+
+        assertThat(router.getConnection().getCatalog()).isEqualTo("primary");
+        verify(failing, times(2)).getConnection();
+    }
+
+    @Test
+    void readFromPrimary_shouldBypassHealthyReplicas() throws Exception {
+        router = router(Map.of("primary", dataSource("primary")), replica("a"));
+
+        String catalog = ReplicaRoutingDataSource.readFromPrimary(() -> {
+            try (Connection connection = router.getConnection()) {
+                return connection.getCatalog();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertThat(catalog).isEqualTo("primary");
+        assertThat(router.getConnection().getCatalog()).isEqualTo("a");
+    }
+
+    @SafeVarargs
+    private static ReplicaRoutingDataSource router(Map<String, DataSource> primary,
+                                                   Map.Entry<String, DataSource>... replicas) throws Exception {
+        Map<String, DataSource> byName = new LinkedHashMap<>();
+        for (Map.Entry<String, DataSource> replica : replicas) {
+            byName.put(replica.getKey(), replica.getValue());
+        }
+        ReplicaRoutingDataSource router =
+                new ReplicaRoutingDataSource(primary.get("primary"), byName, Duration.ofHours(1), 1);
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (router.replicaHealth().containsValue(false) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(router.replicaHealth()).doesNotContainValue(false);
+        return router;
+    }
+
+    private static Map.Entry<String, DataSource> replica(String name) throws SQLException {
+        return Map.entry(name, dataSource(name));
+    }
+
+    /**
+     * DataSource, соединения которого называют его через {@link Connection#getCatalog()}.
+     */
+    private static DataSource dataSource(String name) throws SQLException {
+        Connection connection = mock(Connection.class);
+        when(connection.getCatalog()).thenReturn(name);
+        when(connection.isValid(anyInt())).thenReturn(true);
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+}
@@ -0,0 +1,95 @@
+package ru.starbank.recommendation.config.pool;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DeadlineAwareJdbcTemplateTest {
+
+    private Statement statement;
+    private DeadlineAwareJdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        statement = mock(Statement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(mock(ResultSet.class));
+        jdbcTemplate = new DeadlineAwareJdbcTemplate(dataSource);
+    }
+
+    @Test
+    void query_shouldUseRemainingTimeRoundedUp_asQueryTimeout() throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1_500);
+
+        QueryDeadline.call(deadline, () -> {
+            jdbcTemplate.query("SELECT 1", rs -> {
+            });
+            return null;
+        });
+
+        verify(statement).setQueryTimeout(2);
+    }
+
+    @Test
+    void query_shouldFailWithoutExecuting_whenDeadlineHasPassed() throws Exception {
+        long deadline = System.nanoTime() - 1;
+
+        assertThatThrownBy(() -> QueryDeadline.call(deadline, () -> {
+            jdbcTemplate.query("SELECT 1", rs -> {
+            });
+            return null;
+        })).isInstanceOf(QueryTimeoutException.class);
+
+        verify(statement, never()).executeQuery(anyString());
+    }
+
+    @Test
+    void query_shouldKeepStatementSettings_withoutDeadline() throws Exception {
+        jdbcTemplate.query("SELECT 1", rs -> {
+        });
+
+        verify(statement, never()).setQueryTimeout(anyInt());
+    }
+
+    @Test
+    void call_shouldKeepEarlierDeadline_andPropagateItToPool() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Executor executor = QueryDeadline.propagating(pool);
+            long outer = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+            long inner = outer + TimeUnit.MINUTES.toNanos(1);
+
+            long inTask = QueryDeadline.call(outer, () -> QueryDeadline.call(inner, () ->
+                    CompletableFuture.supplyAsync(QueryDeadline::remainingNanos, executor).join()));
+            long afterTask = CompletableFuture.supplyAsync(QueryDeadline::remainingNanos, executor).join();
+
+            assertThat(inTask).isBetween(0L, TimeUnit.SECONDS.toNanos(1));
+            assertThat(afterTask).isEqualTo(-1);
+            assertThat(QueryDeadline.remainingNanos()).isEqualTo(-1);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
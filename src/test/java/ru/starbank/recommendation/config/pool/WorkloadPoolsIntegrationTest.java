@@ -0,0 +1,67 @@
+package ru.starbank.recommendation.config.pool;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.info.BuildProperties;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import ru.starbank.recommendation.domain.dto.management.ConnectionPoolStatsDto;
+import ru.starbank.recommendation.repository.RuleRepository;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пулы по классам нагрузки ({@code knowledge.pools.enabled=true}): rules DB тоже разделена,
+ * и JPA-запросы онлайн-потока идут через пул rules-online.
+ */
+@SpringBootTest(properties = "knowledge.pools.enabled=true")
+@ActiveProfiles("test")
+class WorkloadPoolsIntegrationTest {
+
+    @Autowired
+    private ConnectionPools connectionPools;
+
+    @Autowired
+    private RuleRepository ruleRepository;
+
+    @Autowired
+    @Qualifier("rulesDataSource")
+    private DataSource rulesDataSource;
+
+    /**
+     * Мокаем BuildProperties, чтобы тест не зависел от build-info.properties.
+     */
+    @MockitoBean
+    private BuildProperties buildProperties;
+
+    @Test
+    void rulesDataSource_shouldHavePoolPerWorkload() {
+        assertThat(rulesDataSource).isInstanceOf(WorkloadRoutingDataSource.class);
+        assertThat(connectionPools.stats()).extracting(ConnectionPoolStatsDto::name)
+                                           .contains("rules-online", "rules-bot", "rules-background")
+                                           .doesNotContain("rules");
+    }
+
+    @Test
+    void ruleRepository_shouldUseOnlinePool_inOnlineWorkload() {
+        long before = acquired("rules-online");
+
+        try (Workload.Scope ignored = Workload.ONLINE.open()) {
+            ruleRepository.findAllWithQueries();
+        }
+
+        assertThat(acquired("rules-online")).isGreaterThan(before);
+    }
+
+    private long acquired(String pool) {
+        return connectionPools.stats().stream()
+                              .filter(stats -> stats.name().equals(pool))
+                              .mapToLong(ConnectionPoolStatsDto::connectionsAcquired)
+                              .findFirst()
+                              .orElseThrow();
+    }
+}
@@ -0,0 +1,64 @@
+package ru.starbank.recommendation.config.pool;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WorkloadRoutingDataSourceTest {
+
+    @Test
+    void shouldRouteToPoolOfCurrentWorkload() throws Exception {
+        Map<Workload, DataSource> pools = new EnumMap<>(Workload.class);
+        Map<Workload, Connection> connections = new EnumMap<>(Workload.class);
+        for (Workload workload : Workload.values()) {
+            DataSource pool = Mockito.mock(DataSource.class);
+            Connection connection = Mockito.mock(Connection.class);
+            when(pool.getConnection()).thenReturn(connection);
+            pools.put(workload, pool);
+            connections.put(workload, connection);
+        }
+        WorkloadRoutingDataSource routing = new WorkloadRoutingDataSource(pools);
+
+        assertThat(routing.getConnection()).isSameAs(connections.get(Workload.BACKGROUND));
+        try (Workload.Scope ignored = Workload.ONLINE.open()) {
+            assertThat(routing.getConnection()).isSameAs(connections.get(Workload.ONLINE));
+        }
+        try (Workload.Scope ignored = Workload.BOT.open()) {
+            assertThat(routing.getConnection()).isSameAs(connections.get(Workload.BOT));
+        }
+        assertThat(routing.getConnection()).isSameAs(connections.get(Workload.BACKGROUND));
+    }
+
+    @Test
+    void shouldRequirePoolForEveryWorkload() {
+        Map<Workload, DataSource> pools = new EnumMap<>(Workload.class);
+        pools.put(Workload.ONLINE, Mockito.mock(DataSource.class));
+
+        assertThatThrownBy(() -> new WorkloadRoutingDataSource(pools))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void close_shouldClosePools() throws Exception {
+        Map<Workload, DataSource> pools = new EnumMap<>(Workload.class);
+        for (Workload workload : Workload.values()) {
+            pools.put(workload, Mockito.mock(DataSource.class,
+                    Mockito.withSettings().extraInterfaces(AutoCloseable.class)));
+        }
+
+        new WorkloadRoutingDataSource(pools).close();
+
+        for (DataSource pool : pools.values()) {
+            verify((AutoCloseable) pool).close();
+        }
+    }
+}
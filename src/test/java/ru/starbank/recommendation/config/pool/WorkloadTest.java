@@ -0,0 +1,43 @@
+package ru.starbank.recommendation.config.pool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WorkloadTest {
+
+    @Test
+    void scope_shouldRestorePreviousWorkload() {
+        assertThat(Workload.current()).isEqualTo(Workload.BACKGROUND);
+
+        try (Workload.Scope online = Workload.ONLINE.open()) {
+            try (Workload.Scope bot = Workload.BOT.open()) {
+                assertThat(Workload.current()).isEqualTo(Workload.BOT);
+            }
+            assertThat(Workload.current()).isEqualTo(Workload.ONLINE);
+        }
+        assertThat(Workload.current()).isEqualTo(Workload.BACKGROUND);
+    }
+
+    @Test
+    void propagatingExecutor_shouldRunTaskWithSubmitterWorkload() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Executor executor = Workload.propagating(pool);
+
+            Workload inTask = Workload.BOT.call(() ->
+                    CompletableFuture.supplyAsync(Workload::current, executor).join());
+            Workload afterTask = CompletableFuture.supplyAsync(Workload::current, executor).join();
+
+            assertThat(inTask).isEqualTo(Workload.BOT);
+            assertThat(afterTask).isEqualTo(Workload.BACKGROUND);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ColumnarAggregatesTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    @Test
+    void shouldAnswerPerUser_fromColumns() {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+
+        ColumnarAggregates aggregates = ColumnarAggregates.builder()
+                                                          .add(alice, "DEBIT", "DEPOSIT", 3, 3000)
+                                                          .add(alice, "DEBIT", "WITHDRAW", 2, 1000)
+                                                          .add(bob, "SAVING", "DEPOSIT", 1, 500)
+                                                          .build();
+
+        assertThat(aggregates.userCount()).isEqualTo(2);
+        assertThat(aggregates.countTransactions(alice, "DEBIT")).isEqualTo(5);
+        assertThat(aggregates.sumAmount(alice, "DEBIT", "WITHDRAW")).isEqualTo(1000);
+        assertThat(aggregates.hasAnyTransaction(alice, "SAVING")).isFalse();
+        assertThat(aggregates.sumAmount(bob, "SAVING", "DEPOSIT")).isEqualTo(500);
+        assertThat(aggregates.aggregatesFor(alice, TYPES).sumAmount("DEBIT", "DEPOSIT")).isEqualTo(3000);
+    }
+
+    @Test
+    void unknownUserOrType_shouldReadAsZero() {
+        ColumnarAggregates aggregates = ColumnarAggregates.builder()
+                                                          .add(UUID.randomUUID(), "DEBIT", "DEPOSIT", 1, 100)
+                                                          .build();
+
+        UUID stranger = UUID.randomUUID();
+        assertThat(aggregates.hasAnyTransaction(stranger, "DEBIT")).isFalse();
+        assertThat(aggregates.aggregatesFor(stranger, TYPES).isEmpty()).isTrue();
+        assertThat(ColumnarAggregates.empty().sumAmount(stranger, "CREDIT", "WITHDRAW")).isZero();
+    }
+
+    @Test
+    void shouldKeepAllUsers_whenIndexAndColumnsGrow() {
+        List<UUID> users = new ArrayList<>();
+        ColumnarAggregates.Builder builder = ColumnarAggregates.builder(4);
+        for (int i = 0; i < 10_000; i++) {
+            UUID userId = UUID.randomUUID();
+            users.add(userId);
+            builder.add(userId, "DEBIT", "DEPOSIT", 1, i);
+        }
+
+        ColumnarAggregates aggregates = builder.build();
+
+        assertThat(aggregates.userCount()).isEqualTo(10_000);
+        for (int i = 0; i < users.size(); i++) {
+            assertThat(aggregates.sumAmount(users.get(i), "DEBIT", "DEPOSIT")).isEqualTo(i);
+        }
+    }
+
+    @Test
+    void snapshotFile_shouldRoundTripThroughMappedFile(@TempDir Path dir) throws Exception {
+        UUID alice = UUID.randomUUID();
+        UUID bob = UUID.randomUUID();
+        ColumnarAggregates aggregates = ColumnarAggregates.builder()
+                                                          .add(alice, "DEBIT", "DEPOSIT", 3, 3000)
+                                                          .add(bob, "INVEST", "WITHDRAW", 1, 700)
+                                                          .build();
+        Instant createdAt = Instant.ofEpochMilli(1_700_000_000_000L);
+        Path file = dir.resolve("aggregates.bin");
+
+        ColumnarAggregatesFile.write(aggregates, createdAt, file);
+        ColumnarAggregatesFile.Mapped mapped = ColumnarAggregatesFile.map(file);
+
+        assertThat(mapped.createdAt()).isEqualTo(createdAt);
+        ColumnarAggregates restored = mapped.aggregates();
+        assertThat(restored.userCount()).isEqualTo(2);
+        assertThat(restored.countTransactions(alice, "DEBIT")).isEqualTo(3);
+        assertThat(restored.sumAmount(alice, "DEBIT", "DEPOSIT")).isEqualTo(3000);
+        assertThat(restored.sumAmount(bob, "INVEST", "WITHDRAW")).isEqualTo(700);
+        assertThat(restored.hasAnyTransaction(bob, "DEBIT")).isFalse();
+    }
+
+    @Test
+    void snapshotFile_missing_shouldMapToNull(@TempDir Path dir) throws Exception {
+        assertThat(ColumnarAggregatesFile.map(dir.resolve("absent.bin"))).isNull();
+    }
+}
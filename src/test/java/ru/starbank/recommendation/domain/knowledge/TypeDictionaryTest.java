@@ -0,0 +1,81 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TypeDictionaryTest {
+
+    @Test
+    void intern_shouldReturnStableOrdinal_andFindShouldNotRegister() {
+        TypeDictionary dictionary = new TypeDictionary();
+
+        assertThat(dictionary.find("DEBIT")).isEqualTo(-1);
+        int debit = dictionary.intern("DEBIT");
+        int deposit = dictionary.intern("DEPOSIT");
+
+        assertThat(dictionary.intern("DEBIT")).isEqualTo(debit);
+        assertThat(dictionary.find("DEPOSIT")).isEqualTo(deposit);
+        assertThat(dictionary.nameOf(debit)).isEqualTo("DEBIT");
+        assertThat(dictionary.find("CREDIT")).isEqualTo(-1);
+        assertThat(dictionary.size()).isEqualTo(2);
+    }
+
+    @Test
+    void dictionaries_shouldNotShareOrdinals() {
+        TypeDictionary first = new TypeDictionary();
+        TypeDictionary second = new TypeDictionary();
+
+        first.intern("DEBIT");
+
+        assertThat(second.find("DEBIT")).isEqualTo(-1);
+        assertThat(second.size()).isZero();
+    }
+
+    @Test
+    void concurrentIntern_shouldAssignEachTypeOneOrdinal() throws Exception {
+        TypeDictionary dictionary = new TypeDictionary();
+        int threads = 8;
+        int types = 200;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<int[]>> tasks = IntStream.range(0, threads)
+                                                   .<Callable<int[]>>mapToObj(t -> () -> {
+                                                       start.await();
+                                                       int[] ordinals = new int[types];
+                                                       for (int i = 0; i < types; i++) {
+                                                           ordinals[i] = dictionary.intern("TYPE_" + i);
+                                                       }
+                                                       return ordinals;
+                                                   })
+                                                   .toList();
+            List<Future<int[]>> futures = tasks.stream().map(executor::submit).toList();
+            start.countDown();
+
+            int[] expected = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertThat(future.get()).containsExactly(expected);
+            }
+            Set<Integer> distinct = new HashSet<>();
+            for (int i = 0; i < types; i++) {
+                distinct.add(expected[i]);
+                assertThat(dictionary.nameOf(expected[i])).isEqualTo("TYPE_" + i);
+            }
+            assertThat(distinct).hasSize(types);
+            assertThat(dictionary.size()).isEqualTo(types);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
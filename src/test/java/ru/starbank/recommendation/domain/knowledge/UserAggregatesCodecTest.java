@@ -0,0 +1,47 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UserAggregatesCodecTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    @Test
+    void shouldRoundTripPairsAndSequence() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("SAVING", "DEPOSIT", 1, 500)
+                                                  .add("DEBIT", "WITHDRAW", 2, 1000)
+                                                  .sequence(42)
+                                                  .build();
+
+        UserAggregates decoded = UserAggregatesCodec.decode(UserAggregatesCodec.encode(aggregates), TYPES);
+
+        assertThat(decoded).isEqualTo(aggregates);
+        assertThat(decoded.sumAmount("DEBIT", "WITHDRAW")).isEqualTo(1000);
+        assertThat(UserAggregatesCodec.decode(UserAggregatesCodec.encode(UserAggregates.empty()), TYPES)).isEqualTo(UserAggregates.empty());
+    }
+
+    @Test
+    void decode_shouldResolveTypesByName_inAnotherDictionary() {
+        TypeDictionary writer = new TypeDictionary();
+        writer.intern("INVEST");
+        UserAggregates aggregates = UserAggregates.builder(writer)
+                                                  .add("DEBIT", "DEPOSIT", 3, 3000)
+                                                  .add("INVEST", "WITHDRAW", 1, 700)
+                                                  .sequence(5)
+                                                  .openGaps(new long[]{3})
+                                                  .build();
+
+        TypeDictionary reader = new TypeDictionary();
+        reader.intern("SAVING");
+        UserAggregates decoded = UserAggregatesCodec.decode(UserAggregatesCodec.encode(aggregates), reader);
+
+        assertThat(decoded.sumAmount("DEBIT", "DEPOSIT")).isEqualTo(3000);
+        assertThat(decoded.countTransactions("INVEST")).isEqualTo(1);
+        assertThat(decoded.sumAmount("INVEST", "WITHDRAW")).isEqualTo(700);
+        assertThat(decoded.sequence()).isEqualTo(5);
+        assertThat(decoded.openGaps()).containsExactly(3);
+    }
+}
@@ -0,0 +1,164 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserAggregatesTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    @Test
+    void shouldAnswerCountsAndSums_fromGroupedRows() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 3, 3000)
+                                                  .add("DEBIT", "WITHDRAW", 2, 1000)
+                                                  .add("SAVING", "DEPOSIT", 1, 500)
+                                                  .build();
+
+        assertThat(aggregates.hasAnyTransaction("DEBIT")).isTrue();
+        assertThat(aggregates.countTransactions("DEBIT")).isEqualTo(5);
+        assertThat(aggregates.sumAmount("DEBIT", "DEPOSIT")).isEqualTo(3000);
+        assertThat(aggregates.sumAmount("DEBIT", "WITHDRAW")).isEqualTo(1000);
+        assertThat(aggregates.sumAmount("SAVING", "DEPOSIT")).isEqualTo(500);
+    }
+
+    @Test
+    void shouldReturnZeros_forMissingTypes() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .build();
+
+        assertThat(aggregates.hasAnyTransaction("INVEST")).isFalse();
+        assertThat(aggregates.countTransactions("INVEST")).isZero();
+        assertThat(aggregates.sumAmount("DEBIT", "WITHDRAW")).isZero();
+        assertThat(aggregates.sumAmount("CREDIT", "DEPOSIT")).isZero();
+    }
+
+    @Test
+    void emptyBuilder_shouldProduceEmptyAggregates() {
+        assertThat(UserAggregates.builder(TYPES).build().isEmpty()).isTrue();
+        assertThat(UserAggregates.empty().hasAnyTransaction("DEBIT")).isFalse();
+    }
+
+    @Test
+    void withTransaction_shouldApplyNew_andRejectPossiblyCounted() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .sequence(10)
+                                                  .build();
+
+        UserAggregates updated = aggregates.withTransaction("DEBIT", "DEPOSIT", 50, 11);
+
+        assertThat(updated.sumAmount("DEBIT", "DEPOSIT")).isEqualTo(150);
+        assertThat(updated.countTransactions("DEBIT")).isEqualTo(2);
+        assertThat(updated.sequence()).isEqualTo(11);
+        assertThat(aggregates.sumAmount("DEBIT", "DEPOSIT")).isEqualTo(100);
+
+        assertThat(updated.canApply(11)).isFalse();
+        assertThatThrownBy(() -> updated.withTransaction("DEBIT", "DEPOSIT", 50, 11))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void withTransaction_shouldFillOpenGap_belowSequence() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .sequence(10)
+                                                  .openGaps(new long[]{8, 6})
+                                                  .build();
+
+        assertThat(aggregates.canApply(7)).isFalse();
+        assertThat(aggregates.canApply(8)).isTrue();
+
+        UserAggregates updated = aggregates.withTransaction("DEBIT", "DEPOSIT", 50, 8);
+
+        assertThat(updated.sumAmount("DEBIT", "DEPOSIT")).isEqualTo(150);
+        assertThat(updated.sequence()).isEqualTo(10);
+        assertThat(updated.openGaps()).containsExactly(6);
+        assertThat(updated.canApply(8)).isFalse();
+    }
+
+    @Test
+    void isAtOrAfter_shouldRequireSequenceAndNoExtraGaps() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .sequence(10)
+                                                  .openGaps(new long[]{6})
+                                                  .build();
+
+        assertThat(aggregates.isAtOrAfter(10, new long[]{6})).isTrue();
+        assertThat(aggregates.isAtOrAfter(8, new long[]{6, 7})).isTrue();
+        assertThat(aggregates.isAtOrAfter(5, new long[0])).isTrue();
+        assertThat(aggregates.isAtOrAfter(8, new long[0])).isFalse();
+        assertThat(aggregates.isAtOrAfter(11, new long[]{6})).isFalse();
+    }
+
+    @Test
+    void packedPairs_shouldNotDependOnInsertionOrder() {
+        UserAggregates forward = UserAggregates.builder(TYPES)
+                                               .add("DEBIT", "DEPOSIT", 1, 100)
+                                               .add("SAVING", "WITHDRAW", 2, 200)
+                                               .add("INVEST", "DEPOSIT", 3, 300)
+                                               .build();
+        UserAggregates backward = UserAggregates.builder(TYPES)
+                                                .add("INVEST", "DEPOSIT", 3, 300)
+                                                .add("SAVING", "WITHDRAW", 2, 200)
+                                                .add("DEBIT", "DEPOSIT", 1, 100)
+                                                .build();
+
+        assertThat(backward).isEqualTo(forward);
+        assertThat(backward.hashCode()).isEqualTo(forward.hashCode());
+        assertThat(backward.productTypes()).containsExactlyInAnyOrder("DEBIT", "SAVING", "INVEST");
+    }
+
+    @Test
+    void builder_shouldMergeRepeatedPairs_andGrowPastInitialCapacity() {
+        UserAggregates.Builder builder = UserAggregates.builder(TYPES);
+        for (int i = 0; i < 20; i++) {
+            builder.add("PRODUCT_" + i, "DEPOSIT", 1, i);
+        }
+        builder.add("PRODUCT_7", "DEPOSIT", 2, 10);
+
+        UserAggregates aggregates = builder.build();
+
+        assertThat(aggregates.productTypes()).hasSize(20);
+        assertThat(aggregates.countTransactions("PRODUCT_7")).isEqualTo(3);
+        assertThat(aggregates.sumAmount("PRODUCT_7", "DEPOSIT")).isEqualTo(17);
+        assertThat(aggregates.sumAmount("PRODUCT_19", "DEPOSIT")).isEqualTo(19);
+    }
+
+    @Test
+    void withTransaction_shouldInsertNewPair_keepingLookupsIntact() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .add("SAVING", "DEPOSIT", 1, 500)
+                                                  .sequence(1)
+                                                  .build();
+
+        UserAggregates updated = aggregates.withTransaction("CREDIT", "WITHDRAW", 70, 2);
+
+        assertThat(updated.sumAmount("CREDIT", "WITHDRAW")).isEqualTo(70);
+        assertThat(updated.sumAmount("DEBIT", "DEPOSIT")).isEqualTo(100);
+        assertThat(updated.sumAmount("SAVING", "DEPOSIT")).isEqualTo(500);
+        assertThat(updated).isEqualTo(UserAggregates.builder(TYPES)
+                                                    .add("SAVING", "DEPOSIT", 1, 500)
+                                                    .add("CREDIT", "WITHDRAW", 1, 70)
+                                                    .add("DEBIT", "DEPOSIT", 1, 100)
+                                                    .sequence(2)
+                                                    .build());
+    }
+
+    @Test
+    void typeUnknownToDictionary_shouldReadAsZero_withoutRegistering() {
+        TypeDictionary dictionary = new TypeDictionary();
+        UserAggregates aggregates = UserAggregates.builder(dictionary)
+                                                  .add("DEBIT", "DEPOSIT", 1, 100)
+                                                  .build();
+
+        assertThat(aggregates.countTransactions("CREDIT")).isZero();
+        assertThat(aggregates.sumAmount("DEBIT", "WITHDRAW")).isZero();
+        assertThat(dictionary.size()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,67 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserIdBloomFilterTest {
+
+    private static final int PROBES = 200_000;
+
+    @Test
+    void mightContain_shouldNeverMissAddedUsers() {
+        UserIdBloomFilter filter = UserIdBloomFilter.create(50_000, 0.01);
+        List<UUID> added = users(new Random(1), 50_000);
+
+        added.forEach(filter::put);
+
+        assertThat(added).allMatch(filter::mightContain);
+    }
+
+    /**
+     * Доля ложноположительных не выше заданной и близка к теоретической для выбранных размера и числа хешей
+     * (размер округляется вверх до степени двойки, поэтому фактическая доля обычно ниже заданной).
+     */
+    @ParameterizedTest
+    @CsvSource({"10000, 0.01", "20000, 0.05", "2000, 0.02"})
+    void falsePositiveRate_shouldStayNearTarget(int insertions, double target) {
+        Random random = new Random(42);
+        UserIdBloomFilter filter = UserIdBloomFilter.create(insertions, target);
+        users(random, insertions).forEach(filter::put);
+
+        int falsePositives = 0;
+        for (UUID probe : users(random, PROBES)) {
+            if (filter.mightContain(probe)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / PROBES;
+        double expected = Math.pow(
+                1 - Math.exp(-(double) filter.hashCount() * insertions / filter.bitSize()), filter.hashCount());
+
+        assertThat(rate).isLessThanOrEqualTo(target);
+        assertThat(rate).isBetween(expected * 0.5, expected * 1.5 + 5.0 / PROBES);
+    }
+
+    @Test
+    void create_shouldRejectInvalidRate() {
+        assertThatThrownBy(() -> UserIdBloomFilter.create(100, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> UserIdBloomFilter.create(100, 1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<UUID> users(Random random, int count) {
+        List<UUID> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,74 @@
+package ru.starbank.recommendation.domain.knowledge;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserIdsFileTest {
+
+    @Test
+    void shouldRoundTripUserIdsInOrder(@TempDir Path dir) throws Exception {
+        List<UUID> userIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        Instant createdAt = Instant.ofEpochMilli(1_700_000_000_000L);
+        Path file = dir.resolve("nested").resolve("keys.bin");
+
+        UserIdsFile.write(userIds, createdAt, file);
+        UserIdsFile.Saved saved = UserIdsFile.read(file);
+
+        assertThat(saved.userIds()).containsExactlyElementsOf(userIds);
+        assertThat(saved.createdAt()).isEqualTo(createdAt);
+        try (var files = Files.list(file.getParent())) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void write_shouldReplaceExistingFile(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("keys.bin");
+        UserIdsFile.write(List.of(UUID.randomUUID(), UUID.randomUUID()), Instant.now(), file);
+        UUID latest = UUID.randomUUID();
+
+        UserIdsFile.write(List.of(latest), Instant.now(), file);
+
+        assertThat(UserIdsFile.read(file).userIds()).containsExactly(latest);
+    }
+
+    @Test
+    void read_shouldReturnNull_forMissingFileOrOtherVersion(@TempDir Path dir) throws Exception {
+        assertThat(UserIdsFile.read(dir.resolve("absent.bin"))).isNull();
+
+        Path otherVersion = dir.resolve("v2.bin");
+        writeHeader(otherVersion, 0x53425755, UserIdsFile.VERSION + 1, 0);
+        assertThat(UserIdsFile.read(otherVersion)).isNull();
+    }
+
+    @Test
+    void read_shouldReject_foreignOrTruncatedFile(@TempDir Path dir) throws Exception {
+        Path foreign = dir.resolve("foreign.bin");
+        writeHeader(foreign, 0x12345678, UserIdsFile.VERSION, 0);
+        assertThatThrownBy(() -> UserIdsFile.read(foreign)).isInstanceOf(IOException.class);
+
+        Path truncated = dir.resolve("truncated.bin");
+        writeHeader(truncated, 0x53425755, UserIdsFile.VERSION, 1_000);
+        assertThatThrownBy(() -> UserIdsFile.read(truncated)).isInstanceOf(IOException.class);
+    }
+
+    private static void writeHeader(Path file, int magic, int version, int count) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(file))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(count);
+        }
+    }
+}
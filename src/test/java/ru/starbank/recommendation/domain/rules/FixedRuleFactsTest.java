@@ -0,0 +1,61 @@
+package ru.starbank.recommendation.domain.rules;
+
+import org.junit.jupiter.api.Test;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FixedRuleFactsTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    @Test
+    void invest500_shouldRequireDebitNoInvestAndSavingDeposits() {
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 0, 0, 1_001).matchesInvest500()).isTrue();
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 0, 0, 1_000).matchesInvest500()).isFalse();
+        assertThat(new FixedRuleFacts(true, 1, 1, 0, 0, 0, 5_000).matchesInvest500()).isFalse();
+        assertThat(new FixedRuleFacts(true, 0, 0, 0, 0, 0, 5_000).matchesInvest500()).isFalse();
+    }
+
+    @Test
+    void topSaving_shouldRequireLargeDepositsAndPositiveDebitBalance() {
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 50_000, 10_000, 0).matchesTopSaving()).isTrue();
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 1_000, 500, 50_000).matchesTopSaving()).isTrue();
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 50_000, 50_000, 0).matchesTopSaving()).isFalse();
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 49_999, 0, 49_999).matchesTopSaving()).isFalse();
+    }
+
+    @Test
+    void simpleCredit_shouldRequireNoCreditAndLargeWithdrawals() {
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 200_000, 100_001, 0).matchesSimpleCredit()).isTrue();
+        assertThat(new FixedRuleFacts(true, 1, 0, 1, 200_000, 100_001, 0).matchesSimpleCredit()).isFalse();
+        assertThat(new FixedRuleFacts(true, 1, 0, 0, 200_000, 100_000, 0).matchesSimpleCredit()).isFalse();
+    }
+
+    @Test
+    void unknownUser_shouldMatchNothing() {
+        FixedRuleFacts facts = new FixedRuleFacts(false, 1, 0, 0, 200_000, 150_000, 60_000);
+
+        assertThat(facts.matchesInvest500()).isFalse();
+        assertThat(facts.matchesTopSaving()).isFalse();
+        assertThat(facts.matchesSimpleCredit()).isFalse();
+    }
+
+    @Test
+    void fromAggregates_shouldReadTypeCountsAndSums() {
+        UserAggregates aggregates = UserAggregates.builder(TYPES)
+                                                  .add("DEBIT", "DEPOSIT", 3, 200_000)
+                                                  .add("DEBIT", "WITHDRAW", 2, 150_000)
+                                                  .add("SAVING", "DEPOSIT", 1, 2_000)
+                                                  .build();
+
+        FixedRuleFacts facts = FixedRuleFacts.from(aggregates);
+
+        assertThat(facts).isEqualTo(new FixedRuleFacts(true, 5, 0, 0, 200_000, 150_000, 2_000));
+        assertThat(facts.matchesInvest500()).isTrue();
+        assertThat(facts.matchesTopSaving()).isTrue();
+        assertThat(facts.matchesSimpleCredit()).isTrue();
+        assertThat(FixedRuleFacts.from(UserAggregates.empty()).userExists()).isFalse();
+    }
+}
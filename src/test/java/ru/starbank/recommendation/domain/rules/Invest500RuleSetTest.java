@@ -2,11 +2,16 @@ package ru.starbank.recommendation.domain.rules;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import ru.starbank.recommendation.domain.dto.RecommendationDto;
 import ru.starbank.recommendation.repository.RecommendationRepository;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class Invest500RuleSetTest {
@@ -33,4 +38,24 @@ class Invest500RuleSetTest {
 
         assertThat(ruleSet.check(userId)).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void checkAll_shouldReturnOnlyMatchingUsers_fromCohortFacts() {
+        RecommendationRepository repo = Mockito.mock(RecommendationRepository.class);
+        Invest500RuleSet ruleSet = new Invest500RuleSet(repo);
+
+        UUID matching = UUID.randomUUID();
+        UUID notMatching = UUID.randomUUID();
+        List<UUID> cohort = List.of(matching, notMatching);
+        when(repo.fixedRuleFacts(cohort)).thenReturn(Map.of(
+                matching, new FixedRuleFacts(true, 1, 0, 0, 0, 0, 5_000),
+                notMatching, new FixedRuleFacts(true, 1, 1, 0, 0, 0, 5_000)
+        ));
+
+        Map<UUID, RecommendationDto> matched = ruleSet.checkAll(cohort);
+
+        assertThat(matched).containsOnlyKeys(matching);
+        assertThat(matched.get(matching).name()).isEqualTo("Invest 500");
+        verify(repo, never()).matchesInvest500(matching);
+    }
+}
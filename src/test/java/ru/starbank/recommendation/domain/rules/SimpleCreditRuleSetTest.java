@@ -2,11 +2,16 @@ package ru.starbank.recommendation.domain.rules;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import ru.starbank.recommendation.domain.dto.RecommendationDto;
 import ru.starbank.recommendation.repository.RecommendationRepository;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class SimpleCreditRuleSetTest {
@@ -33,4 +38,24 @@ class SimpleCreditRuleSetTest {
 
         assertThat(ruleSet.check(userId)).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void checkAll_shouldReturnOnlyMatchingUsers_fromCohortFacts() {
+        RecommendationRepository repo = Mockito.mock(RecommendationRepository.class);
+        SimpleCreditRuleSet ruleSet = new SimpleCreditRuleSet(repo);
+
+        UUID matching = UUID.randomUUID();
+        UUID notMatching = UUID.randomUUID();
+        List<UUID> cohort = List.of(matching, notMatching);
+        when(repo.fixedRuleFacts(cohort)).thenReturn(Map.of(
+                matching, new FixedRuleFacts(true, 1, 0, 0, 300_000, 150_000, 0),
+                notMatching, new FixedRuleFacts(true, 1, 0, 1, 300_000, 150_000, 0)
+        ));
+
+        Map<UUID, RecommendationDto> matched = ruleSet.checkAll(cohort);
+
+        assertThat(matched).containsOnlyKeys(matching);
+        assertThat(matched.get(matching).name()).isEqualTo("Простой кредит");
+        verify(repo, never()).matchesSimpleCredit(matching);
+    }
+}
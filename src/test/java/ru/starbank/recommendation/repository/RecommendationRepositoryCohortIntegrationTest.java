@@ -0,0 +1,48 @@
+package ru.starbank.recommendation.repository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import ru.starbank.recommendation.domain.rules.FixedRuleFacts;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Set-based fixed rule facts for a cohort match the single-user statement.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+class RecommendationRepositoryCohortIntegrationTest {
+
+    private static final UUID GOLDEN_USER = UUID.fromString("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+
+    @Autowired
+    private RecommendationRepository recommendationRepository;
+
+    @Test
+    void cohortFacts_shouldMatchSingleUserFacts() {
+        UUID stranger = UUID.randomUUID();
+
+        Map<UUID, FixedRuleFacts> facts = recommendationRepository.fixedRuleFacts(List.of(GOLDEN_USER, stranger));
+
+        assertThat(facts).containsOnlyKeys(GOLDEN_USER, stranger);
+        assertThat(facts.get(GOLDEN_USER)).isEqualTo(recommendationRepository.fixedRuleFacts(GOLDEN_USER));
+        assertThat(facts.get(GOLDEN_USER).debitCount()).isEqualTo(5);
+        assertThat(facts.get(stranger).userExists()).isFalse();
+    }
+
+    @Test
+    void singleUserChecks_shouldEvaluateFixedRuleFacts() {
+        FixedRuleFacts facts = recommendationRepository.fixedRuleFacts(GOLDEN_USER);
+
+        assertThat(recommendationRepository.matchesInvest500(GOLDEN_USER)).isEqualTo(facts.matchesInvest500());
+        assertThat(recommendationRepository.matchesTopSaving(GOLDEN_USER)).isEqualTo(facts.matchesTopSaving());
+        assertThat(recommendationRepository.matchesSimpleCredit(GOLDEN_USER)).isEqualTo(facts.matchesSimpleCredit());
+        assertThat(recommendationRepository.matchesInvest500(UUID.randomUUID())).isFalse();
+    }
+}
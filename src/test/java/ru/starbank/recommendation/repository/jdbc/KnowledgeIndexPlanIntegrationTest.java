@@ -0,0 +1,50 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Миграции индексов knowledge DB (knowledge.liquibase.enabled=true):
+ * индекс создан и используется планировщиком H2 для горячего агрегата.
+ */
+@SpringBootTest(properties = "knowledge.liquibase.enabled=true")
+@ActiveProfiles("test")
+class KnowledgeIndexPlanIntegrationTest {
+
+    private static final String INDEX_NAME = "IDX_TRANSACTIONS_USER_PRODUCT_TYPE";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void coveringIndex_shouldExist() {
+        Integer count = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*)
+                FROM INFORMATION_SCHEMA.INDEXES
+                WHERE UPPER(TABLE_NAME) = 'TRANSACTIONS'
+                  AND UPPER(INDEX_NAME) = ?
+                """, Integer.class, INDEX_NAME);
+
+        assertThat(count).isEqualTo(1);
+    }
+
+    @Test
+    void hotAggregate_shouldUseCoveringIndex() {
+        String plan = jdbcTemplate.queryForObject("""
+                EXPLAIN
+                SELECT COALESCE(SUM(t.amount), 0)
+                FROM transactions t
+                WHERE t.user_id = 'aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa'
+                  AND t.product_id IN ('bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb')
+                  AND t.type = 'DEPOSIT'
+                """, String.class);
+
+        assertThat(plan).isNotNull();
+        assertThat(plan.toUpperCase()).contains(INDEX_NAME);
+    }
+}
@@ -0,0 +1,56 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.starbank.recommendation.config.pool.QueryDeadline;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KnowledgeShardsTest {
+
+    @Test
+    void forUser_shouldRouteByUserIdHash() throws Exception {
+        JdbcTemplate first = Mockito.mock(JdbcTemplate.class);
+        JdbcTemplate second = Mockito.mock(JdbcTemplate.class);
+
+        try (KnowledgeShards shards = new KnowledgeShards(List.of(first, second), List.of())) {
+            UUID even = new UUID(0L, 4L);
+            UUID odd = new UUID(1L, 2L);
+
+            assertThat(shards.shardOf(even)).isZero();
+            assertThat(shards.forUser(even)).isSameAs(first);
+            assertThat(shards.forUser(odd)).isSameAs(second);
+        }
+    }
+
+    @Test
+    void fanOut_shouldQueryEveryShardInOrder() throws Exception {
+        JdbcTemplate first = Mockito.mock(JdbcTemplate.class);
+        JdbcTemplate second = Mockito.mock(JdbcTemplate.class);
+
+        try (KnowledgeShards shards = new KnowledgeShards(List.of(first, second), List.of())) {
+            List<String> results = shards.fanOut(jdbc -> jdbc == first ? "first" : "second");
+
+            assertThat(results).containsExactly("first", "second");
+        }
+    }
+
+    @Test
+    void fanOut_shouldCarryCallerDeadlineToShards() throws Exception {
+        JdbcTemplate first = Mockito.mock(JdbcTemplate.class);
+        JdbcTemplate second = Mockito.mock(JdbcTemplate.class);
+
+        try (KnowledgeShards shards = new KnowledgeShards(List.of(first, second), List.of())) {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            List<Long> remaining = QueryDeadline.call(deadline, () -> shards.fanOut(jdbc -> QueryDeadline.remainingNanos()));
+
+            assertThat(remaining).hasSize(2).allSatisfy(nanos -> assertThat(nanos).isPositive());
+            assertThat(QueryDeadline.remainingNanos()).isEqualTo(-1);
+        }
+    }
+}
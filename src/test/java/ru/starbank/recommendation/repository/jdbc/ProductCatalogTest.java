@@ -0,0 +1,110 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProductCatalogTest {
+
+    private static final UUID DEBIT_ID = UUID.fromString("bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb");
+
+    @Test
+    void shouldResolveTypesAndIds_fromSingleLoad() throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        stubProducts(jdbcTemplate);
+
+        ProductCatalog catalog = new ProductCatalog(KnowledgeShards.single(jdbcTemplate), 60_000);
+
+        assertThat(catalog.typeOf(DEBIT_ID)).isEqualTo("DEBIT");
+        assertThat(catalog.productIdsOf("DEBIT")).containsExactly(DEBIT_ID);
+        assertThat(catalog.productIdsOf("INVEST")).isEmpty();
+
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void typeOf_shouldReloadCatalog_whenProductIsUnknown() throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        stubProducts(jdbcTemplate);
+
+        ProductCatalog catalog = new ProductCatalog(KnowledgeShards.single(jdbcTemplate), 0);
+
+        assertThat(catalog.typeOf(UUID.randomUUID())).isNull();
+
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void productIdsOf_shouldReloadCatalog_whenTypeIsUnknown() throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        stubProducts(jdbcTemplate);
+
+        ProductCatalog catalog = new ProductCatalog(KnowledgeShards.single(jdbcTemplate), 0);
+
+        assertThat(catalog.productIdsOf("INVEST")).isEmpty();
+
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void misses_shouldNotReloadCatalog_moreOftenThanInterval() throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        stubProducts(jdbcTemplate);
+
+        ProductCatalog catalog = new ProductCatalog(KnowledgeShards.single(jdbcTemplate), 60_000);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(catalog.typeOf(UUID.randomUUID())).isNull();
+            assertThat(catalog.productIdsOf("INVEST")).isEmpty();
+        }
+
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void reloadChanges_shouldReportProductMovedToNewType() throws Exception {
+        JdbcTemplate jdbcTemplate = Mockito.mock(JdbcTemplate.class);
+        AtomicReference<String> debitType = new AtomicReference<>("DEBIT");
+        stubProducts(jdbcTemplate, debitType);
+
+        ProductCatalog catalog = new ProductCatalog(KnowledgeShards.single(jdbcTemplate), 60_000);
+        assertThat(catalog.typeOf(DEBIT_ID)).isEqualTo("DEBIT");
+        assertThat(catalog.reloadChanges()).isEmpty();
+
+        debitType.set("PREMIUM");
+
+        assertThat(catalog.reloadChanges()).containsExactly(DEBIT_ID);
+        assertThat(catalog.typeOf(DEBIT_ID)).isEqualTo("PREMIUM");
+        assertThat(catalog.productIdsOf("PREMIUM")).containsExactly(DEBIT_ID);
+        assertThat(catalog.productIdsOf("DEBIT")).isEmpty();
+    }
+
+    private void stubProducts(JdbcTemplate jdbcTemplate) throws Exception {
+        stubProducts(jdbcTemplate, new AtomicReference<>("DEBIT"));
+    }
+
+    private void stubProducts(JdbcTemplate jdbcTemplate, AtomicReference<String> debitType) throws Exception {
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString("id")).thenReturn(DEBIT_ID.toString());
+            when(rs.getString("type")).thenReturn(debitType.get());
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+}
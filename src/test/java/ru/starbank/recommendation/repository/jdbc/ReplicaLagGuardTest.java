@@ -0,0 +1,43 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.junit.jupiter.api.Test;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReplicaLagGuardTest {
+
+    @Test
+    void changedUser_shouldRequirePrimary_untilLagWindowPasses() throws Exception {
+        KnowledgeProperties properties = new KnowledgeProperties();
+        properties.getReadReplicas().setEnabled(true);
+        properties.getReadReplicas().setMaxLagMs(50);
+        ReplicaLagGuard guard = new ReplicaLagGuard(properties);
+        UUID changed = UUID.randomUUID();
+
+        guard.markChanged(changed);
+
+        assertThat(guard.requiresPrimary(changed)).isTrue();
+        assertThat(guard.requiresPrimary(UUID.randomUUID())).isFalse();
+
+        Thread.sleep(100);
+
+        assertThat(guard.requiresPrimary(changed)).isFalse();
+    }
+
+    @Test
+    void withoutReplicas_shouldNotTrackChanges() {
+        ReplicaLagGuard guard = new ReplicaLagGuard(new KnowledgeProperties());
+        UUID changed = UUID.randomUUID();
+        AtomicBoolean loaded = new AtomicBoolean();
+
+        guard.markChanged(changed);
+
+        assertThat(guard.requiresPrimary(changed)).isFalse();
+        assertThat(guard.load(changed, () -> loaded.getAndSet(true))).isFalse();
+        assertThat(loaded).isTrue();
+    }
+}
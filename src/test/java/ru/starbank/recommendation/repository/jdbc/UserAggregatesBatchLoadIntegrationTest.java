@@ -0,0 +1,49 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Пакетная загрузка агрегатов ({@code user_id IN (...)}) совпадает с загрузкой по одному пользователю.
+ */
+@SpringBootTest(properties = "knowledge.aggregates.load-batch-size=2")
+@ActiveProfiles("test")
+class UserAggregatesBatchLoadIntegrationTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserAggregatesLoader loader;
+
+    @Autowired
+    private KnowledgeRepository knowledgeRepository;
+
+    @Test
+    void batchLoad_shouldMatchSingleUserLoad() {
+        List<UUID> userIds = new ArrayList<>(jdbcTemplate.query(
+                "SELECT DISTINCT user_id FROM transactions",
+                (rs, rowNum) -> UUID.fromString(rs.getString("user_id"))));
+        UUID stranger = UUID.randomUUID();
+        userIds.add(stranger);
+
+        Map<UUID, UserAggregates> loaded = knowledgeRepository.aggregatesFor(userIds);
+
+        assertThat(loaded).hasSize(userIds.size());
+        for (UUID userId : userIds) {
+            assertThat(loaded.get(userId)).isEqualTo(loader.loadLive(userId));
+        }
+        assertThat(loaded.get(stranger).isEmpty()).isTrue();
+    }
+}
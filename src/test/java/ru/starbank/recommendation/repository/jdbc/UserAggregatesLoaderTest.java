@@ -0,0 +1,140 @@
+package ru.starbank.recommendation.repository.jdbc;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.cache.InMemorySharedAggregatesCache;
+import ru.starbank.recommendation.repository.cache.SharedAggregatesCache;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserAggregatesLoaderTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    private static final UUID USER_ID = UUID.fromString("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+    private static final UUID DEBIT_ID = UUID.fromString("bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb");
+
+    private static final UserAggregates DEBIT_DEPOSIT = UserAggregates.builder(TYPES)
+                                                                      .add("DEBIT", "DEPOSIT", 1, 100)
+                                                                      .build();
+
+    private JdbcTemplate jdbcTemplate;
+    private SharedAggregatesCache l2;
+    private UserAggregatesLoader loader;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        ProductCatalog productCatalog = mock(ProductCatalog.class);
+        when(productCatalog.typeOf(DEBIT_ID)).thenReturn("DEBIT");
+
+        l2 = new InMemorySharedAggregatesCache(100, Duration.ofMinutes(1), TYPES);
+        ObjectProvider<SharedAggregatesCache> sharedCache = mock(ObjectProvider.class);
+        when(sharedCache.getIfAvailable()).thenReturn(l2);
+
+        loader = new UserAggregatesLoader(
+                KnowledgeShards.single(jdbcTemplate),
+                productCatalog,
+                mock(UserAggregatesTableRepository.class),
+                sharedCache,
+                TYPES,
+                new ReplicaLagGuard(new KnowledgeProperties()),
+                new IngestPosition(),
+                new KnowledgeProperties()
+        );
+    }
+
+    @Test
+    void load_shouldReturnL2Value_withoutDatabase() {
+        l2.put(USER_ID, DEBIT_DEPOSIT, l2.version(USER_ID));
+
+        assertThat(loader.load(USER_ID)).isEqualTo(DEBIT_DEPOSIT);
+
+        verify(jdbcTemplate, never()).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+    }
+
+    @Test
+    void load_shouldReadDatabaseAndFillL2_onL2Miss() throws Exception {
+        stubDebitDeposit(null);
+
+        assertThat(loader.load(USER_ID)).isEqualTo(DEBIT_DEPOSIT);
+        assertThat(l2.get(USER_ID)).isEqualTo(DEBIT_DEPOSIT);
+
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+    }
+
+    @Test
+    void load_shouldNotFillL2_whenUserIsInvalidatedDuringLoad() throws Exception {
+        stubDebitDeposit(() -> l2.evict(USER_ID));
+
+        assertThat(loader.load(USER_ID)).isEqualTo(DEBIT_DEPOSIT);
+        assertThat(l2.get(USER_ID)).isNull();
+    }
+
+    @Test
+    void loadAll_shouldServeL2Hits_andNotFillL2_forUserInvalidatedDuringLoad() throws Exception {
+        UUID other = UUID.fromString("cccccccc-cccc-cccc-cccc-cccccccccccc");
+        l2.put(other, DEBIT_DEPOSIT, l2.version(other));
+
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("user_id")).thenReturn(USER_ID.toString());
+        when(rs.getString("product_id")).thenReturn(DEBIT_ID.toString());
+        when(rs.getString("transaction_type")).thenReturn("DEPOSIT");
+        when(rs.getLong("tx_count")).thenReturn(1L);
+        when(rs.getLong("amount_sum")).thenReturn(100L);
+        doAnswer(invocation -> {
+            l2.evict(USER_ID);
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+
+        Map<UUID, UserAggregates> loaded = loader.loadAll(Set.of(USER_ID, other));
+
+        assertThat(loaded).containsEntry(USER_ID, DEBIT_DEPOSIT).containsEntry(other, DEBIT_DEPOSIT);
+        assertThat(l2.get(USER_ID)).isNull();
+        verify(jdbcTemplate, times(1)).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    /**
+     * Отвечает на live-запрос одной строкой DEBIT/DEPOSIT; duringLoad выполняется посреди чтения.
+     */
+    private void stubDebitDeposit(Runnable duringLoad) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getString("product_id")).thenReturn(DEBIT_ID.toString());
+        when(rs.getString("transaction_type")).thenReturn("DEPOSIT");
+        when(rs.getLong("tx_count")).thenReturn(1L);
+        when(rs.getLong("amount_sum")).thenReturn(100L);
+
+        doAnswer(invocation -> {
+            if (duringLoad != null) {
+                duringLoad.run();
+            }
+            RowCallbackHandler handler = invocation.getArgument(1);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any(Object.class));
+    }
+}
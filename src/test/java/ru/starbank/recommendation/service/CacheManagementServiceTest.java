@@ -0,0 +1,76 @@
+package ru.starbank.recommendation.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.starbank.recommendation.config.cache.CacheRegistry;
+import ru.starbank.recommendation.domain.dto.management.CacheInvalidationDto;
+import ru.starbank.recommendation.repository.jdbc.ColumnarAggregateStore;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
+import ru.starbank.recommendation.service.knowledge.KnowledgeCacheRefresher;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CacheManagementServiceTest {
+
+    private KnowledgeCacheRefresher refresher;
+    private KnowledgeRepository knowledgeRepository;
+    private ProductCatalog productCatalog;
+    private ColumnarAggregateStore columnarStore;
+    private CacheManagementService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        refresher = mock(KnowledgeCacheRefresher.class);
+        knowledgeRepository = mock(KnowledgeRepository.class);
+        productCatalog = mock(ProductCatalog.class);
+        columnarStore = mock(ColumnarAggregateStore.class);
+        ObjectProvider<ColumnarAggregateStore> columnarProvider = mock(ObjectProvider.class);
+        when(columnarProvider.getIfAvailable()).thenReturn(columnarStore);
+
+        service = new CacheManagementService(
+                refresher, knowledgeRepository, productCatalog, columnarProvider, mock(CacheRegistry.class));
+    }
+
+    /**
+     * Продукт перенесён в новый тип: ни один закешированный снимок этого типа ещё не содержит,
+     * но снимки его пользователей построены по старому справочнику.
+     */
+    @Test
+    void invalidateProductType_shouldDropAllSnapshots_whenCatalogMovesProductToNewType() {
+        when(productCatalog.reloadChanges()).thenReturn(Set.of(UUID.randomUUID()));
+        when(knowledgeRepository.cachedUserIds()).thenReturn(List.of(UUID.randomUUID(), UUID.randomUUID()));
+
+        CacheInvalidationDto result = service.invalidateProductType("PREMIUM", null);
+
+        verify(refresher).hardClear();
+        verify(columnarStore).reload();
+        verify(knowledgeRepository, never()).invalidateProductType(anyString());
+        assertThat(result.invalidated()).isEqualTo(2);
+        assertThat(result.caches()).containsExactly("product-catalog", "user-aggregates", "columnar-aggregates");
+    }
+
+    @Test
+    void invalidateProductType_shouldEvictOnlyUsersOfType_whenCatalogIsUnchanged() {
+        when(productCatalog.reloadChanges()).thenReturn(Set.of());
+        when(knowledgeRepository.invalidateProductType("DEBIT")).thenReturn(3);
+
+        CacheInvalidationDto result = service.invalidateProductType("DEBIT", null);
+
+        verify(refresher, never()).hardClear();
+        verify(columnarStore, never()).reload();
+        assertThat(result.invalidated()).isEqualTo(3);
+        assertThat(result.caches()).containsExactly("product-catalog", "user-aggregates");
+    }
+}
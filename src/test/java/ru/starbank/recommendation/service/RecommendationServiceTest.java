@@ -2,32 +2,57 @@ package ru.starbank.recommendation.service;
 
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.starbank.recommendation.config.recommendation.RecommendationProperties;
 import ru.starbank.recommendation.domain.dto.RecommendationDto;
 import ru.starbank.recommendation.domain.dto.RecommendationResponseDto;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.domain.rules.FixedRuleFacts;
 import ru.starbank.recommendation.domain.rules.RecommendationRuleSet;
+import ru.starbank.recommendation.exception.RecommendationUnavailableException;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.KnownUserFilter;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 class RecommendationServiceTest {
 
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    private static final UserAggregates AGGREGATES = UserAggregates.builder(TYPES)
+                                                                   .add("DEBIT", "DEPOSIT", 1, 100)
+                                                                   .add("DEBIT", "WITHDRAW", 1, 50)
+                                                                   .build();
+    private static final FixedRuleFacts FACTS = FixedRuleFacts.from(AGGREGATES);
+
     @Test
     void shouldReturnRecommendations_fromFixedAndDynamic() {
         // given
         RecommendationRuleSet ruleSet = Mockito.mock(RecommendationRuleSet.class);
         DynamicRulesRecommendationService dynamicService = Mockito.mock(DynamicRulesRecommendationService.class);
+        KnowledgeRepository knowledge = Mockito.mock(KnowledgeRepository.class);
 
-        RecommendationService service = new RecommendationService(List.of(ruleSet), dynamicService);
+        RecommendationService service = new RecommendationService(List.of(ruleSet), dynamicService, userFilter(null), knowledge, evaluator(null));
 
         UUID userId = UUID.randomUUID();
 
         // fixed rules -> ничего не нашли
-        when(ruleSet.check(userId)).thenReturn(Optional.empty());
+        when(knowledge.aggregatesFor(userId)).thenReturn(AGGREGATES);
+        when(ruleSet.check(userId, FACTS)).thenReturn(Optional.empty());
 
         // dynamic rules -> тоже пусто
         when(dynamicService.getDynamicRecommendations(userId)).thenReturn(List.of());
@@ -49,8 +74,9 @@ class RecommendationServiceTest {
         // given
         RecommendationRuleSet ruleSet = Mockito.mock(RecommendationRuleSet.class);
         DynamicRulesRecommendationService dynamicService = Mockito.mock(DynamicRulesRecommendationService.class);
+        KnowledgeRepository knowledge = Mockito.mock(KnowledgeRepository.class);
 
-        RecommendationService service = new RecommendationService(List.of(ruleSet), dynamicService);
+        RecommendationService service = new RecommendationService(List.of(ruleSet), dynamicService, userFilter(null), knowledge, evaluator(null));
 
         UUID userId = UUID.randomUUID();
         RecommendationDto fixed = new RecommendationDto(
@@ -59,7 +85,8 @@ class RecommendationServiceTest {
                 "Fixed text"
         );
 
-        when(ruleSet.check(userId)).thenReturn(Optional.of(fixed));
+        when(knowledge.aggregatesFor(userId)).thenReturn(AGGREGATES);
+        when(ruleSet.check(userId, FACTS)).thenReturn(Optional.of(fixed));
         when(dynamicService.getDynamicRecommendations(userId)).thenReturn(List.of());
 
         // when
@@ -69,4 +96,144 @@ class RecommendationServiceTest {
         assertEquals(1, response.recommendations().size());
         assertEquals(fixed, response.recommendations().get(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldSkipRules_whenUserIsDefinitelyUnknown() {
+        // given
+        RecommendationRuleSet ruleSet = Mockito.mock(RecommendationRuleSet.class);
+        DynamicRulesRecommendationService dynamicService = Mockito.mock(DynamicRulesRecommendationService.class);
+        KnowledgeRepository knowledge = Mockito.mock(KnowledgeRepository.class);
+        KnownUserFilter filter = Mockito.mock(KnownUserFilter.class);
+        ObjectProvider<RuleEvaluationExecutor> evaluator = evaluator(null);
+
+        RecommendationService service = new RecommendationService(List.of(ruleSet), dynamicService, userFilter(filter), knowledge, evaluator);
+
+        UUID userId = UUID.randomUUID();
+        when(filter.mightExist(userId)).thenReturn(false);
+
+        // when
+        RecommendationResponseDto response = service.getRecommendations(userId);
+
+        // then
+        assertEquals(userId, response.userId());
+        assertEquals(0, response.recommendations().size());
+        verifyNoInteractions(ruleSet, dynamicService, knowledge);
+        verify(evaluator, never()).getIfAvailable();
+    }
+
+    @Test
+    void shouldEvaluateFixedRuleSets_fromCachedAggregatesOnce() {
+        // given
+        RecommendationRuleSet first = Mockito.mock(RecommendationRuleSet.class);
+        RecommendationRuleSet second = Mockito.mock(RecommendationRuleSet.class);
+        DynamicRulesRecommendationService dynamicService = Mockito.mock(DynamicRulesRecommendationService.class);
+        KnowledgeRepository knowledge = Mockito.mock(KnowledgeRepository.class);
+
+        RecommendationService service = new RecommendationService(List.of(first, second), dynamicService, userFilter(null), knowledge, evaluator(null));
+
+        UUID userId = UUID.randomUUID();
+        when(knowledge.aggregatesFor(userId)).thenReturn(AGGREGATES);
+        when(first.check(userId, FACTS)).thenReturn(Optional.empty());
+        when(second.check(userId, FACTS)).thenReturn(Optional.empty());
+        when(dynamicService.getDynamicRecommendations(userId)).thenReturn(List.of());
+
+        // when
+        service.getRecommendations(userId);
+
+        // then
+        verify(knowledge, times(1)).aggregatesFor(userId);
+        verify(first, never()).check(userId);
+        verify(second, never()).check(userId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<KnownUserFilter> userFilter(KnownUserFilter filter) {
+        ObjectProvider<KnownUserFilter> provider = Mockito.mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(filter);
+        return provider;
+    }
+
+    @Test
+    void concurrentMode_shouldKeepSequentialOrder() {
+        // given
+        RecommendationRuleSet first = Mockito.mock(RecommendationRuleSet.class);
+        RecommendationRuleSet second = Mockito.mock(RecommendationRuleSet.class);
+        DynamicRulesRecommendationService dynamicService = Mockito.mock(DynamicRulesRecommendationService.class);
+        KnowledgeRepository knowledge = Mockito.mock(KnowledgeRepository.class);
+        RuleEvaluationExecutor executor = new RuleEvaluationExecutor(evaluationProperties(2_000));
+
+        RecommendationService service = new RecommendationService(
+                List.of(first, second), dynamicService, userFilter(null), knowledge, evaluator(executor));
+
+        UUID userId = UUID.randomUUID();
+        RecommendationDto fixedFirst = new RecommendationDto(UUID.randomUUID(), "First", "text");
+        RecommendationDto fixedSecond = new RecommendationDto(UUID.randomUUID(), "Second", "text");
+        RecommendationDto dynamic = new RecommendationDto(UUID.randomUUID(), "Dynamic", "text");
+        when(knowledge.aggregatesFor(userId)).thenReturn(AGGREGATES);
+        CountDownLatch dynamicDone = new CountDownLatch(1);
+        when(first.check(userId, FACTS)).thenAnswer(invocation -> {
+            // фиксированная ветвь завершается последней
+            dynamicDone.await(1, TimeUnit.SECONDS);
+            return Optional.of(fixedFirst);
+        });
+        when(second.check(userId, FACTS)).thenReturn(Optional.of(fixedSecond));
+        when(dynamicService.getDynamicRecommendations(userId)).thenAnswer(invocation -> {
+            dynamicDone.countDown();
+            return List.of(dynamic);
+        });
+
+        try {
+            // when
+            RecommendationResponseDto response = service.getRecommendations(userId);
+
+            // then
+            assertEquals(List.of(fixedFirst, fixedSecond, dynamic), response.recommendations());
+            verify(knowledge, times(1)).aggregatesFor(userId);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void concurrentMode_shouldFailWithUnavailable_whenRequestTimesOut() {
+        // given
+        RecommendationRuleSet ruleSet = Mockito.mock(RecommendationRuleSet.class);
+        DynamicRulesRecommendationService dynamicService = Mockito.mock(DynamicRulesRecommendationService.class);
+        KnowledgeRepository knowledge = Mockito.mock(KnowledgeRepository.class);
+        RuleEvaluationExecutor executor = new RuleEvaluationExecutor(evaluationProperties(50));
+
+        RecommendationService service = new RecommendationService(
+                List.of(ruleSet), dynamicService, userFilter(null), knowledge, evaluator(executor));
+
+        UUID userId = UUID.randomUUID();
+        when(knowledge.aggregatesFor(userId)).thenReturn(AGGREGATES);
+        when(ruleSet.check(userId, FACTS)).thenReturn(Optional.empty());
+        CountDownLatch release = new CountDownLatch(1);
+        when(dynamicService.getDynamicRecommendations(userId)).thenAnswer(invocation -> {
+            release.await();
+            return List.of();
+        });
+
+        try {
+            // when / then
+            assertThrows(RecommendationUnavailableException.class, () -> service.getRecommendations(userId));
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    private static RecommendationProperties evaluationProperties(long timeoutMs) {
+        RecommendationProperties properties = new RecommendationProperties();
+        properties.getEvaluation().setThreads(4);
+        properties.getEvaluation().setTimeoutMs(timeoutMs);
+        return properties;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<RuleEvaluationExecutor> evaluator(RuleEvaluationExecutor executor) {
+        ObjectProvider<RuleEvaluationExecutor> provider = Mockito.mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(executor);
+        return provider;
+    }
+}
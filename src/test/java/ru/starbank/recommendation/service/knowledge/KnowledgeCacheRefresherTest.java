@@ -0,0 +1,125 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.starbank.recommendation.config.cache.CacheConfig;
+import ru.starbank.recommendation.config.cache.CacheStatsRecorder;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.cache.SharedAggregatesCache;
+import ru.starbank.recommendation.repository.jdbc.CacheGeneration;
+import ru.starbank.recommendation.repository.jdbc.CachedAggregates;
+import ru.starbank.recommendation.repository.jdbc.ColumnarAggregateStore;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.ReplicaLagGuard;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesLoader;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Поколение в записях кеша: проход мягкого сброса пропускает записи нового поколения,
+ * а запись, загрузка которой началась до сброса, перезагружается при чтении.
+ */
+class KnowledgeCacheRefresherTest {
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    private static final UUID USER_ID = UUID.fromString("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+
+    private final AtomicLong loads = new AtomicLong();
+    private volatile CountDownLatch loadGate = new CountDownLatch(0);
+
+    private ExecutorService executor;
+    private CacheGeneration generation;
+    private KnowledgeRepository repository;
+    private KnowledgeCacheRefresher refresher;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        UserAggregatesLoader loader = mock(UserAggregatesLoader.class, withSettings().defaultAnswer(CALLS_REAL_METHODS));
+        doAnswer(invocation -> {
+            long version = loads.incrementAndGet();
+            loadGate.await(5, TimeUnit.SECONDS);
+            return UserAggregates.builder(TYPES).add("DEBIT", "DEPOSIT", 1, version).build();
+        }).when(loader).load(any());
+
+        KnowledgeProperties properties = new KnowledgeProperties();
+        CacheConfig config = new CacheConfig();
+        executor = config.knowledgeCacheExecutor(properties);
+        generation = new CacheGeneration();
+        AsyncLoadingCache<UUID, CachedAggregates> cache = config.userAggregatesCache(
+                loader, generation, executor, new CacheStatsRecorder(), properties);
+
+        ObjectProvider<ColumnarAggregateStore> columnar = mock(ObjectProvider.class);
+        ObjectProvider<SharedAggregatesCache> shared = mock(ObjectProvider.class);
+        repository = new KnowledgeRepository(
+                cache, columnar, shared, TYPES, new ReplicaLagGuard(properties), generation);
+        refresher = new KnowledgeCacheRefresher(repository, generation, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        refresher.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void softClear_shouldRefreshEntriesOfPreviousGeneration() {
+        assertThat(sum()).isEqualTo(1);
+
+        refresher.softClear();
+
+        await().atMost(Duration.ofSeconds(5)).until(() -> !refresher.status().inProgress());
+        assertThat(sum()).isEqualTo(2);
+        assertThat(generation.settled()).isEqualTo(1);
+    }
+
+    @Test
+    void refresh_shouldSkipEntry_loadedInRequestedGeneration() {
+        long gen = generation.next(false);
+        assertThat(sum()).isEqualTo(1);
+
+        repository.refresh(USER_ID, gen).join();
+
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void read_shouldRefreshEntry_whoseLoadStartedBeforeSettledSoftClear() {
+        loadGate = new CountDownLatch(1);
+        CompletableFuture<Long> inFlight = CompletableFuture.supplyAsync(this::sum);
+        await().atMost(Duration.ofSeconds(5)).until(() -> loads.get() == 1);
+
+        refresher.softClear();
+        await().atMost(Duration.ofSeconds(5)).until(() -> !refresher.status().inProgress());
+        loadGate.countDown();
+
+        // значение загрузки, начатой до сброса, отдаётся, но запись старого поколения перезагружается
+        assertThat(inFlight.join()).isEqualTo(1);
+        await().atMost(Duration.ofSeconds(5)).until(() -> sum() == 2);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    private long sum() {
+        return repository.aggregatesFor(USER_ID).sumAmount("DEBIT", "DEPOSIT");
+    }
+}
@@ -0,0 +1,101 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.DefaultApplicationArguments;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.UserIdsFile;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KnowledgeCacheWarmUpTest {
+
+    private KnowledgeRepository knowledgeRepository;
+    private KnowledgeProperties properties;
+    private Path keysFile;
+
+    @BeforeEach
+    void setUp(@TempDir Path dir) {
+        knowledgeRepository = mock(KnowledgeRepository.class);
+        keysFile = dir.resolve("warm-up-keys.bin");
+        properties = new KnowledgeProperties();
+        properties.getWarmUp().setEnabled(true);
+        properties.getWarmUp().setKeysFile(keysFile.toString());
+        properties.getWarmUp().setUsersPerSecond(1_000_000);
+    }
+
+    @Test
+    void run_shouldLoadSavedKeysInBatches() throws Exception {
+        List<UUID> userIds = users(5);
+        UserIdsFile.write(userIds, Instant.now(), keysFile);
+        properties.getWarmUp().setBatchSize(2);
+        List<List<UUID>> batches = new ArrayList<>();
+        when(knowledgeRepository.warmUp(anyCollection())).thenAnswer(invocation -> {
+            Collection<UUID> batch = invocation.getArgument(0);
+            batches.add(List.copyOf(batch));
+            return CompletableFuture.completedFuture(batch.size());
+        });
+
+        new KnowledgeCacheWarmUp(knowledgeRepository, properties).run(new DefaultApplicationArguments());
+
+        assertThat(batches).containsExactly(userIds.subList(0, 2), userIds.subList(2, 4), userIds.subList(4, 5));
+    }
+
+    @Test
+    void run_shouldStopAtDeadline_whileBatchIsStillLoading() throws Exception {
+        UserIdsFile.write(users(10), Instant.now(), keysFile);
+        properties.getWarmUp().setBatchSize(5);
+        properties.getWarmUp().setDeadlineMs(200);
+        when(knowledgeRepository.warmUp(anyCollection())).thenReturn(new CompletableFuture<>());
+
+        long startedAt = System.nanoTime();
+        new KnowledgeCacheWarmUp(knowledgeRepository, properties).run(new DefaultApplicationArguments());
+        Duration took = Duration.ofNanos(System.nanoTime() - startedAt);
+
+        assertThat(took).isLessThan(Duration.ofSeconds(5));
+        verify(knowledgeRepository, times(1)).warmUp(anyCollection());
+    }
+
+    @Test
+    void saveKeys_shouldWriteHottestUsers_forNextStart() throws Exception {
+        List<UUID> hottest = users(3);
+        when(knowledgeRepository.hottestUserIds(anyInt())).thenReturn(hottest);
+
+        new KnowledgeCacheWarmUp(knowledgeRepository, properties).saveKeys();
+
+        assertThat(UserIdsFile.read(keysFile).userIds()).containsExactlyElementsOf(hottest);
+    }
+
+    @Test
+    void run_withoutKeysFile_shouldStartCold() throws Exception {
+        new KnowledgeCacheWarmUp(knowledgeRepository, properties).run(new DefaultApplicationArguments());
+
+        verify(knowledgeRepository, never()).warmUp(anyCollection());
+    }
+
+    private static List<UUID> users(int count) {
+        List<UUID> userIds = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            userIds.add(UUID.randomUUID());
+        }
+        return userIds;
+    }
+}
@@ -0,0 +1,276 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.starbank.recommendation.config.cache.CacheConfig;
+import ru.starbank.recommendation.config.cache.CacheStatsRecorder;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.domain.knowledge.UserAggregates;
+import ru.starbank.recommendation.repository.cache.SharedAggregatesCache;
+import ru.starbank.recommendation.repository.jdbc.CacheGeneration;
+import ru.starbank.recommendation.repository.jdbc.CachedAggregates;
+import ru.starbank.recommendation.repository.jdbc.ColumnarAggregateStore;
+import ru.starbank.recommendation.repository.jdbc.IngestPosition;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeRepository;
+import ru.starbank.recommendation.repository.jdbc.KnowledgeShards;
+import ru.starbank.recommendation.repository.jdbc.KnownUserFilter;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
+import ru.starbank.recommendation.repository.jdbc.ReplicaLagGuard;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesLoader;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesTableRepository;
+
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TransactionTailerTest {
+
+    private static final UUID DEBIT_ID = UUID.fromString("bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb");
+    private static final UUID USER_A = UUID.fromString("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+    private static final UUID USER_B = UUID.fromString("cccccccc-cccc-cccc-cccc-cccccccccccc");
+
+    private static final TypeDictionary TYPES = new TypeDictionary();
+
+    private JdbcTemplate jdbcTemplate;
+    private KnowledgeRepository knowledgeRepository;
+    private KnowledgeProperties properties;
+    private ProductCatalog productCatalog;
+    private IngestPosition ingestPosition;
+    private ExecutorService executor;
+    private AsyncLoadingCache<UUID, CachedAggregates> cache;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:tailer-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("""
+                CREATE TABLE transactions (
+                    ingest_seq BIGINT,
+                    user_id UUID NOT NULL,
+                    product_id UUID NOT NULL,
+                    type VARCHAR(16) NOT NULL,
+                    amount BIGINT NOT NULL
+                )
+                """);
+        knowledgeRepository = mock(KnowledgeRepository.class);
+        properties = new KnowledgeProperties();
+        properties.getTailer().setEnabled(true);
+        productCatalog = mock(ProductCatalog.class);
+        when(productCatalog.typeOf(DEBIT_ID)).thenReturn("DEBIT");
+        ingestPosition = new IngestPosition();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void poll_shouldApplyNewTransactionsInSequenceOrder_acrossBatches() {
+        insert(1, USER_A, 100);
+        properties.getTailer().setBatchSize(2);
+        TransactionTailer tailer = tailer();
+        tailer.poll();
+
+        insert(4, USER_B, 400);
+        insert(2, USER_A, 200);
+        insert(3, USER_B, 300);
+        tailer.poll();
+
+        InOrder order = inOrder(knowledgeRepository);
+        order.verify(knowledgeRepository).applyTransaction(USER_A, "DEBIT", "DEPOSIT", 200, 2);
+        order.verify(knowledgeRepository).applyTransaction(USER_B, "DEBIT", "DEPOSIT", 300, 3);
+        order.verify(knowledgeRepository).applyTransaction(USER_B, "DEBIT", "DEPOSIT", 400, 4);
+        verify(knowledgeRepository, never())
+                .applyTransaction(any(), anyString(), anyString(), anyLong(), eq(1L));
+    }
+
+    @Test
+    void poll_shouldApplyTransaction_whenItIsCommittedIntoGap() {
+        insert(1, USER_A, 100);
+        TransactionTailer tailer = tailer();
+        tailer.poll();
+
+        insert(2, USER_A, 200);
+        insert(4, USER_A, 400);
+        tailer.poll();
+
+        assertThat(ingestPosition.of(0).watermark()).isEqualTo(4);
+        assertThat(ingestPosition.of(0).openGaps()).containsExactly(3);
+
+        insert(3, USER_B, 300);
+        tailer.poll();
+        tailer.poll();
+
+        verify(knowledgeRepository, times(1)).applyTransaction(USER_B, "DEBIT", "DEPOSIT", 300, 3);
+        verify(knowledgeRepository, never()).invalidateUser(any());
+        assertThat(ingestPosition.of(0).openGaps()).isEmpty();
+    }
+
+    @Test
+    void poll_shouldCountRow_committedBelowGlobalMaximumAfterLoad() {
+        insert(1, USER_A, 100);
+        TransactionTailer tailer = tailer(cachedRepository());
+        tailer.poll();
+
+        // tailer отстаёт: 2 и 4 уже видны, 3 ещё не закоммичена
+        insert(2, USER_A, 200);
+        insert(4, USER_A, 400);
+        assertThat(sum(USER_A)).isEqualTo(100);
+        assertThat(cachedSnapshot(USER_A).sequence()).isEqualTo(1);
+
+        insert(3, USER_A, 300);
+        tailer.poll();
+
+        assertThat(cachedSnapshot(USER_A).sequence()).isEqualTo(4);
+        assertThat(sum(USER_A)).isEqualTo(1000);
+    }
+
+    @Test
+    void poll_shouldCountRow_committedIntoOpenGapAfterLoad() {
+        insert(1, USER_A, 100);
+        TransactionTailer tailer = tailer(cachedRepository());
+        tailer.poll();
+
+        insert(2, USER_A, 200);
+        insert(4, USER_A, 400);
+        tailer.poll();
+        assertThat(sum(USER_A)).isEqualTo(700);
+        assertThat(cachedSnapshot(USER_A).openGaps()).containsExactly(3);
+
+        insert(3, USER_A, 300);
+        tailer.poll();
+
+        assertThat(cachedSnapshot(USER_A).openGaps()).isEmpty();
+        assertThat(sum(USER_A)).isEqualTo(1000);
+    }
+
+    @Test
+    void load_shouldCountRowsWithoutSequence_writtenBeforeMigration() {
+        jdbcTemplate.update(
+                "INSERT INTO transactions (user_id, product_id, type, amount) VALUES (?, ?, 'DEPOSIT', 50)",
+                USER_A, DEBIT_ID);
+        insert(1, USER_A, 100);
+        TransactionTailer tailer = tailer(cachedRepository());
+        tailer.poll();
+
+        assertThat(sum(USER_A)).isEqualTo(150);
+        assertThat(cachedSnapshot(USER_A).sequence()).isEqualTo(1);
+    }
+
+    @Test
+    void applyTransaction_shouldInvalidateSnapshot_whenRowIsAtOrBelowItsStamp() {
+        insert(1, USER_A, 100);
+        KnowledgeRepository repository = cachedRepository();
+        TransactionTailer tailer = tailer(repository);
+        tailer.poll();
+        insert(2, USER_A, 200);
+        tailer.poll();
+        assertThat(sum(USER_A)).isEqualTo(300);
+
+        repository.applyTransaction(USER_A, "DEBIT", "DEPOSIT", 200, 2);
+
+        assertThat(cache.synchronous().getIfPresent(USER_A)).isNull();
+        assertThat(sum(USER_A)).isEqualTo(300);
+    }
+
+    @Test
+    void poll_shouldForgetGap_afterTimeout() {
+        properties.getTailer().setGapTimeoutMs(0);
+        insert(1, USER_A, 100);
+        TransactionTailer tailer = tailer();
+        tailer.poll();
+
+        insert(3, USER_A, 300);
+        tailer.poll();
+        tailer.poll();
+
+        insert(2, USER_B, 200);
+        tailer.poll();
+
+        verify(knowledgeRepository, never()).invalidateUser(any());
+        verify(knowledgeRepository, never())
+                .applyTransaction(any(), anyString(), anyString(), anyLong(), eq(2L));
+    }
+
+    @Test
+    void poll_shouldApplyDuplicateSequenceOnce() {
+        insert(1, USER_A, 100);
+        TransactionTailer tailer = tailer();
+        tailer.poll();
+
+        insert(2, USER_A, 200);
+        insert(2, USER_B, 999);
+        tailer.poll();
+        tailer.poll();
+
+        verify(knowledgeRepository, times(1))
+                .applyTransaction(any(), anyString(), anyString(), anyLong(), eq(2L));
+    }
+
+    private TransactionTailer tailer() {
+        return tailer(knowledgeRepository);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TransactionTailer tailer(KnowledgeRepository repository) {
+        ObjectProvider<KnownUserFilter> knownUserFilter = mock(ObjectProvider.class);
+        return new TransactionTailer(
+                KnowledgeShards.single(jdbcTemplate), productCatalog, repository, knownUserFilter, ingestPosition, properties);
+    }
+
+    /**
+     * Настоящий кеш агрегатов с LIVE-загрузчиком поверх той же БД.
+     */
+    @SuppressWarnings("unchecked")
+    private KnowledgeRepository cachedRepository() {
+        ObjectProvider<SharedAggregatesCache> shared = mock(ObjectProvider.class);
+        ObjectProvider<ColumnarAggregateStore> columnar = mock(ObjectProvider.class);
+        ReplicaLagGuard replicaLagGuard = new ReplicaLagGuard(properties);
+        UserAggregatesLoader loader = new UserAggregatesLoader(
+                KnowledgeShards.single(jdbcTemplate), productCatalog, mock(UserAggregatesTableRepository.class),
+                shared, TYPES, replicaLagGuard, ingestPosition, properties);
+
+        CacheConfig config = new CacheConfig();
+        CacheGeneration generation = new CacheGeneration();
+        executor = config.knowledgeCacheExecutor(properties);
+        cache = config.userAggregatesCache(loader, generation, executor, new CacheStatsRecorder(), properties);
+        return new KnowledgeRepository(cache, columnar, shared, TYPES, replicaLagGuard, generation);
+    }
+
+    private long sum(UUID userId) {
+        return cache.synchronous().get(userId).aggregates().sumAmount("DEBIT", "DEPOSIT");
+    }
+
+    private UserAggregates cachedSnapshot(UUID userId) {
+        return cache.synchronous().getIfPresent(userId).aggregates();
+    }
+
+    private void insert(long seq, UUID userId, long amount) {
+        jdbcTemplate.update(
+                "INSERT INTO transactions (ingest_seq, user_id, product_id, type, amount) VALUES (?, ?, ?, 'DEPOSIT', ?)",
+                seq, userId, DEBIT_ID, amount);
+    }
+}
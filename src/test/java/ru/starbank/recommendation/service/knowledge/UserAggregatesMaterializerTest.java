@@ -0,0 +1,149 @@
+package ru.starbank.recommendation.service.knowledge;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.starbank.recommendation.config.knowledge.KnowledgeProperties;
+import ru.starbank.recommendation.domain.knowledge.TypeDictionary;
+import ru.starbank.recommendation.repository.jdbc.ProductCatalog;
+import ru.starbank.recommendation.repository.jdbc.UserAggregatesTableRepository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Таблицы products в схеме нет: пересчёт не должен делать JOIN, типы продуктов берутся из каталога.
+ */
+class UserAggregatesMaterializerTest {
+
+    private static final UUID DEBIT_ID = UUID.fromString("bbbbbbbb-bbbb-bbbb-bbbb-bbbbbbbbbbbb");
+    private static final UUID USER_A = UUID.fromString("aaaaaaaa-aaaa-aaaa-aaaa-aaaaaaaaaaaa");
+    private static final UUID USER_B = UUID.fromString("cccccccc-cccc-cccc-cccc-cccccccccccc");
+
+    private JdbcTemplate jdbcTemplate;
+    private UserAggregatesMaterializer materializer;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource =
+                new DriverManagerDataSource("jdbc:h2:mem:materializer-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE users (id UUID PRIMARY KEY)");
+        jdbcTemplate.execute("""
+                CREATE TABLE transactions (
+                    ingest_seq BIGINT NOT NULL,
+                    user_id UUID NOT NULL,
+                    product_id UUID NOT NULL,
+                    type VARCHAR(32) NOT NULL,
+                    amount BIGINT NOT NULL
+                )
+                """);
+        jdbcTemplate.execute("""
+                CREATE TABLE user_product_aggregates (
+                    user_id UUID NOT NULL,
+                    product_type VARCHAR(32) NOT NULL,
+                    tx_type VARCHAR(32) NOT NULL,
+                    tx_count BIGINT NOT NULL,
+                    amount_sum BIGINT NOT NULL,
+                    PRIMARY KEY (user_id, product_type, tx_type)
+                )
+                """);
+        jdbcTemplate.execute("""
+                CREATE TABLE user_product_aggregates_state (
+                    id INT PRIMARY KEY,
+                    refreshed_at TIMESTAMP NOT NULL,
+                    locked_by VARCHAR(64),
+                    locked_until TIMESTAMP,
+                    last_seq BIGINT,
+                    full_refreshed_at TIMESTAMP
+                )
+                """);
+        jdbcTemplate.update("INSERT INTO users (id) VALUES (?), (?)", USER_A, USER_B);
+
+        ProductCatalog productCatalog = mock(ProductCatalog.class);
+        when(productCatalog.typeOf(DEBIT_ID)).thenReturn("DEBIT");
+        KnowledgeProperties properties = new KnowledgeProperties();
+        UserAggregatesTableRepository tableRepository =
+                new UserAggregatesTableRepository(jdbcTemplate, productCatalog, new TypeDictionary(), properties);
+        materializer = new UserAggregatesMaterializer(
+                tableRepository, new DataSourceTransactionManager(dataSource), properties);
+    }
+
+    @Test
+    void firstRefresh_shouldRebuildAllUsers_andRecordSequence() {
+        insert(1, USER_A, 100);
+        insert(2, USER_A, 50);
+        insert(3, USER_B, 70);
+
+        materializer.refresh();
+
+        assertThat(amountSum(USER_A)).isEqualTo(150);
+        assertThat(amountSum(USER_B)).isEqualTo(70);
+        assertThat(jdbcTemplate.queryForObject("SELECT last_seq FROM user_product_aggregates_state", Long.class))
+                .isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject("SELECT locked_by FROM user_product_aggregates_state", String.class))
+                .isNull();
+    }
+
+    @Test
+    void nextRefresh_shouldRebuildOnlyUsersWithNewTransactions() {
+        insert(1, USER_A, 100);
+        insert(2, USER_B, 70);
+        materializer.refresh();
+
+        jdbcTemplate.update("UPDATE user_product_aggregates SET amount_sum = 1 WHERE user_id = ?", USER_A);
+        insert(3, USER_B, 30);
+        materializer.refresh();
+
+        assertThat(amountSum(USER_A)).isEqualTo(1);
+        assertThat(amountSum(USER_B)).isEqualTo(100);
+    }
+
+    @Test
+    void refresh_shouldSkip_whileAnotherInstanceHoldsLease() {
+        insert(1, USER_A, 100);
+        jdbcTemplate.update("""
+                INSERT INTO user_product_aggregates_state (id, refreshed_at, locked_by, locked_until)
+                VALUES (1, ?, 'other-instance', ?)
+                """, Timestamp.from(Instant.EPOCH), Timestamp.from(Instant.now().plus(1, ChronoUnit.HOURS)));
+
+        materializer.refresh();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_product_aggregates", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForObject("SELECT locked_by FROM user_product_aggregates_state", String.class))
+                .isEqualTo("other-instance");
+    }
+
+    @Test
+    void refresh_shouldTakeOverExpiredLease() {
+        insert(1, USER_A, 100);
+        jdbcTemplate.update("""
+                INSERT INTO user_product_aggregates_state (id, refreshed_at, locked_by, locked_until)
+                VALUES (1, ?, 'crashed-instance', ?)
+                """, Timestamp.from(Instant.EPOCH), Timestamp.from(Instant.now().minus(1, ChronoUnit.MINUTES)));
+
+        materializer.refresh();
+
+        assertThat(amountSum(USER_A)).isEqualTo(100);
+    }
+
+    private long amountSum(UUID userId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT amount_sum FROM user_product_aggregates WHERE user_id = ? AND product_type = 'DEBIT'",
+                Long.class, userId);
+    }
+
+    private void insert(long seq, UUID userId, long amount) {
+        jdbcTemplate.update(
+                "INSERT INTO transactions (ingest_seq, user_id, product_id, type, amount) VALUES (?, ?, ?, 'DEPOSIT', ?)",
+                seq, userId, DEBIT_ID, amount);
+    }
+}